@@ -0,0 +1,99 @@
+package com.wildermods.masshash;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wildermods.masshash.exception.IntegrityException;
+
+/**
+ * Measures constructing {@link Blob}s from a file, from a stream and from memory, against
+ * only computing the {@link Hash} of the same file.
+ * 
+ * <p>
+ * The difference between {@code path} and {@code computeHash} is the cost of holding the
+ * file's contents on the heap.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlobBenchmark {
+
+	@Param({"1024", "65536", "1048576", "16777216"})
+	public int size;
+	
+	private byte[] data;
+	private Path file;
+	private Hash expected;
+	
+	@Setup(Level.Trial)
+	public void createFile() throws IOException {
+		data = new byte[size];
+		new Random(size).nextBytes(data);
+		file = Files.createTempFile("masshash", ".bench");
+		Files.write(file, data);
+		expected = StandardHashAlgorithm.SHA_1.hash(data);
+	}
+	
+	@TearDown(Level.Trial)
+	public void deleteFile() throws IOException {
+		Files.deleteIfExists(file);
+	}
+	
+	@Benchmark
+	public Blob bytes() {
+		return new Blob(data);
+	}
+	
+	@Benchmark
+	public Blob path() throws IOException {
+		return new Blob(file);
+	}
+	
+	@Benchmark
+	public Blob verifiedPath() throws IOException, IntegrityException {
+		return new Blob(file, expected);
+	}
+	
+	@Benchmark
+	public Blob stream() throws IOException {
+		try(InputStream stream = new ByteArrayInputStream(data)) {
+			return new Blob(stream);
+		}
+	}
+	
+	@Benchmark
+	public Blob fileStream() throws IOException {
+		try(InputStream stream = Files.newInputStream(file)) {
+			return new Blob(stream);
+		}
+	}
+	
+	@Benchmark
+	public Hash computeHash() throws IOException {
+		return Hash.compute(file);
+	}
+	
+}
@@ -0,0 +1,100 @@
+package com.wildermods.masshash;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wildermods.masshash.utils.ByteUtil;
+
+/**
+ * Measures hashing in-memory data of a range of sizes, and the cost of hex encoding the result.
+ * 
+ * <p>
+ * The smallest sizes are dominated by the fixed cost of each hash (getting a digest and
+ * encoding its result), the largest by the throughput of the digest itself.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ByteUtilBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Input {
+		
+		@Param({"0", "64", "1024", "65536", "1048576"})
+		public int size;
+		
+		private byte[] data;
+		
+		@Setup(Level.Trial)
+		public void createData() {
+			data = new byte[size];
+			new Random(size).nextBytes(data);
+		}
+		
+	}
+	
+	/*
+	 * Hex encoding only depends on the length of the digest, not on the size of the data
+	 */
+	@State(Scope.Benchmark)
+	public static class Digest {
+		
+		private byte[] digest;
+		private BinaryHash hash;
+		
+		@Setup(Level.Trial)
+		public void createDigest() {
+			byte[] data = "masshash".getBytes();
+			digest = ByteUtil.digest(data);
+			hash = StandardHashAlgorithm.SHA_1.hash(data);
+		}
+		
+	}
+	
+	@Benchmark
+	public String hash(Input input) {
+		return ByteUtil.hash(input.data);
+	}
+	
+	@Benchmark
+	public byte[] digest(Input input) {
+		return ByteUtil.digest(input.data);
+	}
+	
+	@Benchmark
+	public BinaryHash binaryHash(Input input) {
+		return StandardHashAlgorithm.SHA_1.hash(input.data);
+	}
+	
+	@Benchmark
+	public BinaryHash xxHash(Input input) {
+		return StandardHashAlgorithm.XXHASH_64.hash(input.data);
+	}
+	
+	@Benchmark
+	public String bytesToHex(Digest digest) {
+		return ByteUtil.bytesToHex(digest.digest);
+	}
+	
+	@Benchmark
+	public String binaryHashToHex(Digest digest) {
+		return digest.hash.hash();
+	}
+	
+}
@@ -0,0 +1,156 @@
+package com.wildermods.masshash;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a whole {@link Hasher} run, walking included, over synthetic file trees of
+ * different shapes.
+ * 
+ * <p>
+ * The trees are written once per trial and hashed while hot in the page cache, so these
+ * results show the overhead of the hasher itself (walking, scheduling, merging results)
+ * rather than the speed of the storage.
+ * </p>
+ * 
+ * <p>
+ * The {@code gc.alloc.rate.norm} reported by the GC profiler, divided by the number of files in
+ * the tree, is the garbage per file. For {@link #hashOnly()} over the {@link Shape#TINY} tree, it
+ * should be little more than opening each file, its hash and its entry in the results.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HasherBenchmark {
+
+	public static enum Shape {
+		/**
+		 * Many tiny files, like the assets of a game. Dominated by the cost per file.
+		 */
+		TINY(20_000, 0, 0),
+		/**
+		 * A few huge files. Dominated by digest throughput, and by how evenly the files are spread across threads.
+		 */
+		HUGE(0, 0, 4),
+		/**
+		 * Mostly tiny files, with some medium and a couple of huge ones.
+		 */
+		MIXED(5_000, 50, 2);
+		
+		private final int tiny;
+		private final int medium;
+		private final int huge;
+		
+		private Shape(int tiny, int medium, int huge) {
+			this.tiny = tiny;
+			this.medium = medium;
+			this.huge = huge;
+		}
+	}
+	
+	private static final int TINY_MAX = 4 * 1024;
+	private static final int MEDIUM_SIZE = 1024 * 1024;
+	private static final int HUGE_SIZE = 64 * 1024 * 1024;
+	
+	@Param({"TINY", "HUGE", "MIXED"})
+	public Shape shape;
+	
+	private Path root;
+	
+	@Setup(Level.Trial)
+	public void createTree() throws IOException {
+		root = Files.createTempDirectory("masshash-bench");
+		Random random = new Random(shape.ordinal());
+		for(int i = 0; i < shape.tiny; i++) {
+			write(random, "tiny/dir" + (i % 100) + "/file" + i, random.nextInt(TINY_MAX));
+		}
+		for(int i = 0; i < shape.medium; i++) {
+			write(random, "medium/file" + i, MEDIUM_SIZE);
+		}
+		for(int i = 0; i < shape.huge; i++) {
+			write(random, "huge/file" + i, HUGE_SIZE);
+		}
+	}
+	
+	private void write(Random random, String name, int size) throws IOException {
+		Path file = root.resolve(name);
+		Files.createDirectories(file.getParent());
+		byte[] data = new byte[size];
+		random.nextBytes(data);
+		Files.write(file, data);
+	}
+	
+	@TearDown(Level.Trial)
+	public void deleteTree() throws IOException {
+		try(Stream<Path> files = Files.walk(root)) {
+			for(Path path : (Iterable<Path>)files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(path);
+			}
+		}
+	}
+	
+	/**
+	 * Hashes the tree without a consumer, so files are streamed.
+	 */
+	@Benchmark
+	public int hashOnly() throws IOException {
+		try(Stream<Path> files = Files.walk(root)) {
+			return new Hasher(files) {}.results().size();
+		}
+	}
+	
+	/**
+	 * Hashes the tree without a consumer, walking it in parallel instead of with {@link Files#walk(Path, java.nio.file.FileVisitOption...)}.
+	 */
+	@Benchmark
+	public int hashOnlyWalked() throws IOException {
+		return new Hasher(root) {}.results().size();
+	}
+	
+	/**
+	 * Hashes the tree with a consumer, so each file is read onto the heap and passed along as a {@link Blob}.
+	 * Compared with {@link #hashOnly()}, this measures the cost of a consumer: the heap read, and the
+	 * {@code Reference}, {@code Blob} and hexadecimal hash created for each file.
+	 */
+	@Benchmark
+	public int withBlobs() throws IOException {
+		try(Stream<Path> files = Files.walk(root)) {
+			return new Hasher(files, (path, blob) -> {}) {}.results().size();
+		}
+	}
+	
+	/**
+	 * Hashes the tree with {@link StandardHashAlgorithm#XXHASH_64} into a {@link HashIndex}, the fastest configuration.
+	 */
+	@Benchmark
+	public int xxHashIndexed() throws IOException {
+		HasherOptions options = HasherOptions.HASH_ONLY.withAlgorithm(StandardHashAlgorithm.XXHASH_64).withIndexedResults(true);
+		try(Stream<Path> files = Files.walk(root)) {
+			return new Hasher(files, Runtime.getRuntime().availableProcessors(), options, p -> true, null) {}.results().size();
+		}
+	}
+	
+}
@@ -0,0 +1,84 @@
+package com.wildermods.masshash;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wildermods.masshash.utils.ByteUtil;
+
+/**
+ * Compares hashing a file from the heap, through a stream buffer, and through a memory mapping,
+ * across a range of file sizes.
+ * 
+ * <p>
+ * The size at which {@code mapped} overtakes {@code heap} and {@code streamed} is the
+ * crossover to use for {@link HasherOptions#withMappedThreshold(long)} on the machine the
+ * benchmark was run on. Files are hashed while hot in the page cache, which is the case
+ * that favors mapping the least, so the measured crossover is a conservative one.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappedHashBenchmark {
+
+	@Param({"4096", "65536", "1048576", "16777216", "134217728"})
+	public int size;
+	
+	private Path file;
+	
+	@Setup(Level.Trial)
+	public void createFile() throws IOException {
+		byte[] data = new byte[size];
+		new Random(size).nextBytes(data);
+		file = Files.createTempFile("masshash", ".bench");
+		Files.write(file, data);
+	}
+	
+	@TearDown(Level.Trial)
+	public void deleteFile() throws IOException {
+		Files.deleteIfExists(file);
+	}
+	
+	@Benchmark
+	public String heap() throws IOException {
+		return ByteUtil.hash(Files.readAllBytes(file));
+	}
+	
+	@Benchmark
+	public String streamed() throws IOException {
+		try(InputStream stream = Files.newInputStream(file)) {
+			return ByteUtil.hash(stream);
+		}
+	}
+	
+	@Benchmark
+	public String mapped() throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return ByteUtil.hashMapped(channel);
+		}
+	}
+	
+}
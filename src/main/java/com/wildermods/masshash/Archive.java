@@ -0,0 +1,191 @@
+package com.wildermods.masshash;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.wildermods.masshash.HashScheduler.SizedFile;
+
+/**
+ * A zip or jar archive whose entries are hashed in place, as if each were a file of its own.
+ *
+ * <p>
+ * Entries are given virtual paths made of the archive's path, a {@code !}, and the name of the
+ * entry, such as {@code mods/mod.jar!/assets/x.png}. They are read straight out of the archive
+ * through a {@link ZipFile}, which reads the central directory once and lets every hashing
+ * thread inflate its own entries at the same time.
+ * </p>
+ *
+ * <p>
+ * An archive stays open until each of its entries has been {@linkplain Entry#release() released}
+ * after hashing, or until it is {@linkplain #close() closed} because hashing stopped early.
+ * Archives nested inside an archive are hashed as entries, without being expanded.
+ * </p>
+ */
+final class Archive implements Closeable {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	/**
+	 * An entry of an archive, which is due to be hashed.
+	 */
+	record Entry(Archive archive, ZipEntry zip) {
+
+		/**
+		 * @return the inflated size of this entry, or -1 if the archive does not record it
+		 */
+		long size() {
+			return zip.getSize();
+		}
+
+		/**
+		 * @return a stream of the inflated contents of this entry
+		 * @throws IOException if the archive has been closed, or the entry could not be read
+		 */
+		InputStream open() throws IOException {
+			return archive.zip.getInputStream(zip);
+		}
+
+		/**
+		 * @return the inflated contents of this entry
+		 * @throws IOException if the archive has been closed, or the entry could not be read
+		 */
+		byte[] readAllBytes() throws IOException {
+			try(InputStream in = open()) {
+				return in.readAllBytes();
+			}
+		}
+
+		/**
+		 * Marks this entry as hashed. The archive is closed once every entry has been released.
+		 *
+		 * @throws IOException if the archive could not be closed
+		 */
+		void release() throws IOException {
+			if(archive.remaining.decrementAndGet() == 0) {
+				archive.close();
+			}
+		}
+
+	}
+
+	private final ZipFile zip;
+	private final Set<Archive> open;
+	private final List<SizedFile> entries = new ArrayList<>();
+	private final AtomicInteger remaining;
+
+	private Archive(Path file, ZipFile zip, Set<Archive> open) throws IOException {
+		this.zip = zip;
+		this.open = open;
+		final Path root = file.resolveSibling(file.getFileName() + "!");
+		Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+		while(zipEntries.hasMoreElements()) {
+			ZipEntry entry = zipEntries.nextElement();
+			if(entry.isDirectory()) {
+				continue;
+			}
+			//Entry names are always separated by '/', and may start with one. Names that would
+			//leave the archive, such as ../x, are rejected rather than given a path outside of it.
+			final Path name;
+			try {
+				name = root.getFileSystem().getPath(entry.getName().replaceFirst("^/+", "")).normalize();
+			}
+			catch(InvalidPathException e) {
+				throw new ZipException("Entry " + entry.getName() + " of " + file + " is not a valid path: " + e.getMessage());
+			}
+			if(name.isAbsolute() || name.toString().isEmpty() || name.startsWith("..")) {
+				throw new ZipException("Entry " + entry.getName() + " of " + file + " is outside of the archive");
+			}
+			//Entries of unknown size are scheduled by their compressed size, and never read onto the heap whole
+			final long size = entry.getSize() >= 0 ? entry.getSize() : Math.max(0, entry.getCompressedSize());
+			entries.add(new SizedFile(root.resolve(name), size, null, new Entry(this, entry)));
+		}
+		this.remaining = new AtomicInteger(entries.size());
+	}
+
+	/**
+	 * Checks whether a file is a zip or jar archive, by its name.
+	 *
+	 * @param file the file to check
+	 * @return true if the file name ends with {@code .zip} or {@code .jar}, ignoring case
+	 */
+	static boolean isArchive(Path file) {
+		final Path name = file.getFileName();
+		if(name == null) {
+			return false;
+		}
+		final String string = name.toString().toLowerCase(Locale.ROOT);
+		return string.endsWith(".zip") || string.endsWith(".jar");
+	}
+
+	/**
+	 * Opens an archive and lists its entries.
+	 *
+	 * <p>
+	 * A file that only looks like an archive, but cannot be read as one, is not an error: a warning
+	 * is logged and {@code null} is returned, so that the file can be hashed as a whole instead.
+	 * Archives without any file entries, such as empty archives or archives of only directories,
+	 * are hashed as a whole as well, so that they still appear in the results.
+	 * </p>
+	 *
+	 * @param file the archive to open
+	 * @param open the set of open archives, which the archive adds itself to until it is closed
+	 * @return the opened archive, or {@code null} if the file is not a valid archive or has no file entries
+	 * @throws IOException if the file could not be read
+	 */
+	static Archive open(Path file, Set<Archive> open) throws IOException {
+		final ZipFile zip;
+		try {
+			zip = new ZipFile(file.toFile());
+		}
+		catch(ZipException | UnsupportedOperationException e) {
+			LOGGER.warn("[MassHash/WARN]: Could not open " + file + " as an archive, hashing it as a single file: " + e);
+			return null;
+		}
+		try {
+			Archive archive = new Archive(file, zip, open);
+			if(archive.entries.isEmpty()) {
+				//Nothing would be hashed in its place, so it would disappear from the results
+				zip.close();
+				return null;
+			}
+			open.add(archive);
+			return archive;
+		}
+		catch(IOException | RuntimeException e) {
+			zip.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the entries of this archive, in the order of its central directory
+	 */
+	List<SizedFile> entries() {
+		return entries;
+	}
+
+	/**
+	 * Closes the archive, even if some of its entries have not been hashed yet. Reads of those entries will fail.
+	 */
+	@Override
+	public void close() throws IOException {
+		open.remove(this);
+		zip.close();
+	}
+
+}
@@ -0,0 +1,374 @@
+package com.wildermods.masshash;
+
+import java.util.Objects;
+
+/**
+ * A compact, fixed-width {@link Hash} that stores the raw digest instead of its hexadecimal string.
+ *
+ * <p>
+ * The digest (up to {@link #MAX_LENGTH} bytes) is packed big-endian into four {@code long}s,
+ * so a {@code BinaryHash} costs a single small object, compared to the {@link String} and
+ * backing array of a hexadecimal hash. {@link #equals(Object)}, {@link #hashCode()} and
+ * {@link #compareTo(Hash)} work directly on the packed digest and never allocate when both
+ * sides are {@code BinaryHash}es.
+ * </p>
+ *
+ * <p>
+ * The hexadecimal representation is only produced when {@link #hash()} or {@link #toString()}
+ * is called. It is deliberately not cached, as caching it would bring back the memory cost
+ * this class exists to avoid.
+ * </p>
+ *
+ * <p>
+ * A {@code BinaryHash} is interchangeable with any other {@link Hash} of the same value:
+ * it is equal to it, has the same {@link #hashCode()}, and sorts the same way as its
+ * hexadecimal string (see {@link Hash#compare(Hash, Hash)}).
+ * </p>
+ */
+public final class BinaryHash implements Hash, Comparable<Hash> {
+
+	/**
+	 * The maximum length of a digest in bytes, enough for a SHA-256 digest.
+	 */
+	public static final int MAX_LENGTH = 32;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final long h0;
+	private final long h1;
+	private final long h2;
+	private final long h3;
+	private final int length;
+	private final HashAlgorithm algorithm;
+	private int hashCode;
+
+	private BinaryHash(HashAlgorithm algorithm, long h0, long h1, long h2, long h3, int length) {
+		this.algorithm = Objects.requireNonNull(algorithm, "Algorithm cannot be null.");
+		this.h0 = h0;
+		this.h1 = h1;
+		this.h2 = h2;
+		this.h3 = h3;
+		this.length = length;
+	}
+
+	/**
+	 * Creates a {@code BinaryHash} from a raw SHA-1 digest.
+	 *
+	 * @param digest the digest bytes, the array is not retained
+	 * @return a new {@code BinaryHash}
+	 * @throws IllegalArgumentException if the digest is empty or longer than {@link #MAX_LENGTH}
+	 */
+	public static BinaryHash of(byte[] digest) {
+		return of(StandardHashAlgorithm.SHA_1, digest);
+	}
+
+	/**
+	 * Creates a {@code BinaryHash} from a raw digest produced by the given algorithm.
+	 *
+	 * @param algorithm the algorithm that produced the digest
+	 * @param digest the digest bytes, the array is not retained
+	 * @return a new {@code BinaryHash}
+	 * @throws IllegalArgumentException if the digest is empty or longer than {@link #MAX_LENGTH}
+	 */
+	public static BinaryHash of(HashAlgorithm algorithm, byte[] digest) {
+		Objects.requireNonNull(digest, "Digest cannot be null.");
+		return of(algorithm, digest, 0, digest.length);
+	}
+
+	/**
+	 * Creates a {@code BinaryHash} from a region of an array containing a raw digest.
+	 *
+	 * @param algorithm the algorithm that produced the digest
+	 * @param digest the array containing the digest, the array is not retained
+	 * @param offset the offset of the digest in the array
+	 * @param length the length of the digest in bytes
+	 * @return a new {@code BinaryHash}
+	 * @throws IllegalArgumentException if the length is less than 1 or greater than {@link #MAX_LENGTH}
+	 */
+	public static BinaryHash of(HashAlgorithm algorithm, byte[] digest, int offset, int length) {
+		Objects.requireNonNull(digest, "Digest cannot be null.");
+		checkLength(length);
+		Objects.checkFromIndexSize(offset, length, digest.length);
+		return new BinaryHash(
+			algorithm,
+			pack(digest, offset, length, 0),
+			pack(digest, offset, length, 1),
+			pack(digest, offset, length, 2),
+			pack(digest, offset, length, 3),
+			length
+		);
+	}
+
+	/**
+	 * Parses a hexadecimal SHA-1 hash string into a {@code BinaryHash}.
+	 *
+	 * @param hex the hexadecimal hash, upper or lower case, with an even number of digits
+	 * @return a new {@code BinaryHash}
+	 * @throws IllegalArgumentException if the string is not a valid hexadecimal hash of at most {@link #MAX_LENGTH} bytes
+	 */
+	public static BinaryHash fromHex(String hex) {
+		return fromHex(StandardHashAlgorithm.SHA_1, hex);
+	}
+
+	/**
+	 * Parses a hexadecimal hash string produced by the given algorithm into a {@code BinaryHash}.
+	 *
+	 * @param algorithm the algorithm that produced the hash
+	 * @param hex the hexadecimal hash, upper or lower case, with an even number of digits
+	 * @return a new {@code BinaryHash}
+	 * @throws IllegalArgumentException if the string is not a valid hexadecimal hash of at most {@link #MAX_LENGTH} bytes
+	 */
+	public static BinaryHash fromHex(HashAlgorithm algorithm, String hex) {
+		Objects.requireNonNull(hex, "Hex string cannot be null.");
+		if((hex.length() & 1) != 0) {
+			throw new IllegalArgumentException("Hex string must have an even number of digits: " + hex);
+		}
+		final int length = hex.length() / 2;
+		checkLength(length);
+		return new BinaryHash(
+			algorithm,
+			packHex(hex, length, 0),
+			packHex(hex, length, 1),
+			packHex(hex, length, 2),
+			packHex(hex, length, 3),
+			length
+		);
+	}
+
+	/**
+	 * Converts any {@link Hash} into a {@code BinaryHash}.
+	 *
+	 * @param hash the hash to convert
+	 * @return the hash itself if it already is a {@code BinaryHash}, otherwise a {@code BinaryHash} parsed from its hexadecimal value
+	 * @throws IllegalArgumentException if the hash is not a valid hexadecimal hash
+	 */
+	public static BinaryHash of(Hash hash) {
+		if(hash instanceof BinaryHash) {
+			return (BinaryHash) hash;
+		}
+		return fromHex(hash.algorithm(), hash.hash());
+	}
+
+	/**
+	 * Creates a {@code BinaryHash} from a digest that is already packed into words,
+	 * as returned by {@link #word(int)}.
+	 *
+	 * @param algorithm the algorithm that produced the digest
+	 * @param length the length of the digest in bytes
+	 * @param words the array holding the packed digest, only the words covering {@code length} bytes are read
+	 * @param offset the index of the first word of the digest in {@code words}
+	 * @return a new {@code BinaryHash}
+	 */
+	static BinaryHash ofWords(HashAlgorithm algorithm, int length, long[] words, int offset) {
+		checkLength(length);
+		final int count = words(length);
+		return new BinaryHash(
+			algorithm,
+			words[offset],
+			count > 1 ? words[offset + 1] : 0,
+			count > 2 ? words[offset + 2] : 0,
+			count > 3 ? words[offset + 3] : 0,
+			length
+		);
+	}
+
+	/**
+	 * @param length the length of a digest in bytes
+	 * @return the number of words needed to hold the digest
+	 */
+	static int words(int length) {
+		return (length + 7) >>> 3;
+	}
+
+	/**
+	 * Packs the bytes of the digest that belong to the given word, big-endian.
+	 * Bytes past the end of the digest are zero.
+	 */
+	private static long pack(byte[] digest, int offset, int length, int word) {
+		long packed = 0;
+		for(int i = word * 8; i < Math.min(length, word * 8 + 8); i++) {
+			packed |= (digest[offset + i] & 0xFFL) << (56 - ((i & 7) << 3));
+		}
+		return packed;
+	}
+
+	private static long packHex(String hex, int length, int word) {
+		long packed = 0;
+		for(int i = word * 8; i < Math.min(length, word * 8 + 8); i++) {
+			int hi = Character.digit(hex.charAt(i * 2), 16);
+			int lo = Character.digit(hex.charAt(i * 2 + 1), 16);
+			if(hi < 0 || lo < 0) {
+				throw new IllegalArgumentException("Not a hex string: " + hex);
+			}
+			packed |= (long)((hi << 4) | lo) << (56 - ((i & 7) << 3));
+		}
+		return packed;
+	}
+
+	private static void checkLength(int length) {
+		if(length < 1 || length > MAX_LENGTH) {
+			throw new IllegalArgumentException("Digest length must be between 1 and " + MAX_LENGTH + " bytes, got " + length);
+		}
+	}
+
+	@Override
+	public HashAlgorithm algorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * @return the length of the digest in bytes
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Returns the byte of the digest at the given index.
+	 *
+	 * @param index the index of the byte, from 0 to {@link #length()} (exclusive)
+	 * @return the byte at the given index
+	 */
+	public byte byteAt(int index) {
+		Objects.checkIndex(index, length);
+		return (byte) (word(index >>> 3) >>> (56 - ((index & 7) << 3)));
+	}
+
+	/**
+	 * @return a new array containing the raw digest
+	 */
+	public byte[] toBytes() {
+		byte[] bytes = new byte[length];
+		for(int i = 0; i < length; i++) {
+			bytes[i] = byteAt(i);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns one of the four words the digest is packed into, big-endian.
+	 * Bytes past the end of the digest are zero.
+	 *
+	 * @param index the index of the word, from 0 to 3
+	 * @return the word at the given index
+	 */
+	long word(int index) {
+		switch(index) {
+			case 0: return h0;
+			case 1: return h1;
+			case 2: return h2;
+			case 3: return h3;
+			default: throw new IndexOutOfBoundsException(index);
+		}
+	}
+
+	/**
+	 * Returns the hexadecimal representation of this hash. A new string is built on every call.
+	 *
+	 * @return the hash value as a lowercase hexadecimal string.
+	 */
+	@Override
+	public String hash() {
+		char[] hex = new char[length * 2];
+		for(int i = 0; i < length; i++) {
+			int b = byteAt(i) & 0xFF;
+			hex[i * 2] = HEX[b >>> 4];
+			hex[i * 2 + 1] = HEX[b & 0xF];
+		}
+		return new String(hex);
+	}
+
+	@Override
+	public boolean hashEquals(Hash other) {
+		if(other instanceof BinaryHash) {
+			return equals(other);
+		}
+		return Hash.super.hashEquals(other);
+	}
+
+	/**
+	 * Returns the same value as {@code hash().hashCode()}, computed from the digest without
+	 * building the string, so that a {@code BinaryHash} and a {@link Blob} of the same value
+	 * can be used interchangeably as keys in hash based collections.
+	 */
+	@Override
+	public int hashCode() {
+		int h = hashCode;
+		if(h == 0) {
+			for(int i = 0; i < length; i++) {
+				int b = byteAt(i) & 0xFF;
+				h = 31 * h + HEX[b >>> 4];
+				h = 31 * h + HEX[b & 0xF];
+			}
+			hashCode = h;
+		}
+		return h;
+	}
+
+	/**
+	 * Compares this hash with another object for equality.
+	 * <p>
+	 * Two {@code BinaryHash}es are compared by their digests. Any other {@link Hash} is
+	 * compared by its hexadecimal value, the same way {@link Blob#equals(Object)} does.
+	 * Hashes produced by different {@link HashAlgorithm}s are never equal.
+	 * </p>
+	 *
+	 * @param o the object to compare with this hash.
+	 * @return {@code true} if the other object is a {@link Hash} with the same value; {@code false} otherwise.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if(this == o) {
+			return true;
+		}
+		if(o instanceof BinaryHash) {
+			BinaryHash other = (BinaryHash) o;
+			return h0 == other.h0 && h1 == other.h1 && h2 == other.h2 && h3 == other.h3 && length == other.length && algorithm.equals(other.algorithm);
+		}
+		if(o instanceof Hash) {
+			return hash().equals(((Hash) o).hash()) && algorithm.equals(((Hash) o).algorithm());
+		}
+		return false;
+	}
+
+	/**
+	 * Compares this hash to another hash, in the order of their hexadecimal values.
+	 *
+	 * @see Hash#compare(Hash, Hash)
+	 */
+	@Override
+	public int compareTo(Hash o) {
+		if(o instanceof BinaryHash) {
+			BinaryHash other = (BinaryHash) o;
+			int c = Long.compareUnsigned(h0, other.h0);
+			if(c == 0) {
+				c = Long.compareUnsigned(h1, other.h1);
+				if(c == 0) {
+					c = Long.compareUnsigned(h2, other.h2);
+					if(c == 0) {
+						c = Long.compareUnsigned(h3, other.h3);
+						if(c == 0) {
+							c = Integer.compare(length, other.length);
+							if(c == 0 && !algorithm.equals(other.algorithm)) {
+								c = algorithm.getName().compareTo(other.algorithm.getName());
+							}
+						}
+					}
+				}
+			}
+			return c;
+		}
+		return hash().compareTo(o.hash());
+	}
+
+	/**
+	 * Returns the hexadecimal representation of this hash.
+	 *
+	 * @return the hash as a string.
+	 */
+	@Override
+	public String toString() {
+		return hash();
+	}
+
+}
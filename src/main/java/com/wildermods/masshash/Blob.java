@@ -4,16 +4,24 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Objects;
 
 import com.wildermods.masshash.exception.IntegrityException;
-import com.wildermods.masshash.utils.ByteUtil;
 
 /**
  * Represents a data blob with associated hash. The Blob can store the data as
  * a byte array and its hash, and includes methods for verifying the integrity
  * of the data by checking its hash.
+ * <p>
+ * Blobs remember the {@link HashAlgorithm} their hash was computed with. Constructors
+ * that do not take an algorithm use {@link StandardHashAlgorithm#SHA_1}.
+ * </p>
  */
-public record Blob(byte[] data, String hash) implements IBlob {
+public record Blob(byte[] data, String hash, HashAlgorithm algorithm) implements IBlob {
+
+    public Blob {
+        Objects.requireNonNull(algorithm, "Algorithm cannot be null.");
+    }
 
     /**
      * Constructs a Blob from the given data and computes its hash.
@@ -21,24 +29,48 @@ public record Blob(byte[] data, String hash) implements IBlob {
      * @param data The byte array representing the data.
      */
     public Blob(byte[] data) {
-        this(data, ByteUtil.hash(data));
+        this(data, StandardHashAlgorithm.SHA_1);
+    }
+
+    /**
+     * Constructs a Blob from the given data and computes its hash with the given algorithm.
+     *
+     * @param data The byte array representing the data.
+     * @param algorithm The algorithm to hash the data with.
+     */
+    public Blob(byte[] data, HashAlgorithm algorithm) {
+        this(data, algorithm.hash(data).hash(), algorithm);
+    }
+
+    /**
+     * Constructs a Blob from the given data and SHA-1 hash, without verifying it.
+     *
+     * @param data The byte array representing the data.
+     * @param hash The SHA-1 hash of the data.
+     */
+    public Blob(byte[] data, String hash) {
+        this(data, hash, StandardHashAlgorithm.SHA_1);
     }
 
     /**
      * Constructs a Blob from the given data and hash.
      *
      * @param data The byte array representing the data.
-     * @param hash The hash of the data.
+     * @param hash The hash of the data. The data is verified with the hash's {@link Hash#algorithm()}.
      * 
      * @throws IntegrityException if the provided hash does not match the data's hash.
      */
     public Blob(byte[] data, Hash hash) throws IntegrityException {
-        this(data, hash.hash());
+        this(data, hash.hash(), hash.algorithm());
         verify();
     }
 
     /**
      * Constructs a Blob from the contents of a file.
+     * <p>
+     * The whole file is read into memory. If only the hash of the file is needed,
+     * use {@link Hash#compute(Path)} instead, which streams the file.
+     * </p>
      *
      * @param path The path to the file.
      * @throws IOException if an I/O error occurs while reading the file.
@@ -71,11 +103,15 @@ public record Blob(byte[] data, String hash) implements IBlob {
      * @throws IntegrityException if the file's hash does not match the provided hash.
      */
     public Blob(Path path, Hash hash) throws IOException, IntegrityException {
-        this(path, hash.hash());
+        this(Files.readAllBytes(path), hash);
     }
 
     /**
      * Constructs a Blob from the data read from an InputStream.
+     * <p>
+     * All remaining data in the stream is read into memory. If only the hash of the data
+     * is needed, use {@link Hash#compute(InputStream)} instead.
+     * </p>
      *
      * @param stream The InputStream from which data is read.
      * @throws IOException if an I/O error occurs while reading from the stream.
@@ -108,7 +144,7 @@ public record Blob(byte[] data, String hash) implements IBlob {
      * @throws IntegrityException if the data's hash does not match the provided hash.
      */
     public Blob(InputStream stream, Hash hash) throws IOException, IntegrityException {
-        this(stream, hash.hash());
+        this(stream.readAllBytes(), hash);
     }
 	
     /**
@@ -121,7 +157,7 @@ public record Blob(byte[] data, String hash) implements IBlob {
 		if(isTransient()) {
 			throw new UnsupportedOperationException("Data already dropped!");
 		}
-		return new Blob((byte[])null, hash);
+		return new Blob((byte[])null, hash, algorithm);
 	}
 	
 	/**
@@ -137,6 +173,17 @@ public record Blob(byte[] data, String hash) implements IBlob {
 		return data;
 	}
 	
+	/**
+	 * Checks if this Blob is data-less, either because its data was dropped or because it
+	 * was created from a hash alone.
+	 * 
+	 * @return true if this Blob holds no data, false otherwise
+	 */
+	@Override
+	public boolean isTransient() {
+		return data == null;
+	}
+	
 	@Override
 	public int hashCode() {
 		return hash.hashCode();
@@ -147,7 +194,7 @@ public record Blob(byte[] data, String hash) implements IBlob {
 	 * <p>
 	 * Two {@link Hash} objects are considered equal if their hashes are the same. This method specifically compares
 	 * the hash of the other object with the hash of this object. If the other object is not an instance of {@link Hash},
-	 * the method returns {@code false}.
+	 * or was produced by a different {@link HashAlgorithm}, the method returns {@code false}.
 	 * </p>
 	 * 
 	 * @param o the object to compare with this Hash object.
@@ -156,7 +203,7 @@ public record Blob(byte[] data, String hash) implements IBlob {
 	@Override
 	public boolean equals(Object o) {
 	    if(o instanceof Hash) {
-	        return hash().equals(((Hash) o).hash());
+	        return hash().equals(((Hash) o).hash()) && algorithm.equals(((Hash) o).algorithm());
 	    }
 	    return false;
 	}
@@ -164,7 +211,7 @@ public record Blob(byte[] data, String hash) implements IBlob {
 	/**
 	 * Verifies that the data stored in this object matches the provided hash.
 	 * <p>
-	 * This method computes the hash of the current data and compares it to the expected hash. If the hashes do not match,
+	 * This method computes the hash of the current data with this Blob's {@link #algorithm()} and compares it to the expected hash. If the hashes do not match,
 	 * an {@link IntegrityException} is thrown. This method ensures the integrity of the data.
 	 * </p>
 	 * 
@@ -172,7 +219,7 @@ public record Blob(byte[] data, String hash) implements IBlob {
 	 */
 	@Override
 	public void verify() throws IntegrityException {
-		String dataHash = ByteUtil.hash(data());
+		String dataHash = algorithm.hash(data()).hash();
 		if(!dataHash.equals(hash)) {
 			throw new IntegrityException("Expected hash " + hash + " but got " + dataHash);
 		}
@@ -0,0 +1,57 @@
+package com.wildermods.masshash;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.wildermods.masshash.utils.ByteUtil;
+
+/**
+ * Per-thread {@link MessageDigest}s, digest output buffers and read buffers, backing {@link HashAlgorithm#digest()}.
+ */
+final class DigestPool {
+
+	private static final ThreadLocal<DigestPool> POOL = ThreadLocal.withInitial(DigestPool::new);
+
+	private final Map<HashAlgorithm, MessageDigest> digests = new IdentityHashMap<>();
+	private final byte[] output = new byte[BinaryHash.MAX_LENGTH];
+	private ByteBuffer buffer;
+
+	private DigestPool() {}
+
+	static MessageDigest get(HashAlgorithm algorithm) {
+		MessageDigest digest = POOL.get().digests.computeIfAbsent(algorithm, HashAlgorithm::newDigest);
+		digest.reset();
+		return digest;
+	}
+
+	/**
+	 * Returns the calling thread's direct read buffer, cleared. Channels read into a direct buffer
+	 * without an intermediate copy, and digests read it in place, so reading and digesting a file
+	 * through it allocates nothing. The buffer is only allocated by threads that read files.
+	 */
+	static ByteBuffer buffer() {
+		DigestPool pool = POOL.get();
+		if(pool.buffer == null) {
+			pool.buffer = ByteBuffer.allocateDirect(ByteUtil.STREAM_BUFFER_SIZE);
+		}
+		return pool.buffer.clear();
+	}
+
+	/**
+	 * Completes the digest into the calling thread's output buffer, so that the only
+	 * allocation is the resulting {@link BinaryHash}.
+	 */
+	static BinaryHash finish(HashAlgorithm algorithm, MessageDigest digest) {
+		byte[] output = POOL.get().output;
+		try {
+			int length = digest.digest(output, 0, output.length);
+			return BinaryHash.of(algorithm, output, 0, length);
+		} catch (DigestException e) {
+			throw new IllegalStateException(algorithm.getName() + " digests are longer than " + BinaryHash.MAX_LENGTH + " bytes", e);
+		}
+	}
+
+}
@@ -0,0 +1,244 @@
+package com.wildermods.masshash;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.TreeMultimap;
+import com.wildermods.masshash.HashScheduler.SizedFile;
+
+/**
+ * A {@link Hasher} that finds duplicate files while reading as little of them as possible.
+ *
+ * <p>
+ * Files can only be duplicates of files of the same size, so most files never need to be read:
+ * </p>
+ * <ol>
+ *   <li>Files are grouped by size. Files with a unique size are dropped without being read.</li>
+ *   <li>The remaining files are grouped by a partial hash of their first and last
+ *   {@link #PARTIAL_SIZE} bytes. Files that differ near either end are dropped after reading
+ *   only those bytes.</li>
+ *   <li>Only files that still collide are hashed in full, with the same pipeline as {@link Hasher}.</li>
+ * </ol>
+ *
+ * <p>
+ * The {@link #results()} have the same shape as those of a {@link Hasher}, but only contain
+ * hashes shared by two or more files. Each key is the full content hash of its files, with the
+ * {@link HasherOptions#algorithm()}. Files are always streamed, and never held in memory as a whole.
+ * The {@link #metrics()} only cover the files hashed in full, and are {@code null} if there were none.
+ * </p>
+ */
+public class DuplicateHasher extends Hasher {
+
+	/**
+	 * The number of bytes read from each end of a file for its partial hash. Files of up to
+	 * twice this size are read completely, so their partial hash is their full hash.
+	 */
+	public static final int PARTIAL_SIZE = 4096;
+
+	/**
+	 * Finds the duplicate files in the given stream, using one thread per available processor.
+	 *
+	 * @param files a stream of {@link Path} objects to search
+	 * @throws IOException if an I/O error occurs during hashing
+	 */
+	public DuplicateHasher(final Stream<Path> files) throws IOException {
+		this(files, Runtime.getRuntime().availableProcessors(), HasherOptions.HASH_ONLY, (p) -> true);
+	}
+
+	/**
+	 * Finds the duplicate files among the files matching the given predicate from the provided stream.
+	 * <p>
+	 * Unlike {@link Hasher}, no exception is thrown if no files match the predicate, since
+	 * finding no duplicates is an ordinary result.
+	 * </p>
+	 *
+	 * @param files a stream of {@link Path} objects to search
+	 * @param threads the number of threads to use for parallel hashing (adjusted to 1 if less than 1)
+	 * @param options the options controlling how files are hashed. Files are always streamed,
+	 *        regardless of {@link HasherOptions#streaming()}, and archives are compared as whole files.
+	 * @param predicate a predicate to filter files before processing
+	 * @throws IOException if an I/O error occurs during hashing
+	 */
+	public DuplicateHasher(final Stream<Path> files, int threads, final HasherOptions options, final Predicate<Path> predicate) throws IOException {
+		Objects.requireNonNull(files);
+		Objects.requireNonNull(options);
+		Objects.requireNonNull(predicate);
+		if(threads < 1) {
+			logger.warn("[MassHash/WARN]: Thread count less than 1. Using 1 thread instead.");
+			threads = 1;
+		}
+		final HashAlgorithm algorithm = options.algorithm();
+
+		//Group by size, every file needs to be statted before any can be ruled out
+		final Map<Long, List<SizedFile>> bySize = files.parallel()
+			.filter(predicate)
+			.map(HashScheduler::stat)
+			.filter(Objects::nonNull)
+			.collect(Collectors.groupingBy(SizedFile::size));
+
+		final List<SizedFile> candidates = new ArrayList<>();
+		for(List<SizedFile> group : bySize.values()) {
+			if(group.size() > 1) {
+				candidates.addAll(group);
+			}
+		}
+
+		final TreeMultimap<Hash, Path> sorted = TreeMultimap.create(
+			Hash::compare,
+			Ordering.natural()
+		);
+
+		//Group the candidates by size and partial hash. Files that fit within the partial read were
+		//hashed completely by it, so their partial hash is their full hash and they go straight into
+		//the results.
+		final List<SizedFile> remaining = new ArrayList<>();
+		for(Map.Entry<Partial, List<SizedFile>> group : partials(candidates, threads, algorithm).entrySet()) {
+			if(group.getKey().hash() == null) {
+				//Changed since they were statted, so neither their size nor a partial read can be trusted
+				remaining.addAll(group.getValue());
+				continue;
+			}
+			if(group.getValue().size() < 2) {
+				continue;
+			}
+			if(group.getKey().size() <= 2L * PARTIAL_SIZE) {
+				for(SizedFile file : group.getValue()) {
+					sorted.put(group.getKey().hash(), file.path());
+				}
+			}
+			else {
+				remaining.addAll(group.getValue());
+			}
+		}
+
+		//Hash the files that still collide in full
+		if(!remaining.isEmpty()) {
+			try(HashPipeline pipeline = new HashPipeline(threads, options.withStreaming(true).withIndexedResults(false).withExpandedArchives(false), (p, b) -> {}, false)) {
+				for(SizedFile file : remaining) {
+					pipeline.submit(file);
+				}
+				sorted.putAll(pipeline.finish());
+				metrics = pipeline.metrics();
+			}
+			catch(IOException e) {
+				throw logger.throwing(e);
+			}
+		}
+
+		//Drop the hashes that turned out to be unique
+		sorted.keySet().removeIf(hash -> sorted.get(hash).size() < 2);
+
+		//Wrap the result in a synchronized structure, or index it, for thread safe access later
+		blobs = options.indexResults() ? HashIndex.of(sorted).asMultimap() : Multimaps.synchronizedSetMultimap(sorted);
+
+		logger.info("Duplicate search complete, read " + remaining.size() + " of " + candidates.size() + " candidate files in full");
+	}
+
+	/**
+	 * The size and partial hash of a file, or a {@code null} hash if the file changed size while it was being read.
+	 */
+	private record Partial(long size, Hash hash) {}
+
+	/**
+	 * Computes the partial hashes of the candidates in parallel.
+	 *
+	 * @return the candidates, grouped by their size and partial hash
+	 */
+	private Map<Partial, List<SizedFile>> partials(List<SizedFile> candidates, int threads, HashAlgorithm algorithm) throws IOException {
+		if(candidates.isEmpty()) {
+			return Map.of();
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			return pool.submit(() -> candidates.parallelStream()
+				.collect(Collectors.groupingByConcurrent(file -> {
+					try {
+						byte[] partial = readPartial(file);
+						return new Partial(file.size(), partial != null ? algorithm.hash(partial) : null);
+					}
+					catch(IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}))
+			).get();
+		}
+		catch(ExecutionException e) {
+			Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+			throw logger.throwing(new IOException("Thread pool failed", cause));
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw logger.throwing(new IOException("Interrupted while hashing", e));
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads the first and last {@link #PARTIAL_SIZE} bytes of a file, or the whole file if it is
+	 * no larger than twice that.
+	 *
+	 * @param file the file to read
+	 * @return the bytes read, or {@code null} if the file is no longer the size it was statted with
+	 * @throws IOException if an I/O error occurs while reading the file
+	 */
+	private static byte[] readPartial(SizedFile file) throws IOException {
+		final long size = file.size();
+		try(FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ)) {
+			if(channel.size() != size) {
+				return null;
+			}
+			final ByteBuffer buffer;
+			if(size <= 2L * PARTIAL_SIZE) {
+				buffer = ByteBuffer.allocate((int)size);
+				if(!readFully(channel, buffer, 0)) {
+					return null;
+				}
+			}
+			else {
+				buffer = ByteBuffer.allocate(2 * PARTIAL_SIZE);
+				buffer.limit(PARTIAL_SIZE);
+				if(!readFully(channel, buffer, 0)) {
+					return null;
+				}
+				buffer.limit(2 * PARTIAL_SIZE);
+				if(!readFully(channel, buffer, size - PARTIAL_SIZE)) {
+					return null;
+				}
+			}
+			//A file that grew while it was read would be hashed as if it were shorter
+			return channel.size() == size ? buffer.array() : null;
+		}
+	}
+
+	/**
+	 * @return false if the end of the file was reached before the buffer was full
+	 */
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if(read < 0) {
+				return false;
+			}
+			position += read;
+		}
+		return true;
+	}
+
+}
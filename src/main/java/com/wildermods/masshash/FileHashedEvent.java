@@ -0,0 +1,44 @@
+package com.wildermods.masshash;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A JDK Flight Recorder event for each file hashed by a {@link HashPipeline}.
+ * The duration of the event is the whole time taken to hash the file.
+ */
+@Name("com.wildermods.masshash.FileHashed")
+@Label("File Hashed")
+@Category("MassHash")
+@Description("A file was hashed")
+@StackTrace(false)
+final class FileHashedEvent extends Event {
+
+	@Label("Path")
+	String path;
+
+	@Label("Size")
+	@DataAmount
+	long size;
+
+	@Label("Read Time")
+	@Description("Time spent waiting for the file's contents")
+	@Timespan
+	long readTime;
+
+	@Label("Digest Time")
+	@Description("Time spent digesting the file's contents")
+	@Timespan
+	long digestTime;
+
+	@Label("Cached")
+	@Description("Whether the hash was taken from the cache without reading the file")
+	boolean cached;
+
+}
@@ -1,5 +1,12 @@
 package com.wildermods.masshash;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.wildermods.masshash.utils.ByteUtil;
+
 /**
  * A functional interface representing a hash. It provides methods for obtaining 
  * the hash value as a string and for comparing it to other hashes.
@@ -14,6 +21,19 @@ public interface Hash {
 	 */
 	public String hash();
 	
+	/**
+	 * Returns the algorithm that produced this hash.
+	 * <p>
+	 * Hashes that do not know their algorithm are assumed to be {@link StandardHashAlgorithm#SHA_1}
+	 * hashes, as that was the only algorithm supported by earlier versions of MassHash.
+	 * </p>
+	 * 
+	 * @return the algorithm of this hash.
+	 */
+	public default HashAlgorithm algorithm() {
+		return StandardHashAlgorithm.SHA_1;
+	}
+	
 	/**
 	 * Compares this hash to another hash and returns true if they are equal.
 	 * 
@@ -34,6 +54,27 @@ public interface Hash {
 		return hash().equals(hash);
 	}
 	
+	/**
+	 * Compares two hashes in the order of their hexadecimal values.
+	 * <p>
+	 * This is the order {@link Hasher} sorts its results by. When both hashes are
+	 * {@link BinaryHash}es they are compared by their digests, without building any strings.
+	 * </p>
+	 * 
+	 * @param a the first hash
+	 * @param b the second hash
+	 * @return a negative integer, zero, or a positive integer as {@code a} sorts before, the same as, or after {@code b}
+	 */
+	public static int compare(Hash a, Hash b) {
+		if(a instanceof BinaryHash) {
+			return ((BinaryHash) a).compareTo(b);
+		}
+		if(b instanceof BinaryHash) {
+			return -((BinaryHash) b).compareTo(a);
+		}
+		return a.hash().compareTo(b.hash());
+	}
+	
 	/**
 	 * Creates a new {@link Hash} instance from the given string hash value.
 	 * 
@@ -43,4 +84,61 @@ public interface Hash {
 	public static Hash of(String hash) {
 		return new Blob((byte[])null, hash);
 	}
+	
+	/**
+	 * Creates a new {@link Hash} instance from the given string hash value, produced by the given algorithm.
+	 * 
+	 * @param hash the string hash value.
+	 * @param algorithm the algorithm that produced the hash.
+	 * @return a new {@link Hash} instance.
+	 */
+	public static Hash of(String hash, HashAlgorithm algorithm) {
+		return new Blob((byte[])null, hash, algorithm);
+	}
+	
+	/**
+	 * Computes the SHA-1 {@link Hash} of the contents of a file without loading the file into memory.
+	 * <p>
+	 * The file is streamed through a fixed-size buffer (see {@link ByteUtil#update(java.security.MessageDigest, InputStream)}),
+	 * so this is safe to use on files of any size, including files larger than 2 GB which
+	 * cannot be represented by a {@link Blob}.
+	 * </p>
+	 * 
+	 * @param path the file to hash.
+	 * @return a {@link BinaryHash} of the file's contents.
+	 * @throws IOException if an I/O error occurs while reading the file.
+	 */
+	public static Hash compute(Path path) throws IOException {
+		return compute(path, StandardHashAlgorithm.SHA_1);
+	}
+	
+	/**
+	 * Computes the {@link Hash} of the contents of a file with the given algorithm, without loading the file into memory.
+	 * 
+	 * @param path the file to hash.
+	 * @param algorithm the algorithm to hash the file with.
+	 * @return a {@link BinaryHash} of the file's contents.
+	 * @throws IOException if an I/O error occurs while reading the file.
+	 * 
+	 * @see #compute(Path)
+	 */
+	public static Hash compute(Path path, HashAlgorithm algorithm) throws IOException {
+		try(InputStream stream = Files.newInputStream(path)) {
+			return algorithm.hash(stream);
+		}
+	}
+	
+	/**
+	 * Computes the SHA-1 {@link Hash} of the remaining contents of a stream without loading them into memory.
+	 * <p>
+	 * The stream is read until it is exhausted, but it is not closed.
+	 * </p>
+	 * 
+	 * @param stream the stream to hash.
+	 * @return a {@link BinaryHash} of the stream's contents.
+	 * @throws IOException if an I/O error occurs while reading from the stream.
+	 */
+	public static Hash compute(InputStream stream) throws IOException {
+		return StandardHashAlgorithm.SHA_1.hash(stream);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,144 @@
+package com.wildermods.masshash;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Objects;
+import java.util.ServiceLoader;
+
+import com.wildermods.masshash.utils.ByteUtil;
+
+/**
+ * A digest algorithm that can be used to compute {@link Hash}es.
+ *
+ * <p>
+ * Every algorithm is exposed as a {@link MessageDigest}, including non-cryptographic
+ * ones, so that all of the hashing paths (in memory, streamed and memory mapped) work
+ * the same way regardless of the algorithm. The built-in algorithms are listed in
+ * {@link StandardHashAlgorithm}. Additional algorithms can be provided through
+ * {@link ServiceLoader} by listing them in
+ * {@code META-INF/services/com.wildermods.masshash.HashAlgorithm}, and looked up with
+ * {@link #forName(String)}.
+ * </p>
+ *
+ * <p>
+ * Digests longer than {@link BinaryHash#MAX_LENGTH} bytes are not supported.
+ * </p>
+ */
+public interface HashAlgorithm {
+
+	/**
+	 * @return the name of this algorithm, such as {@code "SHA-1"}.
+	 */
+	public String getName();
+
+	/**
+	 * @return the length of the digests produced by this algorithm, in bytes.
+	 */
+	public int getDigestLength();
+
+	/**
+	 * Creates a new, independent {@link MessageDigest} for this algorithm.
+	 *
+	 * @return a new {@link MessageDigest}
+	 */
+	public MessageDigest newDigest();
+
+	/**
+	 * Returns a {@link MessageDigest} for this algorithm that belongs to the calling thread.
+	 * <p>
+	 * The digest is reset before it is returned, and the same instance is returned on every
+	 * call from the same thread, so that hashing many files does not create a new digest for
+	 * each file. The returned digest must not be shared with other threads, and must not be
+	 * used after this method is called again on the same thread.
+	 * </p>
+	 *
+	 * @return the calling thread's {@link MessageDigest} for this algorithm
+	 */
+	public default MessageDigest digest() {
+		return DigestPool.get(this);
+	}
+
+	/**
+	 * Hashes a byte array.
+	 *
+	 * @param bytes the bytes to hash
+	 * @return the hash of the bytes
+	 */
+	public default BinaryHash hash(byte[] bytes) {
+		Objects.requireNonNull(bytes, "Input byte array cannot be null.");
+		MessageDigest digest = digest();
+		digest.update(bytes);
+		return toHash(digest);
+	}
+
+	/**
+	 * Hashes the remaining contents of a stream through a fixed-size buffer.
+	 * The stream is read until it is exhausted, but it is not closed.
+	 *
+	 * @param stream the stream to hash
+	 * @return the hash of the stream's contents
+	 * @throws IOException if an I/O error occurs while reading from the stream
+	 *
+	 * @see ByteUtil#update(MessageDigest, InputStream)
+	 */
+	public default BinaryHash hash(InputStream stream) throws IOException {
+		MessageDigest digest = digest();
+		ByteUtil.update(digest, stream);
+		return toHash(digest);
+	}
+
+	/**
+	 * Hashes the entire contents of a file by mapping it into memory.
+	 *
+	 * @param channel the channel of the file to hash
+	 * @return the hash of the file's contents
+	 * @throws IOException if an I/O error occurs while mapping the file
+	 *
+	 * @see ByteUtil#updateMapped(MessageDigest, FileChannel)
+	 */
+	public default BinaryHash hashMapped(FileChannel channel) throws IOException {
+		MessageDigest digest = digest();
+		ByteUtil.updateMapped(digest, channel);
+		return toHash(digest);
+	}
+
+	/**
+	 * Completes a digest of this algorithm and returns the result as a {@link BinaryHash}.
+	 * The digest is reset afterwards.
+	 *
+	 * @param digest a digest obtained from {@link #digest()} or {@link #newDigest()}
+	 * @return the hash
+	 */
+	public default BinaryHash toHash(MessageDigest digest) {
+		return DigestPool.finish(this, digest);
+	}
+
+	/**
+	 * Finds an algorithm by its name.
+	 * <p>
+	 * The {@link StandardHashAlgorithm}s are checked first, followed by any algorithms
+	 * registered through {@link ServiceLoader}. Names are compared ignoring case.
+	 * </p>
+	 *
+	 * @param name the name of the algorithm, as returned by {@link #getName()}
+	 * @return the algorithm with the given name
+	 * @throws IllegalArgumentException if no algorithm has the given name
+	 */
+	public static HashAlgorithm forName(String name) {
+		Objects.requireNonNull(name);
+		for(StandardHashAlgorithm algorithm : StandardHashAlgorithm.values()) {
+			if(algorithm.getName().equalsIgnoreCase(name)) {
+				return algorithm;
+			}
+		}
+		for(HashAlgorithm algorithm : ServiceLoader.load(HashAlgorithm.class)) {
+			if(algorithm.getName().equalsIgnoreCase(name)) {
+				return algorithm;
+			}
+		}
+		throw new IllegalArgumentException("Unknown hash algorithm: " + name);
+	}
+
+}
@@ -0,0 +1,291 @@
+package com.wildermods.masshash;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A persistent cache of file hashes, keyed by the metadata of each file.
+ *
+ * <p>
+ * Each entry maps a file's absolute path to its hash, along with the file's size, last
+ * modification time and {@linkplain BasicFileAttributes#fileKey() file key} (the inode on
+ * most Unix systems) at the time it was hashed. A {@link Hasher} given a cache through
+ * {@link HasherOptions#withCache(HashCache)} does not read a file at all if none of its
+ * metadata has changed since it was cached, which turns rescans of mostly unchanged
+ * trees into little more than a directory walk.
+ * </p>
+ *
+ * <p>
+ * Trusting a cache means trusting that a file's contents did not change without its size,
+ * modification time or file key changing too. When that cannot be assumed, for example after
+ * restoring files with their original timestamps, {@link HasherOptions#withCacheVerification(boolean)}
+ * rehashes every file and reports cached hashes that turn out to be stale.
+ * </p>
+ *
+ * <p>
+ * A cache holds hashes of a single {@link HashAlgorithm}. It is stored in a compact binary format
+ * and {@linkplain #save() saved} atomically, so a crash while saving leaves the previous cache
+ * intact. A cache file that is missing, corrupt or for a different algorithm is treated as empty,
+ * since a cache can always be rebuilt by hashing.
+ * </p>
+ *
+ * <p>
+ * {@code HashCache} is thread-safe.
+ * </p>
+ */
+public final class HashCache {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	/**
+	 * "MHC" followed by the version of the format.
+	 */
+	private static final int MAGIC = 0x4D484301;
+
+	/**
+	 * Files modified this recently before they were hashed are not cached. A file modified again
+	 * within the resolution of its filesystem's timestamps (2 seconds on FAT) would otherwise keep
+	 * the same modification time, and its stale hash would be trusted.
+	 */
+	private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+	private record Entry(long size, long modified, String fileKey, BinaryHash hash, boolean used) {
+
+		boolean matches(BasicFileAttributes attributes) {
+			return size == attributes.size()
+				&& modified == HashCache.modified(attributes)
+				&& fileKey.equals(HashCache.fileKey(attributes));
+		}
+
+	}
+
+	private final Path file;
+	private final HashAlgorithm algorithm;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private HashCache(Path file, HashAlgorithm algorithm) {
+		this.file = Objects.requireNonNull(file, "File cannot be null.");
+		this.algorithm = Objects.requireNonNull(algorithm, "Algorithm cannot be null.");
+	}
+
+	/**
+	 * Loads a cache from a file, or creates an empty cache if the file does not exist.
+	 * <p>
+	 * If the file cannot be read, is corrupt, or holds hashes of a different algorithm,
+	 * a warning is logged and the cache starts out empty. It will be overwritten on
+	 * the next {@link #save()}.
+	 * </p>
+	 *
+	 * @param file the file the cache is stored in
+	 * @param algorithm the algorithm of the hashes in the cache
+	 * @return the loaded cache
+	 */
+	public static HashCache load(Path file, HashAlgorithm algorithm) {
+		HashCache cache = new HashCache(file, algorithm);
+		try {
+			cache.read();
+		}
+		catch(NoSuchFileException e) {
+			//No cache yet, start out empty
+		}
+		catch(IOException e) {
+			LOGGER.warn("[MassHash/WARN]: Could not load hash cache " + file + ", starting with an empty cache: " + e);
+			cache.entries.clear();
+		}
+		return cache;
+	}
+
+	/**
+	 * @return the file this cache is stored in
+	 */
+	public Path file() {
+		return file;
+	}
+
+	/**
+	 * @return the algorithm of the hashes in this cache
+	 */
+	public HashAlgorithm algorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * @return the number of files in this cache
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Looks up the cached hash of a file.
+	 *
+	 * @param path the file
+	 * @param attributes the current attributes of the file
+	 * @return the cached hash, or {@code null} if the file is not cached or changed since it was cached
+	 */
+	BinaryHash get(Path path, BasicFileAttributes attributes) {
+		String key = key(path);
+		Entry entry = entries.get(key);
+		if(entry == null || !entry.matches(attributes)) {
+			return null;
+		}
+		if(!entry.used()) {
+			entries.replace(key, entry, new Entry(entry.size(), entry.modified(), entry.fileKey(), entry.hash(), true));
+		}
+		return entry.hash();
+	}
+
+	/**
+	 * Caches the hash of a file.
+	 * <p>
+	 * If the file was already cached with the same attributes but a different hash, the cached
+	 * hash was stale and a warning is logged. Files that were modified too recently to be told
+	 * apart from a later modification are not cached.
+	 * </p>
+	 *
+	 * @param path the file
+	 * @param attributes the attributes of the file from before it was hashed
+	 * @param hash the hash of the file
+	 * @throws IllegalArgumentException if the hash is of a different algorithm than this cache
+	 */
+	void put(Path path, BasicFileAttributes attributes, BinaryHash hash) {
+		if(!algorithm.equals(hash.algorithm())) {
+			throw new IllegalArgumentException("Cannot cache a " + hash.algorithm().getName() + " hash in a " + algorithm.getName() + " cache.");
+		}
+		String key = key(path);
+		long modified = modified(attributes);
+		Entry previous;
+		if(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - modified < RACY_NANOS) {
+			previous = entries.remove(key);
+		}
+		else {
+			previous = entries.put(key, new Entry(attributes.size(), modified, fileKey(attributes), hash, true));
+		}
+		if(previous != null && previous.matches(attributes) && !previous.hash().equals(hash)) {
+			LOGGER.warn("[MassHash/WARN]: Cached hash of " + key + " was stale. The file changed without its size or modification time changing.");
+		}
+	}
+
+	/**
+	 * Removes every file that was not looked up or hashed since this cache was loaded, such as
+	 * files that were deleted. Call this before {@link #save()} if the cache should only hold
+	 * the files of the runs that used it.
+	 */
+	public void prune() {
+		entries.values().removeIf(entry -> !entry.used());
+	}
+
+	/**
+	 * Atomically replaces the cache file with the contents of this cache.
+	 * <p>
+	 * The cache is written to a temporary file next to the cache file, which is then moved
+	 * over the cache file.
+	 * </p>
+	 *
+	 * @throws IOException if the cache could not be written
+	 */
+	public void save() throws IOException {
+		Path dir = file.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+		try {
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				write(out);
+			}
+			try {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch(AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/*
+	 * Format, big-endian:
+	 *
+	 * int     magic
+	 * UTF     algorithm name
+	 * int     digest length
+	 * int     entry count
+	 * entries:
+	 *   UTF   absolute path
+	 *   long  size
+	 *   long  modification time, in nanoseconds since the epoch
+	 *   UTF   file key, or an empty string
+	 *   byte  digest[digest length]
+	 */
+
+	private void write(DataOutputStream out) throws IOException {
+		final int length = algorithm.getDigestLength();
+		final Map<String, Entry> snapshot = Map.copyOf(entries);
+		out.writeInt(MAGIC);
+		out.writeUTF(algorithm.getName());
+		out.writeInt(length);
+		out.writeInt(snapshot.size());
+		for(Map.Entry<String, Entry> e : snapshot.entrySet()) {
+			Entry entry = e.getValue();
+			out.writeUTF(e.getKey());
+			out.writeLong(entry.size());
+			out.writeLong(entry.modified());
+			out.writeUTF(entry.fileKey());
+			out.write(entry.hash().toBytes());
+		}
+	}
+
+	private void read() throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("Not a hash cache, or an unsupported version");
+			}
+			String name = in.readUTF();
+			int length = in.readInt();
+			if(!algorithm.getName().equalsIgnoreCase(name) || length != algorithm.getDigestLength()) {
+				throw new IOException("Cache holds " + name + " hashes, expected " + algorithm.getName());
+			}
+			int count = in.readInt();
+			byte[] digest = new byte[length];
+			for(int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				long size = in.readLong();
+				long modified = in.readLong();
+				String fileKey = in.readUTF();
+				in.readFully(digest);
+				entries.put(path, new Entry(size, modified, fileKey, BinaryHash.of(algorithm, digest), false));
+			}
+		}
+	}
+
+	private static String key(Path path) {
+		return path.toAbsolutePath().normalize().toString();
+	}
+
+	private static long modified(BasicFileAttributes attributes) {
+		return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+	}
+
+	private static String fileKey(BasicFileAttributes attributes) {
+		Object fileKey = attributes.fileKey();
+		return fileKey == null ? "" : fileKey.toString();
+	}
+
+}
@@ -0,0 +1,546 @@
+package com.wildermods.masshash;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.google.common.collect.SetMultimap;
+
+/**
+ * The changes between two sets of results, such as those of two versions of a game.
+ *
+ * <p>
+ * Every file that differs is reported as one {@link Change}:
+ * </p>
+ * <ul>
+ *   <li>{@link Kind#ADDED}: a new path, whose contents did not exist before.</li>
+ *   <li>{@link Kind#REMOVED}: a path that no longer exists, and was not moved.</li>
+ *   <li>{@link Kind#MODIFIED}: a path that exists in both, with different contents.</li>
+ *   <li>{@link Kind#MOVED}: a new path, whose contents used to be at a path that no longer exists.</li>
+ *   <li>{@link Kind#DUPLICATED}: a new path, whose contents already existed at another path, beyond
+ *   those that were moved.</li>
+ * </ul>
+ *
+ * <p>
+ * Results are sorted by hash, so the two sides are compared with a merge join in a single
+ * linear pass, instead of looking up every path in a map. The hash space is split into ranges
+ * which are joined in parallel. Only the paths that differ are then joined by path, to tell
+ * modified files apart from removed and added ones, so unchanged files cost nothing beyond the
+ * first pass.
+ * </p>
+ */
+public final class HashDiff {
+
+	/**
+	 * The smallest number of entries worth joining on a thread of its own.
+	 */
+	static final int MIN_RANGE = 4096;
+
+	/**
+	 * The kinds of {@link Change}s.
+	 */
+	public static enum Kind {
+		ADDED,
+		REMOVED,
+		MODIFIED,
+		MOVED,
+		DUPLICATED
+	}
+
+	/**
+	 * A change to a single path.
+	 *
+	 * @param kind what changed
+	 * @param path the path that changed
+	 * @param source for {@link Kind#MOVED} and {@link Kind#DUPLICATED}, the path in the earlier results that held
+	 *        the same contents, otherwise {@code null}
+	 * @param before the hash of the path in the earlier results, or {@code null} if it did not exist
+	 * @param after the hash of the path in the later results, or {@code null} if it no longer exists
+	 */
+	public static record Change(Kind kind, Path path, Path source, Hash before, Hash after) {
+
+		@Override
+		public String toString() {
+			switch(kind) {
+				case MOVED:
+				case DUPLICATED:
+					return kind + " " + source + " -> " + path;
+				default:
+					return kind + " " + path;
+			}
+		}
+
+	}
+
+	private final List<Change> changes;
+
+	private HashDiff(List<Change> changes) {
+		this.changes = changes;
+	}
+
+	/**
+	 * Compares two sets of results.
+	 *
+	 * @param before the earlier results
+	 * @param after the later results
+	 * @return the changes from {@code before} to {@code after}
+	 * @throws IllegalArgumentException if the results hold hashes of different algorithms
+	 */
+	public static HashDiff of(SetMultimap<Hash, Path> before, SetMultimap<Hash, Path> after) {
+		return of(HeapEntries.of(Objects.requireNonNull(before)), HeapEntries.of(Objects.requireNonNull(after)));
+	}
+
+	/**
+	 * Compares two manifests in place. Their mapped hash tables are merge joined by index, and
+	 * only the hashes and paths of entries that differ are read onto the heap.
+	 *
+	 * @param before the earlier manifest
+	 * @param after the later manifest
+	 * @return the changes from {@code before} to {@code after}
+	 * @throws IllegalArgumentException if the manifests hold hashes of different algorithms
+	 */
+	public static HashDiff of(Manifest before, Manifest after) {
+		if(!before.algorithm().equals(after.algorithm())) {
+			throw new IllegalArgumentException("Cannot compare " + before.algorithm().getName() + " and " + after.algorithm().getName() + " manifests.");
+		}
+		return of(new ManifestEntries(before), new ManifestEntries(after));
+	}
+
+	/**
+	 * @return every change, sorted by path
+	 */
+	public List<Change> changes() {
+		return changes;
+	}
+
+	/**
+	 * @param kind the kind of changes to return
+	 * @return the changes of the given kind, sorted by path
+	 */
+	public List<Change> changes(Kind kind) {
+		return changes.stream().filter(change -> change.kind() == kind).collect(Collectors.toUnmodifiableList());
+	}
+
+	/**
+	 * @return {@code true} if both results were the same
+	 */
+	public boolean isEmpty() {
+		return changes.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return changes.stream().map(Change::toString).collect(Collectors.joining("\n"));
+	}
+
+	/**
+	 * Entries of one side, sorted by hash, and by path within each hash. Both sides of a diff are
+	 * of the same kind, and hashes and paths are only decoded for the entries that differ.
+	 */
+	private static abstract class Entries {
+
+		abstract int size();
+
+		abstract Hash hash(int i);
+
+		abstract Path path(int i);
+
+		/**
+		 * Compares the hash of an entry of this side with the hash of an entry of {@code other}, which may be this side.
+		 */
+		abstract int compareHashes(int i, Entries other, int j);
+
+		/**
+		 * Compares the path of an entry of this side with the path of an entry of {@code other}, in
+		 * the order that paths are sorted in within each hash.
+		 */
+		abstract int comparePaths(int i, Entries other, int j);
+
+		/**
+		 * @return the index after the last entry with the same hash as the entry at {@code start}
+		 */
+		int groupEnd(int start) {
+			int end = start + 1;
+			while(end < size() && compareHashes(start, this, end) == 0) {
+				end++;
+			}
+			return end;
+		}
+
+		/**
+		 * @return the index of the first entry whose hash is not less than the hash of entry {@code j} of {@code other}
+		 */
+		int lowerBound(Entries other, int j) {
+			int low = 0;
+			int high = size();
+			while(low < high) {
+				int mid = (low + high) >>> 1;
+				if(compareHashes(mid, other, j) < 0) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+	}
+
+	/**
+	 * Entries copied out of a multimap.
+	 */
+	private static final class HeapEntries extends Entries {
+
+		private final Hash[] hashes;
+		private final Path[] paths;
+
+		private HeapEntries(Hash[] hashes, Path[] paths) {
+			this.hashes = hashes;
+			this.paths = paths;
+			sort();
+		}
+
+		private static HeapEntries of(SetMultimap<Hash, Path> results) {
+			//Iterating a synchronized multimap requires holding its lock, see Multimaps.synchronizedSetMultimap
+			synchronized(results) {
+				final Hash[] hashes = new Hash[results.size()];
+				final Path[] paths = new Path[hashes.length];
+				int i = 0;
+				for(Map.Entry<Hash, Path> entry : results.entries()) {
+					hashes[i] = entry.getKey();
+					paths[i++] = entry.getValue();
+				}
+				return new HeapEntries(hashes, paths);
+			}
+		}
+
+		@Override
+		int size() {
+			return hashes.length;
+		}
+
+		@Override
+		Hash hash(int i) {
+			return hashes[i];
+		}
+
+		@Override
+		Path path(int i) {
+			return paths[i];
+		}
+
+		@Override
+		int compareHashes(int i, Entries other, int j) {
+			return Hash.compare(hashes[i], ((HeapEntries)other).hashes[j]);
+		}
+
+		@Override
+		int comparePaths(int i, Entries other, int j) {
+			return paths[i].compareTo(((HeapEntries)other).paths[j]);
+		}
+
+		/**
+		 * Results from a {@link Hasher} or a {@link HashIndex} are already grouped by hash, so this
+		 * is usually a single pass. Other multimaps are sorted here.
+		 */
+		private void sort() {
+			for(int i = 1; i < hashes.length; i++) {
+				if(Hash.compare(hashes[i - 1], hashes[i]) > 0) {
+					Integer[] order = new Integer[hashes.length];
+					Arrays.setAll(order, n -> n);
+					Arrays.parallelSort(order, (a, b) -> Hash.compare(hashes[a], hashes[b]));
+					final Hash[] sortedHashes = new Hash[hashes.length];
+					final Path[] sortedPaths = new Path[hashes.length];
+					for(int n = 0; n < order.length; n++) {
+						sortedHashes[n] = hashes[order[n]];
+						sortedPaths[n] = paths[order[n]];
+					}
+					System.arraycopy(sortedHashes, 0, hashes, 0, hashes.length);
+					System.arraycopy(sortedPaths, 0, paths, 0, paths.length);
+					break;
+				}
+			}
+			//Paths are compared within each hash, so each group must be in natural order
+			for(int start = 0, end; start < hashes.length; start = end) {
+				end = groupEnd(start);
+				if(end - start > 1) {
+					Arrays.sort(paths, start, end);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * The entries of a manifest, compared in place in its mapped hash table. A manifest is
+	 * sorted by hash and then by the bytes of each path, so it needs no sorting.
+	 */
+	private static final class ManifestEntries extends Entries {
+
+		private final Manifest manifest;
+
+		private ManifestEntries(Manifest manifest) {
+			this.manifest = manifest;
+		}
+
+		@Override
+		int size() {
+			return manifest.size();
+		}
+
+		@Override
+		Hash hash(int i) {
+			return manifest.hashAt(i);
+		}
+
+		@Override
+		Path path(int i) {
+			return manifest.pathAt(manifest.pathIndexAt(i));
+		}
+
+		@Override
+		int compareHashes(int i, Entries other, int j) {
+			return Manifest.compareDigests(manifest, i, ((ManifestEntries)other).manifest, j);
+		}
+
+		@Override
+		int comparePaths(int i, Entries other, int j) {
+			final Manifest that = ((ManifestEntries)other).manifest;
+			return Manifest.comparePaths(manifest, manifest.pathIndexAt(i), that, that.pathIndexAt(j));
+		}
+
+	}
+
+	/**
+	 * A path that exists on only one side within a hash.
+	 *
+	 * @param hash the hash of the path
+	 * @param path the path
+	 * @param source a path of the hash in the earlier results which still holds it in the later results, or
+	 *        {@code null} if there is none
+	 */
+	private static record Candidate(Hash hash, Path path, Path source) {}
+
+	/**
+	 * The paths of one hash range that do not match up.
+	 */
+	private static final class Range {
+		private final List<Candidate> gone = new ArrayList<>();
+		private final List<Candidate> appeared = new ArrayList<>();
+		private int goneOffset;
+		private int appearedOffset;
+	}
+
+	private static HashDiff of(Entries before, Entries after) {
+		if(before.size() > 0 && after.size() > 0 && !before.hash(0).algorithm().equals(after.hash(0).algorithm())) {
+			throw new IllegalArgumentException("Cannot compare " + before.hash(0).algorithm().getName() + " and " + after.hash(0).algorithm().getName() + " hashes.");
+		}
+
+		//Split the earlier results into ranges of whole hashes, and find where each range starts in the later results
+		final int ranges = Math.max(1, Math.min(Math.max(before.size(), after.size()) / MIN_RANGE, ForkJoinPool.getCommonPoolParallelism() * 4));
+		final int[] beforeStarts = new int[ranges + 1];
+		final int[] afterStarts = new int[ranges + 1];
+		for(int r = 1; r < ranges; r++) {
+			int start = Math.max(beforeStarts[r - 1], (int)((long) before.size() * r / ranges));
+			if(start > 0 && start < before.size()) {
+				//Do not split a hash between ranges
+				start = before.groupEnd(start - 1);
+			}
+			beforeStarts[r] = start;
+			afterStarts[r] = start < before.size() ? after.lowerBound(before, start) : after.size();
+		}
+		beforeStarts[ranges] = before.size();
+		afterStarts[ranges] = after.size();
+
+		//First pass: join each range by hash
+		final Range[] joined = new Range[ranges];
+		IntStream.range(0, ranges).parallel().forEach(r -> {
+			joined[r] = join(before, beforeStarts[r], beforeStarts[r + 1], after, afterStarts[r], afterStarts[r + 1]);
+		});
+
+		//Second pass: join the leftover paths by path. A path gone from one hash and appeared under another was modified.
+		int goneCount = 0;
+		int appearedCount = 0;
+		for(Range range : joined) {
+			range.goneOffset = goneCount;
+			range.appearedOffset = appearedCount;
+			goneCount += range.gone.size();
+			appearedCount += range.appeared.size();
+		}
+		final Candidate[] gone = new Candidate[goneCount];
+		final Candidate[] appeared = new Candidate[appearedCount];
+		for(Range range : joined) {
+			for(int i = 0; i < range.gone.size(); i++) {
+				gone[range.goneOffset + i] = range.gone.get(i);
+			}
+			for(int i = 0; i < range.appeared.size(); i++) {
+				appeared[range.appearedOffset + i] = range.appeared.get(i);
+			}
+		}
+		final boolean[] goneModified = new boolean[gone.length];
+		final boolean[] appearedModified = new boolean[appeared.length];
+		final List<Change> changes = Collections.synchronizedList(new ArrayList<>());
+		final Integer[] goneByPath = byPath(gone);
+		final Integer[] appearedByPath = byPath(appeared);
+		for(int i = 0, j = 0; i < goneByPath.length && j < appearedByPath.length;) {
+			Candidate was = gone[goneByPath[i]];
+			Candidate is = appeared[appearedByPath[j]];
+			int cmp = was.path().compareTo(is.path());
+			if(cmp == 0) {
+				goneModified[goneByPath[i++]] = true;
+				appearedModified[appearedByPath[j++]] = true;
+				changes.add(new Change(Kind.MODIFIED, is.path(), null, was.hash(), is.hash()));
+			}
+			else if(cmp < 0) {
+				i++;
+			}
+			else {
+				j++;
+			}
+		}
+
+		//Third pass: pair up what is left within each hash, as moves, copies, additions and removals
+		IntStream.range(0, ranges).parallel().forEach(r -> {
+			final List<Change> local = new ArrayList<>();
+			pair(joined[r], gone, goneModified, appeared, appearedModified, local);
+			changes.addAll(local);
+		});
+
+		final Change[] sorted = changes.toArray(new Change[0]);
+		Arrays.parallelSort(sorted, Comparator.comparing(Change::path).thenComparing(Change::kind));
+		return new HashDiff(List.of(sorted));
+	}
+
+	/**
+	 * Merge joins a range of both sides by hash, then by path within each hash.
+	 */
+	private static Range join(Entries before, int i, int beforeEnd, Entries after, int j, int afterEnd) {
+		final Range range = new Range();
+		while(i < beforeEnd || j < afterEnd) {
+			final int cmp = i == beforeEnd ? 1 : j == afterEnd ? -1 : before.compareHashes(i, after, j);
+			if(cmp < 0) {
+				//Contents that no longer exist
+				final int end = before.groupEnd(i);
+				final Hash hash = before.hash(i);
+				for(; i < end; i++) {
+					range.gone.add(new Candidate(hash, before.path(i), null));
+				}
+			}
+			else if(cmp > 0) {
+				//Contents that did not exist before
+				final int end = after.groupEnd(j);
+				final Hash hash = after.hash(j);
+				for(; j < end; j++) {
+					range.appeared.add(new Candidate(hash, after.path(j), null));
+				}
+			}
+			else {
+				//Contents on both sides, compare their paths
+				final int beforeGroupEnd = before.groupEnd(i);
+				final int afterGroupEnd = after.groupEnd(j);
+				final Path source = survivor(before, i, beforeGroupEnd, after, j, afterGroupEnd);
+				final int first = i;
+				Hash hash = null;
+				while(i < beforeGroupEnd || j < afterGroupEnd) {
+					final int pathCmp = i == beforeGroupEnd ? 1 : j == afterGroupEnd ? -1 : before.comparePaths(i, after, j);
+					if(pathCmp == 0) {
+						i++;
+						j++;
+						continue;
+					}
+					if(hash == null) {
+						hash = before.hash(first);
+					}
+					if(pathCmp < 0) {
+						range.gone.add(new Candidate(hash, before.path(i++), null));
+					}
+					else {
+						range.appeared.add(new Candidate(hash, after.path(j++), source));
+					}
+				}
+			}
+		}
+		return range;
+	}
+
+	/**
+	 * @return the first path of a hash that is in both the earlier and the later results, or {@code null} if every path of the hash changed
+	 */
+	private static Path survivor(Entries before, int i, int beforeEnd, Entries after, int j, int afterEnd) {
+		while(i < beforeEnd && j < afterEnd) {
+			final int cmp = before.comparePaths(i, after, j);
+			if(cmp == 0) {
+				return before.path(i);
+			}
+			else if(cmp < 0) {
+				i++;
+			}
+			else {
+				j++;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Pairs up the paths of each hash of a range that were not modified.
+	 */
+	private static void pair(Range range, Candidate[] gone, boolean[] goneModified, Candidate[] appeared, boolean[] appearedModified, List<Change> changes) {
+		int i = range.goneOffset;
+		int j = range.appearedOffset;
+		final int goneEnd = i + range.gone.size();
+		final int appearedEnd = j + range.appeared.size();
+		while(i < goneEnd || j < appearedEnd) {
+			//Take the next hash from whichever side comes first
+			final Hash hash = i == goneEnd ? appeared[j].hash() : j == appearedEnd ? gone[i].hash() : Hash.compare(gone[i].hash(), appeared[j].hash()) <= 0 ? gone[i].hash() : appeared[j].hash();
+			final List<Candidate> removed = new ArrayList<>();
+			final List<Candidate> added = new ArrayList<>();
+			//Copies of contents whose every earlier path changed are copies of the first of those paths
+			final Path previous = i < goneEnd && Hash.compare(gone[i].hash(), hash) == 0 ? gone[i].path() : null;
+			for(; i < goneEnd && Hash.compare(gone[i].hash(), hash) == 0; i++) {
+				if(!goneModified[i]) {
+					removed.add(gone[i]);
+				}
+			}
+			for(; j < appearedEnd && Hash.compare(appeared[j].hash(), hash) == 0; j++) {
+				if(!appearedModified[j]) {
+					added.add(appeared[j]);
+				}
+			}
+			final int moves = Math.min(removed.size(), added.size());
+			for(int n = 0; n < moves; n++) {
+				changes.add(new Change(Kind.MOVED, added.get(n).path(), removed.get(n).path(), null, hash));
+			}
+			for(int n = moves; n < added.size(); n++) {
+				Candidate candidate = added.get(n);
+				final Path source = candidate.source() != null ? candidate.source() : previous;
+				if(source != null) {
+					changes.add(new Change(Kind.DUPLICATED, candidate.path(), source, null, hash));
+				}
+				else {
+					changes.add(new Change(Kind.ADDED, candidate.path(), null, null, hash));
+				}
+			}
+			for(int n = moves; n < removed.size(); n++) {
+				changes.add(new Change(Kind.REMOVED, removed.get(n).path(), null, hash, null));
+			}
+		}
+	}
+
+	private static Integer[] byPath(Candidate[] candidates) {
+		final Integer[] order = new Integer[candidates.length];
+		Arrays.setAll(order, n -> n);
+		Arrays.parallelSort(order, (a, b) -> candidates[a].path().compareTo(candidates[b].path()));
+		return order;
+	}
+
+}
@@ -0,0 +1,787 @@
+package com.wildermods.masshash;
+
+import java.nio.file.Path;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.SetMultimap;
+
+/**
+ * An immutable, compact index of hashes and paths, as an alternative to the {@link SetMultimap}
+ * a {@link Hasher} stores its results in by default.
+ *
+ * <p>
+ * A {@code TreeMultimap} costs several node objects per entry, and wrapping it in a synchronized
+ * multimap makes every read take a lock. A {@code HashIndex} instead stores:
+ * </p>
+ * <ul>
+ *   <li>each distinct hash once, packed into a {@code long[]}, in sorted order</li>
+ *   <li>each distinct path once, front-coded in a sorted {@link PathTable}, so a path is identified
+ *   by an {@code int} ID and {@link Path} objects are only rebuilt when they are read</li>
+ *   <li>the path IDs of each hash in an {@code int[]}, grouped by hash and sorted</li>
+ *   <li>an open-addressed table from hash to its position, for constant time lookups</li>
+ * </ul>
+ * <p>
+ * The sorted order is computed once, with a parallel sort, when the index is {@linkplain Builder#build() built}.
+ * After that the index is never modified, so any number of threads can read it without locking.
+ * </p>
+ *
+ * <p>
+ * {@link #asMultimap()} exposes the index through the read-only {@link SetMultimap} API, iterating
+ * in the same order as the default results of a {@link Hasher}. Enable
+ * {@link HasherOptions#withIndexedResults(boolean)} to have a {@link Hasher} store its results this way.
+ * </p>
+ */
+public final class HashIndex {
+
+	private final HashAlgorithm algorithm;
+	private final int digestLength;
+	private final int stride;
+	private final long[] digests;
+	private final int[] firsts;
+	private final int[] pathIds;
+	private final PathTable paths;
+	private final int[] table;
+	private final int mask;
+	private final MultimapView multimap = new MultimapView();
+
+	private HashIndex(HashAlgorithm algorithm, long[] digests, int[] firsts, int[] pathIds, PathTable paths) {
+		this.algorithm = algorithm;
+		this.digestLength = algorithm.getDigestLength();
+		this.stride = BinaryHash.words(digestLength);
+		this.digests = digests;
+		this.firsts = firsts;
+		this.pathIds = pathIds;
+		this.paths = paths;
+
+		//Keep the table at most half full, so probe sequences stay short
+		final int hashes = hashCount();
+		final int capacity = Integer.highestOneBit(Math.max(2, hashes * 2) - 1) << 1;
+		this.table = new int[capacity];
+		this.mask = capacity - 1;
+		for(int k = 0; k < hashes; k++) {
+			int slot = slot(digests[k * stride]);
+			while(table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = k + 1;
+		}
+	}
+
+	/**
+	 * Creates a builder for an index of hashes of the given algorithm.
+	 *
+	 * @param algorithm the algorithm of the hashes in the index
+	 * @return a new builder
+	 */
+	public static Builder builder(HashAlgorithm algorithm) {
+		return new Builder(algorithm);
+	}
+
+	/**
+	 * Creates an index of the given results.
+	 *
+	 * @param results the results to index, such as the results of a {@link Hasher}
+	 * @return the index itself if the results are a view of an index, otherwise a new index of the results
+	 * @throws IllegalArgumentException if the results contain hashes of more than one algorithm
+	 */
+	public static HashIndex of(SetMultimap<Hash, Path> results) {
+		if(results instanceof MultimapView) {
+			return ((MultimapView) results).index();
+		}
+		Builder builder = null;
+		//Iterating a synchronized multimap requires holding its lock, see Multimaps.synchronizedSetMultimap
+		synchronized(results) {
+			for(Map.Entry<Hash, Path> entry : results.entries()) {
+				if(builder == null) {
+					builder = builder(entry.getKey().algorithm());
+				}
+				builder.add(entry.getKey(), entry.getValue());
+			}
+		}
+		return (builder == null ? builder(StandardHashAlgorithm.SHA_1) : builder).build();
+	}
+
+	/**
+	 * @return the algorithm of the hashes in this index
+	 */
+	public HashAlgorithm algorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * @return the number of hash and path pairs in this index
+	 */
+	public int size() {
+		return pathIds.length;
+	}
+
+	/**
+	 * @return the number of distinct hashes in this index
+	 */
+	public int hashCount() {
+		return firsts.length - 1;
+	}
+
+	/**
+	 * @return the number of distinct paths in this index
+	 */
+	public int pathCount() {
+		return paths.size();
+	}
+
+	/**
+	 * Returns the paths of all files with the given hash.
+	 *
+	 * @param hash the hash to look up
+	 * @return an unmodifiable view of the paths with the given hash in sorted order, or an empty set if there are none
+	 */
+	public Set<Path> get(Hash hash) {
+		int k = find(hash);
+		return k < 0 ? Set.of() : new PathSet(k);
+	}
+
+	/**
+	 * @param hash the hash to look up
+	 * @return true if any file in this index has the given hash
+	 */
+	public boolean contains(Hash hash) {
+		return find(hash) >= 0;
+	}
+
+	/**
+	 * @param path the path to look up
+	 * @return true if this index contains the given path
+	 */
+	public boolean contains(Path path) {
+		return paths.indexOf(path) >= 0;
+	}
+
+	/**
+	 * Passes every hash and path in this index to the given consumer, sorted by hash and then by path.
+	 *
+	 * @param action the consumer of each hash and path
+	 */
+	public void forEach(BiConsumer<Hash, Path> action) {
+		for(int k = 0; k < hashCount(); k++) {
+			Hash hash = hashAt(k);
+			for(int i = firsts[k]; i < firsts[k + 1]; i++) {
+				action.accept(hash, paths.get(pathIds[i]));
+			}
+		}
+	}
+
+	/**
+	 * Returns a read-only view of this index as a {@link SetMultimap}.
+	 * <p>
+	 * The view is thread-safe without locking and iterates in the same order as the
+	 * default results of a {@link Hasher}: by hash and then by path. All methods that
+	 * would modify the multimap throw an {@link UnsupportedOperationException}.
+	 * </p>
+	 *
+	 * @return the view of this index
+	 */
+	public SetMultimap<Hash, Path> asMultimap() {
+		return multimap;
+	}
+
+	private Hash hashAt(int k) {
+		return BinaryHash.ofWords(algorithm, digestLength, digests, k * stride);
+	}
+
+	/**
+	 * @return the position of the given hash among the distinct hashes, or -1 if it is not in this index
+	 */
+	private int find(Object o) {
+		final BinaryHash hash = toBinary(o);
+		if(hash == null || hash.length() != digestLength || !algorithm.equals(hash.algorithm())) {
+			return -1;
+		}
+		for(int slot = slot(hash.word(0));; slot = (slot + 1) & mask) {
+			int k = table[slot] - 1;
+			if(k < 0) {
+				return -1;
+			}
+			if(matches(k, hash)) {
+				return k;
+			}
+		}
+	}
+
+	private boolean matches(int k, BinaryHash hash) {
+		final int offset = k * stride;
+		for(int w = 0; w < stride; w++) {
+			if(digests[offset + w] != hash.word(w)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int slot(long word) {
+		//The digest is already uniformly distributed, only spread its bits over the low end
+		return (int) ((word * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+
+	private static BinaryHash toBinary(Object o) {
+		if(o instanceof BinaryHash) {
+			return (BinaryHash) o;
+		}
+		if(o instanceof Hash) {
+			try {
+				return BinaryHash.of((Hash) o);
+			}
+			catch(IllegalArgumentException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Collects hashes and paths for a {@link HashIndex}. Builders are not thread-safe.
+	 *
+	 * <p>
+	 * While entries are added, digests are packed straight into a growable {@code long[]}, and each
+	 * path is interned on arrival into an open-addressed table and referred to by an {@code int} ID,
+	 * so that a builder holds no object per entry beyond the paths themselves.
+	 * </p>
+	 */
+	public static final class Builder {
+
+		private static final int INITIAL_CAPACITY = 16;
+
+		private final HashAlgorithm algorithm;
+		private final int stride;
+		private long[] digests;
+		private int[] pathIds = new int[INITIAL_CAPACITY];
+		private int count;
+		private Path[] paths = new Path[INITIAL_CAPACITY];
+		private int pathCount;
+		//Open-addressed table of path ID + 1 by path hash code, at most half full
+		private int[] interned = new int[INITIAL_CAPACITY * 2];
+
+		private Builder(HashAlgorithm algorithm) {
+			this.algorithm = Objects.requireNonNull(algorithm, "Algorithm cannot be null.");
+			this.stride = BinaryHash.words(algorithm.getDigestLength());
+			this.digests = new long[INITIAL_CAPACITY * stride];
+		}
+
+		/**
+		 * Adds a hash and path to the index. Adding the same pair more than once has no effect.
+		 *
+		 * @param hash the hash of the file
+		 * @param path the path of the file
+		 * @return this builder
+		 * @throws IllegalArgumentException if the hash is of a different algorithm than the index
+		 */
+		public Builder add(Hash hash, Path path) {
+			if(!algorithm.equals(hash.algorithm())) {
+				throw new IllegalArgumentException("Cannot add a " + hash.algorithm().getName() + " hash to a " + algorithm.getName() + " index.");
+			}
+			Objects.requireNonNull(path, "Path cannot be null.");
+			final BinaryHash binary = BinaryHash.of(hash);
+			if(count == pathIds.length) {
+				pathIds = Arrays.copyOf(pathIds, count * 2);
+				digests = Arrays.copyOf(digests, pathIds.length * stride);
+			}
+			for(int w = 0; w < stride; w++) {
+				digests[count * stride + w] = binary.word(w);
+			}
+			pathIds[count++] = intern(path);
+			return this;
+		}
+
+		/**
+		 * Adds a hash and all of its paths to the index.
+		 *
+		 * @param hash the hash of the files
+		 * @param paths the paths of the files
+		 * @return this builder
+		 * @throws IllegalArgumentException if the hash is of a different algorithm than the index
+		 */
+		public Builder addAll(Hash hash, Iterable<Path> paths) {
+			for(Path path : paths) {
+				add(hash, path);
+			}
+			return this;
+		}
+
+		/**
+		 * Sorts everything added so far into a new index.
+		 *
+		 * @return the new index
+		 */
+		public HashIndex build() {
+			//Number the distinct paths in sorted order, so that path IDs sort the same way as paths
+			final Path[] pathTable = Arrays.copyOf(paths, pathCount);
+			Arrays.parallelSort(pathTable);
+			final int[] rank = new int[pathCount];
+			for(int i = 0; i < pathCount; i++) {
+				rank[find(pathTable[i])] = i;
+			}
+			final int[] ranks = new int[count];
+			for(int i = 0; i < count; i++) {
+				ranks[i] = rank[pathIds[i]];
+			}
+
+			//Sort by the first 32 bits of each digest with a primitive parallel sort, keeping the entry's index
+			//in the low bits. The sign bit is flipped so that the signed sort orders the digests unsigned.
+			final long[] keys = new long[count];
+			for(int i = 0; i < count; i++) {
+				keys[i] = ((digests[i * stride] >>> 32) << 32 ^ Long.MIN_VALUE) | i;
+			}
+			Arrays.parallelSort(keys);
+			final int[] order = new int[count];
+			for(int i = 0; i < count; i++) {
+				order[i] = (int) keys[i];
+			}
+			//Then break ties between entries that share those bits by their whole digest and path
+			final int[] scratch = new int[count];
+			for(int start = 0, end; start < count; start = end) {
+				end = start + 1;
+				while(end < count && keys[end] >>> 32 == keys[start] >>> 32) {
+					end++;
+				}
+				if(end - start > 1) {
+					mergeSort(order, scratch, start, end, ranks);
+				}
+			}
+
+			//Pack the sorted entries into primitive arrays, dropping duplicate pairs
+			long[] sortedDigests = new long[count * stride];
+			int[] firsts = new int[count + 1];
+			int[] sortedIds = new int[count];
+			int hashCount = 0;
+			int unique = 0;
+			int previous = -1;
+			for(int entry : order) {
+				boolean newHash = previous < 0 || compareDigests(previous, entry) != 0;
+				if(!newHash && ranks[previous] == ranks[entry]) {
+					continue;
+				}
+				if(newHash) {
+					System.arraycopy(digests, entry * stride, sortedDigests, hashCount * stride, stride);
+					firsts[hashCount++] = unique;
+				}
+				sortedIds[unique++] = ranks[entry];
+				previous = entry;
+			}
+			firsts[hashCount] = unique;
+
+			return new HashIndex(
+				algorithm,
+				Arrays.copyOf(sortedDigests, hashCount * stride),
+				Arrays.copyOf(firsts, hashCount + 1),
+				Arrays.copyOf(sortedIds, unique),
+				PathTable.ofSorted(pathTable, pathTable.length)
+			);
+		}
+
+		/**
+		 * @return the ID of the given path, which is added if it has not been added before
+		 */
+		private int intern(Path path) {
+			final int found = find(path);
+			if(found >= 0) {
+				return found;
+			}
+			if(pathCount == paths.length) {
+				paths = Arrays.copyOf(paths, pathCount * 2);
+				interned = new int[paths.length * 2];
+				for(int id = 0; id < pathCount; id++) {
+					interned[emptySlot(paths[id])] = id + 1;
+				}
+			}
+			paths[pathCount] = path;
+			interned[emptySlot(path)] = pathCount + 1;
+			return pathCount++;
+		}
+
+		/**
+		 * @return the ID of the given path, or -1 if it has not been added
+		 */
+		private int find(Path path) {
+			final int mask = interned.length - 1;
+			for(int slot = spread(path.hashCode()) & mask;; slot = (slot + 1) & mask) {
+				final int id = interned[slot] - 1;
+				if(id < 0 || paths[id].equals(path)) {
+					return id;
+				}
+			}
+		}
+
+		private int emptySlot(Path path) {
+			final int mask = interned.length - 1;
+			int slot = spread(path.hashCode()) & mask;
+			while(interned[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private static int spread(int hashCode) {
+			return hashCode * 0x9E3779B9 >>> 16 ^ hashCode;
+		}
+
+		/**
+		 * Sorts a range of entry indices by digest and then by path rank.
+		 */
+		private void mergeSort(int[] order, int[] scratch, int from, int to, int[] ranks) {
+			if(to - from < 2) {
+				return;
+			}
+			final int mid = (from + to) >>> 1;
+			mergeSort(order, scratch, from, mid, ranks);
+			mergeSort(order, scratch, mid, to, ranks);
+			System.arraycopy(order, from, scratch, from, to - from);
+			for(int i = from, j = mid, k = from; k < to; k++) {
+				if(j == to || (i < mid && compareEntries(scratch[i], scratch[j], ranks) <= 0)) {
+					order[k] = scratch[i++];
+				}
+				else {
+					order[k] = scratch[j++];
+				}
+			}
+		}
+
+		private int compareEntries(int a, int b, int[] ranks) {
+			final int c = compareDigests(a, b);
+			return c != 0 ? c : Integer.compare(ranks[a], ranks[b]);
+		}
+
+		/**
+		 * Compares the digests of two added entries, in the same order as {@link BinaryHash#compareTo(Hash)}.
+		 */
+		private int compareDigests(int a, int b) {
+			for(int w = 0; w < stride; w++) {
+				int c = Long.compareUnsigned(digests[a * stride + w], digests[b * stride + w]);
+				if(c != 0) {
+					return c;
+				}
+			}
+			return 0;
+		}
+
+	}
+
+	/**
+	 * The paths of a single hash.
+	 */
+	private final class PathSet extends AbstractSet<Path> {
+
+		private final int from;
+		private final int to;
+
+		private PathSet(int k) {
+			this.from = firsts[k];
+			this.to = firsts[k + 1];
+		}
+
+		@Override
+		public Iterator<Path> iterator() {
+			return new Iterator<Path>() {
+				private int i = from;
+
+				@Override
+				public boolean hasNext() {
+					return i < to;
+				}
+
+				@Override
+				public Path next() {
+					if(i >= to) {
+						throw new NoSuchElementException();
+					}
+					return paths.get(pathIds[i++]);
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if(!(o instanceof Path)) {
+				return false;
+			}
+			int id = paths.indexOf((Path) o);
+			return id >= 0 && Arrays.binarySearch(pathIds, from, to, id) >= 0;
+		}
+
+	}
+
+	/**
+	 * Iterates over the positions of the distinct hashes.
+	 */
+	private abstract class HashIterator<T> implements Iterator<T> {
+
+		private int k = 0;
+
+		@Override
+		public boolean hasNext() {
+			return k < hashCount();
+		}
+
+		@Override
+		public T next() {
+			if(k >= hashCount()) {
+				throw new NoSuchElementException();
+			}
+			return get(k++);
+		}
+
+		abstract T get(int k);
+
+	}
+
+	/**
+	 * A read-only {@link SetMultimap} view of the index.
+	 */
+	private final class MultimapView implements SetMultimap<Hash, Path> {
+
+		private volatile Multiset<Hash> keys;
+
+		private HashIndex index() {
+			return HashIndex.this;
+		}
+
+		@Override
+		public int size() {
+			return HashIndex.this.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return size() == 0;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return find(key) >= 0;
+		}
+
+		@Override
+		public boolean containsValue(Object value) {
+			return value instanceof Path && HashIndex.this.contains((Path) value);
+		}
+
+		@Override
+		public boolean containsEntry(Object key, Object value) {
+			int k = find(key);
+			return k >= 0 && new PathSet(k).contains(value);
+		}
+
+		@Override
+		public Set<Path> get(Hash key) {
+			return HashIndex.this.get(key);
+		}
+
+		@Override
+		public Set<Hash> keySet() {
+			return new AbstractSet<Hash>() {
+				@Override
+				public Iterator<Hash> iterator() {
+					return new HashIterator<Hash>() {
+						@Override
+						Hash get(int k) {
+							return hashAt(k);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return hashCount();
+				}
+
+				@Override
+				public boolean contains(Object o) {
+					return find(o) >= 0;
+				}
+			};
+		}
+
+		@Override
+		public Multiset<Hash> keys() {
+			Multiset<Hash> keys = this.keys;
+			if(keys == null) {
+				ImmutableMultiset.Builder<Hash> builder = ImmutableMultiset.builder();
+				for(int k = 0; k < hashCount(); k++) {
+					builder.addCopies(hashAt(k), firsts[k + 1] - firsts[k]);
+				}
+				this.keys = keys = builder.build();
+			}
+			return keys;
+		}
+
+		@Override
+		public Collection<Path> values() {
+			return new AbstractCollection<Path>() {
+				@Override
+				public Iterator<Path> iterator() {
+					return Arrays.stream(pathIds).mapToObj(paths::get).iterator();
+				}
+
+				@Override
+				public int size() {
+					return HashIndex.this.size();
+				}
+
+				@Override
+				public boolean contains(Object o) {
+					return containsValue(o);
+				}
+			};
+		}
+
+		@Override
+		public Set<Map.Entry<Hash, Path>> entries() {
+			return new AbstractSet<Map.Entry<Hash, Path>>() {
+				@Override
+				public Iterator<Map.Entry<Hash, Path>> iterator() {
+					return new Iterator<Map.Entry<Hash, Path>>() {
+						private int k = -1;
+						private int i = 0;
+						private Hash hash;
+
+						@Override
+						public boolean hasNext() {
+							return i < pathIds.length;
+						}
+
+						@Override
+						public Map.Entry<Hash, Path> next() {
+							if(i >= pathIds.length) {
+								throw new NoSuchElementException();
+							}
+							while(i >= firsts[k + 1]) {
+								hash = hashAt(++k);
+							}
+							return Maps.immutableEntry(hash, paths.get(pathIds[i++]));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return HashIndex.this.size();
+				}
+
+				@Override
+				public boolean contains(Object o) {
+					return o instanceof Map.Entry && containsEntry(((Map.Entry<?, ?>) o).getKey(), ((Map.Entry<?, ?>) o).getValue());
+				}
+			};
+		}
+
+		@Override
+		public Map<Hash, Collection<Path>> asMap() {
+			return new AbstractMap<Hash, Collection<Path>>() {
+				@Override
+				public Set<Map.Entry<Hash, Collection<Path>>> entrySet() {
+					return new AbstractSet<Map.Entry<Hash, Collection<Path>>>() {
+						@Override
+						public Iterator<Map.Entry<Hash, Collection<Path>>> iterator() {
+							return new HashIterator<Map.Entry<Hash, Collection<Path>>>() {
+								@Override
+								Map.Entry<Hash, Collection<Path>> get(int k) {
+									return Maps.immutableEntry(hashAt(k), new PathSet(k));
+								}
+							};
+						}
+
+						@Override
+						public int size() {
+							return hashCount();
+						}
+					};
+				}
+
+				@Override
+				public Collection<Path> get(Object key) {
+					int k = find(key);
+					return k < 0 ? null : new PathSet(k);
+				}
+
+				@Override
+				public boolean containsKey(Object key) {
+					return find(key) >= 0;
+				}
+
+				@Override
+				public int size() {
+					return hashCount();
+				}
+			};
+		}
+
+		@Override
+		public boolean put(Hash key, Path value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean remove(Object key, Object value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean putAll(Hash key, Iterable<? extends Path> values) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean putAll(Multimap<? extends Hash, ? extends Path> multimap) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Set<Path> replaceValues(Hash key, Iterable<? extends Path> values) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Set<Path> removeAll(Object key) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void clear() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o == this || (o instanceof Multimap && asMap().equals(((Multimap<?, ?>) o).asMap()));
+		}
+
+		@Override
+		public int hashCode() {
+			return asMap().hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return asMap().toString();
+		}
+
+	}
+
+}
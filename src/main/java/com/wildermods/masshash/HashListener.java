@@ -0,0 +1,48 @@
+package com.wildermods.masshash;
+
+import java.nio.file.Path;
+
+/**
+ * Receives progress and timing information from a hashing run.
+ *
+ * <p>
+ * Set a listener with {@link HasherOptions#withListener(HashListener)}. All methods do nothing
+ * by default, so implementations only need to override the events they are interested in.
+ * </p>
+ *
+ * <p>
+ * {@link #fileHashed(Path, long, long, long)} is called from the hashing threads, possibly from
+ * several at once, so implementations must be thread-safe and should return quickly, since
+ * hashing waits for them.
+ * </p>
+ *
+ * @see HashMetrics
+ */
+public interface HashListener {
+
+	/**
+	 * Called after each file is hashed.
+	 *
+	 * <p>
+	 * The time spent reading and the time spent digesting are measured separately, which shows
+	 * whether a run is held up by the storage or by the processors. Memory mapped files are read
+	 * through page faults while they are digested, so all of their time is counted as digest time.
+	 * Files whose hash was found in the {@link HasherOptions#cache()} are reported with no read
+	 * or digest time.
+	 * </p>
+	 *
+	 * @param file the file that was hashed
+	 * @param size the size of the file in bytes
+	 * @param readNanos the time spent waiting for the file's contents, in nanoseconds
+	 * @param digestNanos the time spent digesting the file's contents, in nanoseconds
+	 */
+	public default void fileHashed(Path file, long size, long readNanos, long digestNanos) {}
+
+	/**
+	 * Called on the thread that submitted the files, once all of them have been hashed.
+	 *
+	 * @param metrics the metrics of the whole run
+	 */
+	public default void completed(HashMetrics metrics) {}
+
+}
@@ -0,0 +1,288 @@
+package com.wildermods.masshash;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and timing metrics of a hashing run.
+ *
+ * <p>
+ * Metrics are collected by every run, and are available from {@link Hasher#metrics()} or
+ * {@link HashListener#completed(HashMetrics)} once the run completes. They tell whether a slow
+ * run was held up by the storage (high {@linkplain #readLatency() read latency}), by the
+ * processors (high {@linkplain #digestLatency() digest latency} and little
+ * {@linkplain #idleNanos() idle time}) or by a few large files (a high maximum latency, while
+ * most threads were idle).
+ * </p>
+ *
+ * <p>
+ * The same information is recorded as JDK Flight Recorder events, {@code com.wildermods.masshash.FileHashed}
+ * for each file and {@code com.wildermods.masshash.HashRun} for each run, whenever a recording
+ * has them enabled.
+ * </p>
+ *
+ * <p>
+ * {@code HashMetrics} is thread-safe. While a run is still in progress, the metrics are a live
+ * and possibly inconsistent view of it.
+ * </p>
+ */
+public final class HashMetrics {
+
+	private final long start = System.nanoTime();
+	private volatile long end = -1;
+
+	private final LongAdder files = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+	private final LongAdder cached = new LongAdder();
+	private final Histogram read = new Histogram();
+	private final Histogram digest = new Histogram();
+	private final Map<String, LongAdder> busy = new ConcurrentHashMap<>();
+
+	private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+	private final LongAdder queueDepthTotal = new LongAdder();
+	private final LongAdder queueDepthSamples = new LongAdder();
+
+	HashMetrics() {}
+
+	void fileHashed(long size, long readNanos, long digestNanos) {
+		files.increment();
+		bytes.add(size);
+		read.record(readNanos);
+		digest.record(digestNanos);
+	}
+
+	void fileCached(long size) {
+		files.increment();
+		bytes.add(size);
+		cached.increment();
+	}
+
+	void busy(Thread thread, long nanos) {
+		busy.computeIfAbsent(thread.getName(), n -> new LongAdder()).add(nanos);
+	}
+
+	void queueDepth(int units) {
+		maxQueueDepth.accumulate(units);
+		queueDepthTotal.add(units);
+		queueDepthSamples.increment();
+	}
+
+	void complete() {
+		end = System.nanoTime();
+	}
+
+	/**
+	 * @return the number of files hashed, including those found in the cache
+	 */
+	public long files() {
+		return files.sum();
+	}
+
+	/**
+	 * @return the total size of the files hashed, in bytes
+	 */
+	public long bytes() {
+		return bytes.sum();
+	}
+
+	/**
+	 * @return the number of files whose hash was found in the {@link HasherOptions#cache()}, without reading them
+	 */
+	public long cachedFiles() {
+		return cached.sum();
+	}
+
+	/**
+	 * @return the time from the start of the run until it completed, or until now if it is still in progress
+	 */
+	public long elapsedNanos() {
+		long end = this.end;
+		return (end < 0 ? System.nanoTime() : end) - start;
+	}
+
+	/**
+	 * @return the number of files hashed per second
+	 */
+	public double filesPerSecond() {
+		return perSecond(files());
+	}
+
+	/**
+	 * @return the number of bytes hashed per second
+	 */
+	public double bytesPerSecond() {
+		return perSecond(bytes());
+	}
+
+	/**
+	 * @return how long each file took to read, not counting memory mapped and cached files
+	 */
+	public Histogram readLatency() {
+		return read;
+	}
+
+	/**
+	 * @return how long each file took to digest, once read. Memory mapped files are read while they are digested.
+	 */
+	public Histogram digestLatency() {
+		return digest;
+	}
+
+	/**
+	 * @return the time each hashing thread spent working, in nanoseconds, by thread name
+	 */
+	public Map<String, Long> busyNanos() {
+		Map<String, Long> ret = new TreeMap<>();
+		busy.forEach((thread, nanos) -> ret.put(thread, nanos.sum()));
+		return Collections.unmodifiableMap(ret);
+	}
+
+	/**
+	 * @return the time each hashing thread spent waiting for work, in nanoseconds, by thread name
+	 */
+	public Map<String, Long> idleNanos() {
+		final long elapsed = elapsedNanos();
+		Map<String, Long> ret = new TreeMap<>();
+		busy.forEach((thread, nanos) -> ret.put(thread, Math.max(0, elapsed - nanos.sum())));
+		return Collections.unmodifiableMap(ret);
+	}
+
+	/**
+	 * @return the largest number of units of work that were queued or running at once
+	 */
+	public long maxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	/**
+	 * @return the average number of units of work that were queued or running, sampled as each file was submitted
+	 */
+	public double averageQueueDepth() {
+		long samples = queueDepthSamples.sum();
+		return samples == 0 ? 0 : (double) queueDepthTotal.sum() / samples;
+	}
+
+	private double perSecond(long count) {
+		long elapsed = elapsedNanos();
+		return elapsed <= 0 ? 0 : count * 1_000_000_000d / elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d files (%d cached), %.1f MiB in %d ms: %.0f files/s, %.1f MiB/s. Read %s, digest %s",
+			files(), cachedFiles(), bytes() / 1048576d, elapsedNanos() / 1_000_000, filesPerSecond(), bytesPerSecond() / 1048576d, read, digest);
+	}
+
+	/**
+	 * A histogram of latencies, in power of two buckets of nanoseconds.
+	 */
+	public static final class Histogram {
+
+		private final AtomicLongArray buckets = new AtomicLongArray(64);
+		private final LongAdder total = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		private Histogram() {}
+
+		void record(long nanos) {
+			nanos = Math.max(0, nanos);
+			buckets.incrementAndGet(bucket(nanos));
+			total.add(nanos);
+			max.accumulate(nanos);
+		}
+
+		/**
+		 * @return the number of latencies recorded
+		 */
+		public long count() {
+			long count = 0;
+			for(int i = 0; i < buckets.length(); i++) {
+				count += buckets.get(i);
+			}
+			return count;
+		}
+
+		/**
+		 * @return the sum of all latencies recorded, in nanoseconds
+		 */
+		public long totalNanos() {
+			return total.sum();
+		}
+
+		/**
+		 * @return the highest latency recorded, in nanoseconds
+		 */
+		public long maxNanos() {
+			return max.get();
+		}
+
+		/**
+		 * @return the mean latency, in nanoseconds
+		 */
+		public double meanNanos() {
+			long count = count();
+			return count == 0 ? 0 : (double) totalNanos() / count;
+		}
+
+		/**
+		 * Returns an upper bound of the given percentile. Since latencies are kept in power of two
+		 * buckets, the bound is at most twice the actual percentile.
+		 *
+		 * @param percentile the percentile, from 0 to 100
+		 * @return the upper bound of the percentile, in nanoseconds
+		 * @throws IllegalArgumentException if the percentile is not between 0 and 100
+		 */
+		public long percentileNanos(double percentile) {
+			if(!(percentile >= 0 && percentile <= 100)) {
+				throw new IllegalArgumentException("Percentile must be between 0 and 100, was " + percentile);
+			}
+			long[] counts = new long[buckets.length()];
+			long count = 0;
+			for(int i = 0; i < counts.length; i++) {
+				counts[i] = buckets.get(i);
+				count += counts[i];
+			}
+			final long rank = (long) Math.ceil(count * percentile / 100);
+			long seen = 0;
+			for(int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if(seen >= rank && seen > 0) {
+					return Math.min(upperBound(i), maxNanos());
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * @return the number of latencies in each bucket. Bucket {@code i} holds latencies
+		 *         below {@code 2^i} nanoseconds and, except for bucket 0, at or above {@code 2^(i-1)}.
+		 */
+		public long[] buckets() {
+			long[] ret = new long[buckets.length()];
+			for(int i = 0; i < ret.length; i++) {
+				ret[i] = buckets.get(i);
+			}
+			return ret;
+		}
+
+		private static int bucket(long nanos) {
+			return Math.min(63, 64 - Long.numberOfLeadingZeros(nanos));
+		}
+
+		private static long upperBound(int bucket) {
+			return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("p50 %.2f ms, p99 %.2f ms, max %.2f ms", percentileNanos(50) / 1e6, percentileNanos(99) / 1e6, maxNanos() / 1e6);
+		}
+
+	}
+
+}
@@ -0,0 +1,744 @@
+package com.wildermods.masshash;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import jdk.jfr.EventType;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.TreeMultimap;
+import com.wildermods.masshash.HashScheduler.SizedFile;
+import com.wildermods.masshash.utils.Reference;
+
+/**
+ * The producer/consumer pipeline that performs the hashing for a {@link Hasher}.
+ *
+ * <p>
+ * Files are {@linkplain #submit(SizedFile) submitted} one at a time by a single producer
+ * thread, while they are still being discovered, and are hashed on a work-stealing pool as
+ * soon as the pool has room for them. Hashing therefore starts with the first file instead
+ * of after the whole file tree has been walked.
+ * </p>
+ *
+ * <p>
+ * Submitted files are gathered into a window, which is planned into units of work by
+ * {@link HashScheduler} (largest first, small files batched) whenever the pool is running
+ * low on work or the window is full. The number of units in flight is bounded: when the
+ * bound is reached, the producer blocks until a unit completes. Together with the bounded
+ * window, this keeps the memory used by the pipeline itself flat no matter how large the
+ * file tree is.
+ * </p>
+ *
+ * <p>
+ * The producer merges the results of completed units into a sorted {@link TreeMultimap}, or
+ * a {@link HashIndex} builder, while it is submitting, so merging overlaps with hashing as well.
+ * </p>
+ *
+ * <p>
+ * If {@link HasherOptions#expandArchives()} is set, submitted archives are opened and each of
+ * their entries is submitted in their place, so entries are planned and hashed in parallel
+ * like files.
+ * </p>
+ *
+ * <p>
+ * Every file and the run as a whole are timed into {@link HashMetrics}, which are passed to the
+ * {@link HasherOptions#listener()} and recorded as JDK Flight Recorder events.
+ * </p>
+ *
+ * <p>
+ * This class is not thread-safe: {@link #submit(SizedFile)} and {@link #finish()} must be
+ * called from the same thread.
+ * </p>
+ */
+final class HashPipeline implements AutoCloseable {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	/**
+	 * The maximum number of files held in the window before it is planned and submitted.
+	 */
+	static final int WINDOW_SIZE = 1024;
+
+	/**
+	 * The maximum number of units in flight per thread, including queued units.
+	 */
+	static final int UNITS_IN_FLIGHT_PER_THREAD = 4;
+
+	private static final EventType FILE_HASHED = EventType.getEventType(FileHashedEvent.class);
+
+	private final HasherOptions options;
+	private final BiConsumer<Reference<Path>, Blob> forEachBlob;
+	private final boolean needsBlobs;
+	private final OnHashed onHashed;
+	private final int threads;
+	private final int maxInFlight;
+	private final ReadLimiter reads;
+	private final MemoryBudget budget;
+	private final ForkJoinPool pool;
+	private final boolean ownsPool;
+	private final HashMetrics metrics = new HashMetrics();
+	private final HashRunEvent runEvent = new HashRunEvent();
+
+	private final Set<Archive> archives = ConcurrentHashMap.newKeySet();
+	private final BlockingQueue<Completion> completions = new LinkedBlockingQueue<>();
+	private final List<SizedFile> window = new ArrayList<>();
+	private int inFlight;
+	//Only written by the producer thread
+	private volatile long files;
+	private volatile long bytes;
+
+	/*
+	 * PERFORMANCE NOTE:
+	 *
+	 * Inserting directly into a TreeMultimap offers automatic sorting,
+	 * but the performance cost is too high.
+	 *
+	 * A faster approach is for each unit of work to first collect results in its own
+	 * local, unsorted arrays.
+	 *
+	 * The producer thread then merges each unit's results into a single TreeMultimap as the
+	 * unit completes. Only the producer thread touches the TreeMultimap, so no
+	 * synchronization is needed.
+	 *
+	 * This approach is nearly **7x faster** than inserting directly into the
+	 * TreeMultimap during hashing.
+	 *
+	 * Entries are sorted by
+	 * - hash value
+	 * - then by file path
+	 *
+	 * Entries are sorted to ensure a consistent and debuggable output.
+	 */
+	private final TreeMultimap<Hash, Path> results;
+
+	/*
+	 * Or, if results are indexed, collected unsorted and sorted once by the index.
+	 */
+	private final HashIndex.Builder index;
+
+	/*
+	 * The results of a unit, as the hash and path of each of its files in order. Units hold one
+	 * pair of arrays rather than a set of paths for every hash, so that hashing a file allocates
+	 * nothing but its hash.
+	 */
+	private record Completion(Hash[] hashes, Path[] paths, Throwable failure) {}
+
+	/**
+	 * Receives each file's hash as soon as the file is hashed, on the thread that hashed it. Unlike
+	 * {@code forEachBlob}, this creates no {@link Blob} or hexadecimal hash for the file.
+	 */
+	@FunctionalInterface
+	static interface OnHashed {
+		/**
+		 * @param path the path of the file, as changed by {@code forEachBlob} if there is one
+		 * @param hash the hash of the file
+		 * @return the path to record the file under in the results
+		 */
+		Path hashed(Path path, BinaryHash hash);
+
+		/**
+		 * Called instead of {@link #hashed(Path, BinaryHash)} if a file could not be hashed, for
+		 * instance because it was deleted after it was submitted. By default, the failure ends the
+		 * whole run. If this returns normally, the file is left out of the results and the run goes on.
+		 *
+		 * @param path the path of the file that could not be hashed
+		 * @param failure why the file could not be hashed
+		 * @throws IOException to end the run
+		 */
+		default void failed(Path path, IOException failure) throws IOException {
+			throw failure;
+		}
+	}
+
+	/**
+	 * The files to hash, one at a time.
+	 */
+	@FunctionalInterface
+	static interface FileSource {
+
+		/**
+		 * @return the next file to hash, or {@code null} if there are no more files
+		 * @throws IOException if the next file could not be found
+		 */
+		SizedFile next() throws IOException;
+
+		/**
+		 * Walks a stream of paths, statting each path that matches the predicate once, which both
+		 * checks that it is a regular file and gets its size for scheduling.
+		 *
+		 * @param paths the paths to walk
+		 * @param predicate the predicate paths must match to be hashed
+		 * @return the regular files among the matching paths
+		 */
+		static FileSource of(Iterator<Path> paths, Predicate<Path> predicate) {
+			return () -> {
+				while(paths.hasNext()) {
+					Path path = paths.next();
+					if(!predicate.test(path)) {
+						continue;
+					}
+					SizedFile file = HashScheduler.stat(path);
+					if(file != null) {
+						return file;
+					}
+				}
+				return null;
+			};
+		}
+
+	}
+
+	/**
+	 * @param threads the number of threads hashing
+	 * @param options the options of this hashing run
+	 * @param forEachBlob the consumer to pass each file's {@link Blob} to
+	 * @param needsBlobs whether {@code forEachBlob} should be called at all
+	 */
+	HashPipeline(int threads, HasherOptions options, BiConsumer<Reference<Path>, Blob> forEachBlob, boolean needsBlobs) {
+		this(threads, options, forEachBlob, needsBlobs, null);
+	}
+
+	/**
+	 * @param threads the number of threads hashing
+	 * @param options the options of this hashing run
+	 * @param forEachBlob the consumer to pass each file's {@link Blob} to
+	 * @param needsBlobs whether {@code forEachBlob} should be called at all
+	 * @param onHashed the hook to pass each file's hash to, or {@code null}
+	 */
+	HashPipeline(int threads, HasherOptions options, BiConsumer<Reference<Path>, Blob> forEachBlob, boolean needsBlobs, OnHashed onHashed) {
+		this(threads, options, forEachBlob, needsBlobs, onHashed, null);
+	}
+
+	/**
+	 * @param threads the number of threads hashing
+	 * @param options the options of this hashing run
+	 * @param forEachBlob the consumer to pass each file's {@link Blob} to
+	 * @param needsBlobs whether {@code forEachBlob} should be called at all
+	 * @param onHashed the hook to pass each file's hash to, or {@code null}
+	 * @param pool a pool from {@link #newPool(int, HasherOptions)} to hash on, which is shared with other
+	 *        pipelines and left running when this pipeline is closed, or {@code null} to hash on a pool of its own
+	 */
+	HashPipeline(int threads, HasherOptions options, BiConsumer<Reference<Path>, Blob> forEachBlob, boolean needsBlobs, OnHashed onHashed, ForkJoinPool pool) {
+		this.options = options;
+		this.forEachBlob = forEachBlob;
+		this.needsBlobs = needsBlobs;
+		this.onHashed = onHashed;
+		this.threads = threads;
+		if(options.indexResults()) {
+			this.results = null;
+			this.index = HashIndex.builder(options.algorithm());
+		}
+		else {
+			this.results = TreeMultimap.create(
+				Hash::compare,
+				Ordering.natural()
+			);
+			this.index = null;
+		}
+		checkCache(options);
+
+		//Reads are decoupled from hashing if requested. Up to ioThreads reads may be in flight, and threads
+		//blocked on a read are compensated with spare threads so hashing continues at full parallelism
+		final int ioThreads = Math.max(0, options.ioThreads());
+		this.reads = ioThreads > 0 ? ReadLimiter.of(ioThreads) : ReadLimiter.UNLIMITED;
+		this.budget = MemoryBudget.of(options.memoryBudget());
+		this.maxInFlight = Math.max(threads, ioThreads) * UNITS_IN_FLIGHT_PER_THREAD;
+		this.ownsPool = pool == null;
+		this.pool = pool != null ? pool : newPool(threads, options);
+		runEvent.begin();
+	}
+
+	/**
+	 * Creates a pool to hash on, for pipelines that share one pool rather than each creating their own.
+	 *
+	 * @param threads the number of threads hashing
+	 * @param options the options of the hashing runs
+	 * @return the new pool, which must be shut down once no pipeline hashes on it anymore
+	 */
+	static ForkJoinPool newPool(int threads, HasherOptions options) {
+		//A work-stealing pool in FIFO mode, so units are started in the order they were planned
+		//and no thread sits idle while there are units left. The pool may grow past the number
+		//of hashing threads by at most ioThreads, to replace threads that are blocked on reads.
+		final int ioThreads = Math.max(0, options.ioThreads());
+		return new ForkJoinPool(
+			threads,
+			ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+			null,
+			true,
+			0,
+			threads + ioThreads,
+			1,
+			p -> true, //When at the maximum size, block without compensating instead of failing
+			60,
+			TimeUnit.SECONDS
+		);
+	}
+
+	/**
+	 * Checks that the {@link HasherOptions#cache()}, if there is one, holds hashes of the algorithm files are hashed with.
+	 *
+	 * @param options the options to check
+	 * @throws IllegalArgumentException if the cache holds hashes of a different algorithm
+	 */
+	static void checkCache(HasherOptions options) {
+		if(options.cache() != null && !options.cache().algorithm().equals(options.algorithm())) {
+			throw LOGGER.throwing(new IllegalArgumentException("Cache holds " + options.cache().algorithm().getName() + " hashes, but files are hashed with " + options.algorithm().getName()));
+		}
+	}
+
+	/**
+	 * Submits every file of a source, then waits for them all to be hashed.
+	 *
+	 * @param files the files to hash
+	 * @return the results, as returned by {@link #finish()}
+	 * @throws IOException if a file could not be found or hashed, or the thread was interrupted
+	 * @throws IllegalArgumentException if the source has no files
+	 */
+	SetMultimap<Hash, Path> hashAll(FileSource files) throws IOException {
+		SizedFile file;
+		while((file = files.next()) != null) {
+			submit(file);
+		}
+		if(submitted() == 0) {
+			throw LOGGER.throwing(new IllegalArgumentException("No Files."));
+		}
+		return finish();
+	}
+
+	/**
+	 * Submits a file to be hashed. May block if the pipeline is full.
+	 *
+	 * @param file the file to hash
+	 * @throws IOException if a previously submitted file, or an archive being expanded, could not be hashed, or the thread was interrupted
+	 */
+	void submit(SizedFile file) throws IOException {
+		if(options.expandArchives() && file.entry() == null && Archive.isArchive(file.path())) {
+			final Archive archive;
+			try {
+				archive = Archive.open(file.path(), archives);
+			}
+			catch(IOException e) {
+				if(onHashed == null || e instanceof InterruptedIOException) {
+					throw e;
+				}
+				onHashed.failed(file.path(), e);
+				return;
+			}
+			if(archive != null) {
+				for(SizedFile entry : archive.entries()) {
+					add(entry);
+				}
+				return;
+			}
+		}
+		add(file);
+	}
+
+	private void add(SizedFile file) throws IOException {
+		//Counted before the file can be hashed, so the totals are never behind the files hashed
+		files++;
+		bytes += file.size();
+		window.add(file);
+		drain();
+		//Plan the window as soon as the pool is running low on work, so that threads are never
+		//idle while files are waiting in the window, or once the window is full
+		if(inFlight < threads || window.size() >= WINDOW_SIZE) {
+			flush();
+		}
+		metrics.queueDepth(inFlight);
+	}
+
+	/**
+	 * @return the number of files submitted so far, counting each entry of an expanded archive as a file.
+	 *         May be called from any thread.
+	 */
+	long submitted() {
+		return files;
+	}
+
+	/**
+	 * @return the size of the files submitted so far, in bytes, in the same units as the sizes passed to
+	 *         the {@link HasherOptions#listener()}. May be called from any thread.
+	 */
+	long submittedBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the metrics of this run so far
+	 */
+	HashMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Waits for all submitted files to be hashed.
+	 *
+	 * @return the sorted, thread-safe results, mapping each hash to the paths of the files with that hash.
+	 *         A synchronized {@link TreeMultimap}, or a view of a {@link HashIndex} if {@link HasherOptions#indexResults()} is set.
+	 * @throws IOException if a file could not be hashed, or the thread was interrupted
+	 */
+	SetMultimap<Hash, Path> finish() throws IOException {
+		flush();
+		while(inFlight > 0) {
+			merge(take());
+		}
+		//Wrap the result in a synchronized structure for thread safe access later
+		SetMultimap<Hash, Path> ret = index != null ? index.build().asMultimap() : Multimaps.synchronizedSetMultimap(results);
+		complete();
+		return ret;
+	}
+
+	/**
+	 * Stops all hashing. Units that are in progress are interrupted, and archives that are still open are closed.
+	 * A shared pool is left running, so units that are in progress on it run to completion instead.
+	 */
+	@Override
+	public void close() {
+		if(ownsPool) {
+			pool.shutdownNow();
+		}
+		for(Archive archive : archives) {
+			try {
+				archive.close();
+			}
+			catch(IOException e) {
+				//Already failing or cancelled, nothing is read from the archive anymore
+			}
+		}
+	}
+
+	private void complete() {
+		metrics.complete();
+		runEvent.end();
+		if(runEvent.shouldCommit()) {
+			runEvent.algorithm = options.algorithm().getName();
+			runEvent.threads = threads;
+			runEvent.files = metrics.files();
+			runEvent.cachedFiles = metrics.cachedFiles();
+			runEvent.bytes = metrics.bytes();
+			runEvent.bytesPerSecond = metrics.bytesPerSecond();
+			runEvent.maxQueueDepth = metrics.maxQueueDepth();
+			runEvent.commit();
+		}
+		if(options.listener() != null) {
+			options.listener().completed(metrics);
+		}
+	}
+
+	private void flush() throws IOException {
+		if(window.isEmpty()) {
+			return;
+		}
+		for(List<SizedFile> unit : HashScheduler.plan(window, threads)) {
+			//Apply backpressure: wait for a unit to complete before submitting more than maxInFlight
+			while(inFlight >= maxInFlight) {
+				merge(take());
+			}
+			start(unit);
+		}
+		window.clear();
+	}
+
+	private void start(List<SizedFile> unit) {
+		inFlight++;
+		pool.execute(() -> {
+			final long started = System.nanoTime();
+			try {
+				//Each unit collects its own results to avoid synchronization
+				final Hash[] hashes = new Hash[unit.size()];
+				final Path[] paths = new Path[unit.size()];
+				for (int i = 0; i < hashes.length; i++) {
+					//Stop promptly once the pipeline is closed, even if the remaining files need no reads
+					if(Thread.currentThread().isInterrupted()) {
+						throw new InterruptedIOException("Interrupted while hashing");
+					}
+					final SizedFile sized = unit.get(i);
+					//The consumer may change the path, otherwise there is no need for a reference
+					Reference<Path> newFile = needsBlobs ? new Reference<>(sized.path()) : null;
+					//Read and hash the file, or stream it if nothing needs the file's contents
+					final BinaryHash hash;
+					try {
+						hash = hash(sized, newFile);
+					}
+					catch(IOException e) {
+						//Interruptions always end the run, other failures are up to the hook
+						if(onHashed == null || e instanceof InterruptedIOException || Thread.currentThread().isInterrupted()) {
+							throw e;
+						}
+						onHashed.failed(sized.path(), e);
+						continue;
+					}
+					final Path path = newFile != null ? newFile.get() : sized.path();
+					hashes[i] = hash;
+					paths[i] = onHashed != null ? onHashed.hashed(path, hash) : path;
+				}
+				completions.add(new Completion(hashes, paths, null));
+			}
+			catch(Throwable t) {
+				completions.add(new Completion(null, null, t));
+			}
+			finally {
+				metrics.busy(Thread.currentThread(), System.nanoTime() - started);
+			}
+		});
+	}
+
+	private void drain() throws IOException {
+		Completion completion;
+		while((completion = completions.poll()) != null) {
+			merge(completion);
+		}
+	}
+
+	private Completion take() throws IOException {
+		try {
+			return completions.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for files to be hashed");
+		}
+	}
+
+	private void merge(Completion completion) throws IOException {
+		inFlight--;
+		if(completion.failure() != null) {
+			throw new IOException("Thread pool failed", completion.failure());
+		}
+		//Add each file to the final multimap, this will sort the hashes as described above.
+		//Files with the same hash share the same key.
+		final Hash[] hashes = completion.hashes();
+		final Path[] paths = completion.paths();
+		for (int i = 0; i < hashes.length; i++) {
+			if(hashes[i] == null) {
+				//A file that could not be hashed, and was skipped
+				continue;
+			}
+			if(index != null) {
+				index.add(hashes[i], paths[i]);
+			}
+			else {
+				results.put(hashes[i], paths[i]);
+			}
+		}
+	}
+
+	/**
+	 * Hashes a single file and passes it to the {@code forEachBlob} consumer.
+	 * <p>
+	 * Files are hashed with the {@link HasherOptions#algorithm()} and keyed by a {@link BinaryHash},
+	 * so the results hold neither the file's contents nor a hexadecimal string. The {@link Blob} for
+	 * the consumer is only created if there is a consumer to receive it.
+	 * </p>
+	 * <p>
+	 * If there is a {@link HasherOptions#cache()}, files that are streamed and unchanged since
+	 * they were cached are not read at all, unless the cache is being verified.
+	 * </p>
+	 * <p>
+	 * Archive entries are read out of their archive, which is released once the entry is hashed.
+	 * </p>
+	 * <p>
+	 * Files read onto the heap hold their size of the {@link HasherOptions#memoryBudget()} until
+	 * the consumer returns, and files larger than the whole budget, or archive entries whose size
+	 * is not known, are streamed instead.
+	 * </p>
+	 * <p>
+	 * The time spent reading the file and the time spent digesting it are recorded separately.
+	 * </p>
+	 *
+	 * @param sized the file to hash
+	 * @param path the reference to the file's path, which the consumer may modify, or {@code null} if there is no consumer
+	 * @return the hash of the file
+	 * @throws IOException if an I/O error occurs while reading the file
+	 */
+	private BinaryHash hash(SizedFile sized, Reference<Path> path) throws IOException {
+		final Path file = sized.path();
+		final HashAlgorithm algorithm = options.algorithm();
+		final HashCache cache = sized.attributes() != null ? options.cache() : null;
+		//Only allocate an event while a recording is taking them
+		final FileHashedEvent event = FILE_HASHED.isEnabled() ? new FileHashedEvent() : null;
+		if(event != null) {
+			event.begin();
+		}
+		final long started = System.nanoTime();
+		long readTime = 0;
+		boolean cached = false;
+		//Files too large for the memory budget are streamed, even if the consumer would like their contents.
+		//So are archive entries of unknown size, which cannot be reserved for up front.
+		final long size = sized.entry() != null ? sized.entry().size() : sized.size();
+		final boolean streaming = options.streaming() || !budget.fits(size);
+		if(streaming && !options.streaming() && needsBlobs) {
+			LOGGER.warn("[MassHash/WARN]: " + file + " (" + (size >= 0 ? size + " bytes" : "unknown size") + ") may be larger than the memory budget of " + options.memoryBudget() + " bytes. Hashing it without passing its contents along.");
+		}
+		final long reserved = streaming ? 0 : sized.size();
+		budget.acquire(reserved);
+		try {
+			final byte[] data;
+			BinaryHash hash = null;
+			if(sized.entry() != null) {
+				try {
+					if(streaming) {
+						data = null;
+						try(TimedInputStream stream = new TimedInputStream(reads.wrap(sized.entry().open()))) {
+							hash = algorithm.hash(stream);
+							readTime = stream.nanos;
+						}
+					}
+					else {
+						data = reads.read(sized.entry()::readAllBytes);
+						readTime = System.nanoTime() - started;
+						hash = algorithm.hash(data);
+					}
+				}
+				finally {
+					sized.entry().release();
+				}
+			}
+			else if(streaming) {
+				data = null;
+				if(cache != null && !options.verifyCache()) {
+					hash = cache.get(file, sized.attributes());
+					cached = hash != null;
+				}
+				if(hash == null) {
+					try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+						if(options.shouldMap(channel.size())) {
+							hash = algorithm.hashMapped(channel);
+						}
+						else {
+							final MessageDigest digest = algorithm.digest();
+							readTime = digest(channel, digest);
+							hash = algorithm.toHash(digest);
+						}
+					}
+					if(cache != null) {
+						cache.put(file, sized.attributes(), hash);
+					}
+				}
+			}
+			else {
+				data = reads.read(() -> Files.readAllBytes(file));
+				readTime = System.nanoTime() - started;
+				hash = algorithm.hash(data);
+				if(cache != null) {
+					cache.put(file, sized.attributes(), hash);
+				}
+			}
+			record(sized, event, cached, readTime, System.nanoTime() - started);
+			if(needsBlobs) {
+				forEachBlob.accept(path, new Blob(data, hash.hash(), algorithm));
+			}
+			return hash;
+		}
+		finally {
+			//The consumer has had the contents, whatever it keeps of them is its own business
+			budget.release(reserved);
+		}
+	}
+
+	/**
+	 * Records the timing of a hashed file in the metrics, the listener and the flight recorder.
+	 *
+	 * @param sized the file that was hashed
+	 * @param event the flight recorder event begun for the file, or {@code null} if events are not being recorded
+	 * @param cached whether the hash was taken from the cache
+	 * @param readTime the time spent reading the file
+	 * @param nanos the total time taken to hash the file
+	 */
+	private void record(SizedFile sized, FileHashedEvent event, boolean cached, long readTime, long nanos) {
+		final long digestTime = cached ? 0 : Math.max(0, nanos - readTime);
+		if(cached) {
+			metrics.fileCached(sized.size());
+		}
+		else {
+			metrics.fileHashed(sized.size(), readTime, digestTime);
+		}
+		if(options.listener() != null) {
+			options.listener().fileHashed(sized.path(), sized.size(), readTime, digestTime);
+		}
+		if(event != null) {
+			event.end();
+			if(event.shouldCommit()) {
+				event.path = sized.path().toString();
+				event.size = sized.size();
+				event.readTime = readTime;
+				event.digestTime = digestTime;
+				event.cached = cached;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Digests a file that is not memory mapped, by reading it into the thread's pooled direct
+	 * buffer and digesting it in place, so that hashing a small file allocates nothing beyond
+	 * opening it and the resulting hash.
+	 *
+	 * @param channel the file to digest
+	 * @param digest the digest to update with the file's contents
+	 * @return the time spent reading the file
+	 * @throws IOException if an I/O error occurs while reading the file
+	 */
+	private long digest(FileChannel channel, MessageDigest digest) throws IOException {
+		final ByteBuffer buffer = DigestPool.buffer();
+		long readTime = 0;
+		while(true) {
+			final long started = System.nanoTime();
+			final int read = reads.read(channel, buffer.clear());
+			readTime += System.nanoTime() - started;
+			if(read < 0) {
+				return readTime;
+			}
+			digest.update(buffer.flip());
+		}
+	}
+
+	/**
+	 * Adds up the time spent in reads, including any time spent waiting for the {@link ReadLimiter}.
+	 */
+	private static final class TimedInputStream extends FilterInputStream {
+
+		private long nanos;
+
+		private TimedInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final long started = System.nanoTime();
+			try {
+				return in.read(b, off, len);
+			}
+			finally {
+				nanos += System.nanoTime() - started;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,188 @@
+package com.wildermods.masshash;
+
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * A {@link Flow.Publisher} of each file's hash, as soon as the file is hashed.
+ *
+ * <p>
+ * Unlike a {@link Hasher}, whose results are only available once every file is done, a
+ * {@code HashPublisher} emits a {@link HashedFile} as each file completes, so that work such as
+ * uploading changed files or writing a manifest can overlap with hashing. Files are emitted in
+ * the order they finish, not in sorted order. If no files match, the subscriber is completed
+ * without any items.
+ * </p>
+ *
+ * <p>
+ * Backpressure is honored end to end. Items are buffered up to the publisher's buffer size,
+ * after which the hashing threads wait for the subscriber to request more. With the hashing
+ * threads waiting, the pipeline fills up, and the walk waits as well, so a slow subscriber
+ * throttles reading instead of letting hashed files pile up in memory.
+ * </p>
+ *
+ * <p>
+ * The publisher is single use: hashing starts when the first subscriber subscribes, and any
+ * later subscriber is immediately sent an {@link IllegalStateException}. Cancelling the
+ * subscription {@linkplain HashTask#cancel() cancels} the hashing.
+ * </p>
+ */
+public final class HashPublisher implements Flow.Publisher<HashPublisher.HashedFile> {
+
+	/**
+	 * A file and its hash.
+	 *
+	 * @param path the path of the file
+	 * @param hash the hash of the file's contents
+	 */
+	public static record HashedFile(Path path, Hash hash) {}
+
+	/*
+	 * Delivers items to the subscriber. The same executor SubmissionPublisher uses by default:
+	 * the common pool, unless it is too small to guarantee progress.
+	 */
+	private static final Executor DELIVERY = ForkJoinPool.getCommonPoolParallelism() > 1 ? ForkJoinPool.commonPool() : r -> new Thread(r).start();
+
+	private final Stream<Path> files;
+	private final int threads;
+	private final HasherOptions options;
+	private final Predicate<Path> predicate;
+	private final int bufferSize;
+	private final AtomicBoolean subscribed = new AtomicBoolean();
+
+	private HashPublisher(Stream<Path> files, int threads, HasherOptions options, Predicate<Path> predicate, int bufferSize) {
+		this.files = files;
+		this.threads = threads;
+		this.options = options;
+		this.predicate = predicate;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Creates a publisher of the hashes of all regular files from the given stream, hashed with
+	 * one thread per available processor and streamed (see {@link HasherOptions#HASH_ONLY}).
+	 *
+	 * @param files a stream of {@link Path} objects to hash, which is closed once hashing is done
+	 * @return the new publisher
+	 */
+	public static HashPublisher of(Stream<Path> files) {
+		return of(files, Runtime.getRuntime().availableProcessors(), HasherOptions.HASH_ONLY, p -> true, Flow.defaultBufferSize());
+	}
+
+	/**
+	 * Creates a publisher of the hashes of the files from the given stream.
+	 *
+	 * @param files a stream of {@link Path} objects to hash, which is closed once hashing is done
+	 * @param threads the number of threads to use for parallel hashing (adjusted to 1 if less than 1)
+	 * @param options the options controlling how files are read and hashed. Streaming should be enabled,
+	 *        since the contents of the files are not published.
+	 * @param predicate a predicate to filter files before processing
+	 * @param bufferSize the number of hashed files to buffer for the subscriber before hashing waits for it
+	 * @return the new publisher
+	 * @throws IllegalArgumentException if {@code bufferSize} is less than 1
+	 */
+	public static HashPublisher of(Stream<Path> files, int threads, HasherOptions options, Predicate<Path> predicate, int bufferSize) {
+		Objects.requireNonNull(files);
+		Objects.requireNonNull(options);
+		Objects.requireNonNull(predicate);
+		if(bufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size must be at least 1.");
+		}
+		return new HashPublisher(files, Math.max(1, threads), options, predicate, bufferSize);
+	}
+
+	/**
+	 * Subscribes to this publisher and starts hashing.
+	 *
+	 * @param subscriber the subscriber
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super HashedFile> subscriber) {
+		Objects.requireNonNull(subscriber);
+		if(!subscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(new Flow.Subscription() {
+				@Override
+				public void request(long n) {}
+				@Override
+				public void cancel() {}
+			});
+			subscriber.onError(new IllegalStateException("A HashPublisher can only be subscribed to once."));
+			return;
+		}
+
+		//SubmissionPublisher blocks submitting threads while the subscriber's buffer is full, which
+		//is what carries the subscriber's demand back to the hashing threads
+		final SubmissionPublisher<HashedFile> publisher = new SubmissionPublisher<>(DELIVERY, bufferSize);
+		final AtomicReference<HashTask> task = new AtomicReference<>();
+		final AtomicBoolean cancelled = new AtomicBoolean();
+		publisher.subscribe(new Flow.Subscriber<HashedFile>() {
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				subscriber.onSubscribe(new Flow.Subscription() {
+					@Override
+					public void request(long n) {
+						subscription.request(n);
+					}
+					@Override
+					public void cancel() {
+						subscription.cancel();
+						cancelled.set(true);
+						HashTask started = task.get();
+						if(started != null) {
+							started.cancel();
+						}
+					}
+				});
+			}
+			@Override
+			public void onNext(HashedFile item) {
+				subscriber.onNext(item);
+			}
+			@Override
+			public void onError(Throwable throwable) {
+				subscriber.onError(throwable);
+			}
+			@Override
+			public void onComplete() {
+				subscriber.onComplete();
+			}
+		});
+
+		final HashTask started;
+		try {
+			//Hashes are published straight from the pipeline, without a Blob for each file
+			started = HashTask.start(files, threads, options, predicate, null, (path, hash) -> {
+				publisher.submit(new HashedFile(path, hash));
+				return path;
+			}, null);
+		}
+		catch(RuntimeException e) {
+			publisher.closeExceptionally(e);
+			return;
+		}
+		task.set(started);
+		if(cancelled.get()) {
+			//Cancelled before the task started
+			started.cancel();
+		}
+		started.results().whenComplete((results, failure) -> {
+			//Unlike a Hasher, finding no files at all is not an error here
+			HashTask.Progress progress = started.progress();
+			if(failure != null && !(progress.walked() && progress.totalFiles() == 0)) {
+				publisher.closeExceptionally(failure);
+			}
+			else {
+				publisher.close();
+			}
+		});
+	}
+
+}
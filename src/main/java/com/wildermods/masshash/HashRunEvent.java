@@ -0,0 +1,47 @@
+package com.wildermods.masshash;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for a whole run of a {@link HashPipeline}, from its creation
+ * until all of its files were hashed.
+ */
+@Name("com.wildermods.masshash.HashRun")
+@Label("Hash Run")
+@Category("MassHash")
+@Description("A set of files was hashed")
+final class HashRunEvent extends Event {
+
+	@Label("Algorithm")
+	String algorithm;
+
+	@Label("Threads")
+	int threads;
+
+	@Label("Files")
+	long files;
+
+	@Label("Cached Files")
+	long cachedFiles;
+
+	@Label("Size")
+	@DataAmount
+	long bytes;
+
+	@Label("Throughput")
+	@DataAmount
+	@Frequency
+	@Description("Bytes hashed per second")
+	double bytesPerSecond;
+
+	@Label("Max Queue Depth")
+	@Description("The largest number of units of work queued or running at once")
+	long maxQueueDepth;
+
+}
@@ -0,0 +1,131 @@
+package com.wildermods.masshash;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Splits a set of files into units of work of roughly equal cost, for {@link HashPipeline}.
+ * Files are planned in windows, as they are discovered, rather than all at once.
+ *
+ * <p>
+ * Splitting files evenly by count leaves threads idle whenever a few large files end
+ * up in the same chunk. Instead, files are balanced by their size:
+ * </p>
+ * <ul>
+ *   <li>Files are ordered largest first, so the largest files are started first and
+ *   the smallest ones fill in the gaps at the end of the run.</li>
+ *   <li>Each large file becomes a unit of its own.</li>
+ *   <li>Small files are batched together until a batch is worth about as much work as
+ *   a large file, so that tiny files don't each pay the cost of a separate task.</li>
+ * </ul>
+ * <p>
+ * The units are then run on a work-stealing {@link java.util.concurrent.ForkJoinPool},
+ * so no thread goes idle while units remain.
+ * </p>
+ */
+final class HashScheduler {
+
+	/**
+	 * The fixed cost of hashing a file, regardless of its size, expressed in bytes.
+	 * Accounts for opening, closing and statting the file, so that batches of empty
+	 * or tiny files are not unbounded.
+	 */
+	static final long FILE_COST = 16 * 1024;
+
+	/**
+	 * The smallest amount of work worth scheduling as a separate unit.
+	 */
+	static final long MIN_UNIT_COST = 1024 * 1024;
+
+	/**
+	 * How many units to aim for per thread. More units balance better, fewer units
+	 * have less scheduling overhead.
+	 */
+	static final int UNITS_PER_THREAD = 8;
+
+	/**
+	 * A file that is due to be hashed, along with its size and the attributes it was statted with,
+	 * if any. Entries of an {@link Archive} have a virtual path, no attributes, and the entry to read.
+	 */
+	record SizedFile(Path path, long size, BasicFileAttributes attributes, Archive.Entry entry) {
+
+		SizedFile(Path path, long size) {
+			this(path, size, null, null);
+		}
+
+		SizedFile(Path path, long size, BasicFileAttributes attributes) {
+			this(path, size, attributes, null);
+		}
+
+		long cost() {
+			return size + FILE_COST;
+		}
+
+	}
+
+	private HashScheduler() {}
+
+	/**
+	 * Reads the size of a file, using a single stat call that also determines whether
+	 * the file is a regular file.
+	 *
+	 * @param path the path to stat
+	 * @return the file and its size, or {@code null} if the path is not a regular file or cannot be read
+	 */
+	static SizedFile stat(Path path) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			if(attributes.isRegularFile()) {
+				return new SizedFile(path, attributes.size(), attributes);
+			}
+		}
+		catch(IOException e) {
+			//Same as Files.isRegularFile, unreadable paths are not regular files
+		}
+		return null;
+	}
+
+	/**
+	 * Splits files into units of work, ordered by decreasing cost.
+	 *
+	 * @param files the files to split, this list is sorted in place
+	 * @param threads the number of threads the units will be run on
+	 * @return the units of work, largest first
+	 */
+	static List<List<SizedFile>> plan(List<SizedFile> files, int threads) {
+		files.sort(Comparator.comparingLong(SizedFile::size).reversed());
+
+		long totalCost = 0;
+		for(SizedFile file : files) {
+			totalCost += file.cost();
+		}
+		final long unitCost = Math.max(MIN_UNIT_COST, totalCost / ((long)threads * UNITS_PER_THREAD));
+
+		List<List<SizedFile>> units = new ArrayList<>();
+		List<SizedFile> batch = new ArrayList<>();
+		long batchCost = 0;
+		for(SizedFile file : files) {
+			if(file.cost() >= unitCost) {
+				units.add(List.of(file));
+				continue;
+			}
+			batch.add(file);
+			batchCost += file.cost();
+			if(batchCost >= unitCost) {
+				units.add(batch);
+				batch = new ArrayList<>();
+				batchCost = 0;
+			}
+		}
+		if(!batch.isEmpty()) {
+			units.add(batch);
+		}
+		return units;
+	}
+
+}
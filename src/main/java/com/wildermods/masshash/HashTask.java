@@ -0,0 +1,261 @@
+package com.wildermods.masshash;
+
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.collect.SetMultimap;
+import com.wildermods.masshash.HashPipeline.FileSource;
+import com.wildermods.masshash.HashScheduler.SizedFile;
+import com.wildermods.masshash.utils.Reference;
+
+/**
+ * A hashing run in the background, which can be watched and cancelled.
+ *
+ * <p>
+ * A {@code HashTask} does the same work as a {@link Hasher}, but instead of blocking the
+ * calling thread, {@linkplain #start(Stream, int, HasherOptions, Predicate, BiConsumer, Consumer) starting}
+ * it returns immediately. The file stream is walked on a thread of its own, and the results are
+ * delivered through a {@link CompletableFuture}. Progress can be polled with {@link #progress()}
+ * or received as each file is hashed.
+ * </p>
+ *
+ * <p>
+ * {@linkplain #cancel() Cancelling} a task, or its {@link #results()} future, stops the walk and
+ * interrupts every hashing thread, which closes the files being read. Reads in progress stop
+ * right away, and memory mapped files stop at the next mapped window.
+ * </p>
+ *
+ * <p>
+ * The task takes ownership of the file stream and closes it when it is done, so streams that
+ * hold resources, such as {@link java.nio.file.Files#walk(Path, java.nio.file.FileVisitOption...)},
+ * are not leaked.
+ * </p>
+ */
+public final class HashTask {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+	private static final AtomicInteger TASKS = new AtomicInteger();
+
+	/**
+	 * A snapshot of the progress of a task.
+	 *
+	 * @param files the number of files hashed so far
+	 * @param bytes the number of bytes hashed so far
+	 * @param totalFiles the number of files found so far, counting each entry of an expanded archive as a file
+	 * @param totalBytes the size of the files found so far, in bytes, counting expanded archives by the size of their entries
+	 * @param walked {@code true} once all files have been found, after which the totals no longer change
+	 */
+	public static record Progress(long files, long bytes, long totalFiles, long totalBytes, boolean walked) {
+
+		/**
+		 * @return the fraction of bytes hashed, from 0 to 1. While the files are still being
+		 *         found, this is only the fraction of the files found so far.
+		 */
+		public double fraction() {
+			if(totalBytes == 0) {
+				return walked && files == totalFiles ? 1 : 0;
+			}
+			return (double) bytes / totalBytes;
+		}
+
+	}
+
+	private final CompletableFuture<SetMultimap<Hash, Path>> results = new CompletableFuture<>();
+	private final Thread producer;
+	private final Consumer<Progress> onProgress;
+
+	private final LongAdder files = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+	private volatile boolean walked;
+
+	private volatile boolean cancelled;
+	private volatile HashPipeline pipeline;
+	private volatile HashMetrics metrics;
+
+	private HashTask(Stream<Path> paths, int threads, HasherOptions options, Predicate<Path> predicate, BiConsumer<Reference<Path>, Blob> forEachBlob, HashPipeline.OnHashed onHashed, Consumer<Progress> onProgress) {
+		this.onProgress = onProgress;
+		final HashListener listener = options.listener();
+		final HasherOptions tracked = options.withListener(new HashListener() {
+			@Override
+			public void fileHashed(Path file, long size, long readNanos, long digestNanos) {
+				files.increment();
+				bytes.add(size);
+				if(listener != null) {
+					listener.fileHashed(file, size, readNanos, digestNanos);
+				}
+				progressed();
+			}
+			@Override
+			public void completed(HashMetrics metrics) {
+				if(listener != null) {
+					listener.completed(metrics);
+				}
+			}
+		});
+		this.producer = new Thread(() -> run(paths, threads, tracked, predicate, forEachBlob, onHashed), "MassHash Task " + TASKS.incrementAndGet());
+		this.producer.setDaemon(true);
+		//Cancelling the future directly cancels the task as well
+		results.whenComplete((r, t) -> {
+			if(results.isCancelled()) {
+				stop();
+			}
+		});
+	}
+
+	/**
+	 * Starts hashing all regular files from the given stream in the background, with one
+	 * thread per available processor. Files are streamed, see {@link HasherOptions#HASH_ONLY}.
+	 *
+	 * @param files a stream of {@link Path} objects to hash, which the task closes when it is done
+	 * @return the running task
+	 */
+	public static HashTask start(Stream<Path> files) {
+		return start(files, Runtime.getRuntime().availableProcessors(), HasherOptions.HASH_ONLY, p -> true, null, null);
+	}
+
+	/**
+	 * Starts hashing files in the background.
+	 *
+	 * <p>
+	 * The parameters are the same as those of
+	 * {@link Hasher#Hasher(Stream, int, HasherOptions, Predicate, BiConsumer)}, except that
+	 * {@code forEachBlob} may be {@code null} if nothing needs the files' {@link Blob}s. Errors,
+	 * including no files matching the predicate, complete the {@link #results()} exceptionally
+	 * instead of being thrown.
+	 * </p>
+	 *
+	 * @param files a stream of file paths to be hashed, which the task closes when it is done
+	 * @param threads the number of threads to use for parallel hashing (adjusted to 1 if less than 1)
+	 * @param options the options controlling how files are read and hashed
+	 * @param predicate a predicate to filter files before processing
+	 * @param forEachBlob a consumer invoked with each {@link Blob}, or {@code null}
+	 * @param onProgress a consumer invoked with the {@link Progress} of the task after each file is hashed, or {@code null}.
+	 *        It is called from the hashing threads, possibly from several at once.
+	 * @return the running task
+	 * @throws IllegalArgumentException if the {@link HasherOptions#cache()} holds hashes of a different algorithm
+	 */
+	public static HashTask start(Stream<Path> files, int threads, HasherOptions options, Predicate<Path> predicate, BiConsumer<Reference<Path>, Blob> forEachBlob, Consumer<Progress> onProgress) {
+		return start(files, threads, options, predicate, forEachBlob, null, onProgress);
+	}
+
+	/**
+	 * Starts hashing files in the background, passing each file's hash to a {@link HashPipeline.OnHashed}
+	 * hook as it is hashed.
+	 *
+	 * @param onHashed the hook to pass each file's hash to, or {@code null}
+	 * @see #start(Stream, int, HasherOptions, Predicate, BiConsumer, Consumer)
+	 */
+	static HashTask start(Stream<Path> files, int threads, HasherOptions options, Predicate<Path> predicate, BiConsumer<Reference<Path>, Blob> forEachBlob, HashPipeline.OnHashed onHashed, Consumer<Progress> onProgress) {
+		Objects.requireNonNull(files);
+		Objects.requireNonNull(options);
+		Objects.requireNonNull(predicate);
+		//Checked up front, so that it is thrown rather than completing the results
+		HashPipeline.checkCache(options);
+		HashTask task = new HashTask(files, Math.max(1, threads), options, predicate, forEachBlob, onHashed, onProgress);
+		task.producer.start();
+		return task;
+	}
+
+	private void run(Stream<Path> paths, int threads, HasherOptions options, Predicate<Path> predicate, BiConsumer<Reference<Path>, Blob> forEachBlob, HashPipeline.OnHashed onHashed) {
+		try(paths; HashPipeline pipeline = new HashPipeline(threads, options, forEachBlob != null ? forEachBlob : (p, b) -> {}, forEachBlob != null, onHashed)) {
+			this.pipeline = pipeline;
+			//Walk the stream like Hasher does, but give up as soon as the task is cancelled
+			final FileSource walk = FileSource.of(paths.iterator(), predicate);
+			SetMultimap<Hash, Path> ret = pipeline.hashAll(() -> {
+				if(cancelled) {
+					throw new InterruptedIOException("Task cancelled");
+				}
+				SizedFile file = walk.next();
+				if(file == null) {
+					walked = true;
+					progressed();
+				}
+				return file;
+			});
+			metrics = pipeline.metrics();
+			results.complete(ret);
+		}
+		catch(Throwable t) {
+			if(!cancelled) {
+				results.completeExceptionally(LOGGER.throwing(t));
+			}
+		}
+	}
+
+	private void progressed() {
+		if(onProgress != null) {
+			onProgress.accept(progress());
+		}
+	}
+
+	private void stop() {
+		cancelled = true;
+		HashPipeline pipeline = this.pipeline;
+		if(pipeline != null) {
+			pipeline.close();
+		}
+		producer.interrupt();
+	}
+
+	/**
+	 * Returns the results of the task, as a future that completes once every file has been hashed.
+	 *
+	 * @return a future of the sorted, thread-safe results, as they would be returned by {@link Hasher#results()}
+	 */
+	public CompletableFuture<SetMultimap<Hash, Path>> results() {
+		return results;
+	}
+
+	/**
+	 * @return the current progress of the task
+	 */
+	public Progress progress() {
+		//Files are counted in the totals before they are submitted, so reading the totals last keeps them
+		//ahead of the number of files hashed. Likewise, once walked is set the totals are final.
+		//The totals are counted by the pipeline, after archives are expanded, so that they are in the
+		//same units as the files and bytes hashed.
+		final long files = this.files.sum();
+		final long bytes = this.bytes.sum();
+		final boolean walked = this.walked;
+		final HashPipeline pipeline = this.pipeline;
+		return pipeline == null
+			? new Progress(files, bytes, 0, 0, walked)
+			: new Progress(files, bytes, pipeline.submitted(), pipeline.submittedBytes(), walked);
+	}
+
+	/**
+	 * @return the metrics of the task once it has completed successfully, otherwise {@code null}
+	 */
+	public HashMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Cancels the task. The {@link #results()} complete with a {@link java.util.concurrent.CancellationException},
+	 * the walk stops, and all hashing threads are interrupted. Does nothing if the task has already completed.
+	 *
+	 * @return {@code true} if the task was cancelled by this call
+	 */
+	public boolean cancel() {
+		return results.cancel(true);
+	}
+
+	/**
+	 * @return {@code true} if the task was cancelled before it completed
+	 */
+	public boolean isCancelled() {
+		return results.isCancelled();
+	}
+
+}
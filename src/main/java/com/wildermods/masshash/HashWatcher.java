@@ -0,0 +1,429 @@
+package com.wildermods.masshash;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.TreeMultimap;
+import com.wildermods.masshash.HashScheduler.SizedFile;
+
+/**
+ * Keeps the hashes of a file tree current, by watching it for changes.
+ *
+ * <p>
+ * {@linkplain #watch(Path, int, HasherOptions, Predicate, Duration, Consumer) Starting} a watcher
+ * hashes the whole tree once, like a {@link Hasher} would, and registers every directory of the
+ * tree with a {@link WatchService}. From then on, only files that are created or modified are
+ * hashed again, and the {@link #results()} are updated in place. Files that are deleted are removed
+ * from the results, and directories that are created are walked and watched as well.
+ * </p>
+ *
+ * <p>
+ * Tools tend to save many files at once, and to write each file in several steps. Events are
+ * therefore coalesced: changes are only applied once no new event has arrived for the debounce
+ * period, or once changes have been pending for {@value #MAX_DELAY_FACTOR} debounce periods,
+ * so that a steady stream of events cannot hold up the results forever. Each changed file is
+ * hashed once per batch, however many events it produced. If the {@link WatchService} drops
+ * events, the whole tree is rescanned.
+ * </p>
+ *
+ * <p>
+ * The watcher runs on a daemon thread of its own until it is {@linkplain #close() closed}.
+ * </p>
+ */
+public final class HashWatcher implements Closeable {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	/**
+	 * Changes are applied at the latest this many debounce periods after the first pending event.
+	 */
+	static final int MAX_DELAY_FACTOR = 10;
+
+	private final Path root;
+	private final int threads;
+	private final HasherOptions options;
+	private final Predicate<Path> predicate;
+	private final long debounceNanos;
+	private final Consumer<Set<Path>> onRefresh;
+
+	private final WatchService watchService;
+	//Shared by the pipelines of every batch, so that each batch does not start threads of its own
+	private final ForkJoinPool pool;
+	private final Map<WatchKey, Path> directories = new HashMap<>();
+	private final TreeMultimap<Hash, Path> sorted = TreeMultimap.create(Hash::compare, Ordering.natural());
+	private final SetMultimap<Hash, Path> results = Multimaps.synchronizedSetMultimap(sorted);
+	//Guarded by results. Sorted so that the files under a directory are next to each other, see compare(Path, Path, char).
+	private final NavigableMap<Path, Hash> byPath;
+	private final Thread thread;
+	private volatile boolean closed;
+
+	private HashWatcher(Path root, int threads, HasherOptions options, Predicate<Path> predicate, Duration debounce, Consumer<Set<Path>> onRefresh) throws IOException {
+		this.root = root;
+		this.threads = threads;
+		this.options = options;
+		this.predicate = predicate;
+		this.debounceNanos = debounce.toNanos();
+		this.onRefresh = onRefresh;
+		this.watchService = root.getFileSystem().newWatchService();
+		this.pool = HashPipeline.newPool(threads, options);
+		final char separator = root.getFileSystem().getSeparator().charAt(0);
+		this.byPath = new TreeMap<>((a, b) -> compare(a, b, separator));
+		this.thread = new Thread(this::run, "MassHash Watcher " + root);
+		this.thread.setDaemon(true);
+	}
+
+	/**
+	 * Hashes and watches the file tree at {@code root}, with one thread per available processor,
+	 * streaming files (see {@link HasherOptions#HASH_ONLY}) and a debounce period of 200 milliseconds.
+	 *
+	 * @param root the root of the tree to watch
+	 * @return the running watcher
+	 * @throws IOException if the tree could not be hashed or watched
+	 */
+	public static HashWatcher watch(Path root) throws IOException {
+		return watch(root, Runtime.getRuntime().availableProcessors(), HasherOptions.HASH_ONLY, p -> true, Duration.ofMillis(200), null);
+	}
+
+	/**
+	 * Hashes and watches the file tree at {@code root}. Returns once the whole tree has been hashed.
+	 *
+	 * @param root the root of the tree to watch
+	 * @param threads the number of threads to use for hashing (adjusted to 1 if less than 1)
+	 * @param options the options controlling how files are read and hashed. Results are never
+	 *        {@linkplain HasherOptions#indexResults() indexed}, since they have to be updated, and archives
+	 *        are never {@linkplain HasherOptions#expandArchives() expanded}, since changes are tracked by file.
+	 * @param predicate a predicate to filter which files are hashed
+	 * @param debounce how long events must stop arriving before changes are applied
+	 * @param onRefresh a consumer invoked on the watcher's thread with the paths whose hashes changed,
+	 *        after each batch of changes is applied to the results, or {@code null}
+	 * @return the running watcher
+	 * @throws IOException if the tree could not be hashed or watched
+	 * @throws IllegalArgumentException if the debounce period is negative
+	 */
+	public static HashWatcher watch(Path root, int threads, HasherOptions options, Predicate<Path> predicate, Duration debounce, Consumer<Set<Path>> onRefresh) throws IOException {
+		Objects.requireNonNull(root);
+		Objects.requireNonNull(options);
+		Objects.requireNonNull(predicate);
+		if(debounce.isNegative()) {
+			throw new IllegalArgumentException("Debounce period cannot be negative.");
+		}
+		HashWatcher watcher = new HashWatcher(root, Math.max(1, threads), options.withIndexedResults(false).withExpandedArchives(false), predicate, debounce, onRefresh);
+		boolean started = false;
+		try {
+			watcher.apply(Set.of(), watcher.scan(root));
+			watcher.thread.start();
+			started = true;
+		}
+		finally {
+			if(!started) {
+				watcher.close();
+			}
+		}
+		return watcher;
+	}
+
+	/**
+	 * Returns the current hashes of the tree. The multimap is updated in place as files change,
+	 * and must be synchronized on while it is iterated, see {@link Multimaps#synchronizedSetMultimap(SetMultimap)}.
+	 *
+	 * @return a live, sorted, thread-safe view of the hashes of the tree
+	 */
+	public SetMultimap<Hash, Path> results() {
+		return results;
+	}
+
+	/**
+	 * @param path the path of a file, as it appears in the {@link #results()}
+	 * @return the current hash of the file, or {@code null} if it is not in the results
+	 */
+	public Hash hash(Path path) {
+		synchronized(results) {
+			return byPath.get(path);
+		}
+	}
+
+	/**
+	 * Stops watching the tree. A batch of changes that is being applied is interrupted, and this method waits
+	 * for the watcher's thread to finish, so the {@link #results()} keep their last state from then on.
+	 *
+	 * @throws InterruptedIOException if the thread is interrupted while waiting for the watcher to stop
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		watchService.close();
+		thread.interrupt();
+		pool.shutdownNow();
+		if(thread != Thread.currentThread()) {
+			try {
+				thread.join();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the watcher of " + root + " to stop");
+			}
+		}
+	}
+
+	private void run() {
+		//Each changed path, and whether it was created
+		final Map<Path, Boolean> pending = new HashMap<>();
+		boolean rescan = false;
+		long first = 0;
+		long last = 0;
+		try {
+			while(!closed) {
+				WatchKey key;
+				if(pending.isEmpty() && !rescan) {
+					key = watchService.take();
+					first = System.nanoTime();
+				}
+				else {
+					final long now = System.nanoTime();
+					final long wait = Math.min(last + debounceNanos, first + debounceNanos * MAX_DELAY_FACTOR) - now;
+					key = wait > 0 ? watchService.poll(wait, TimeUnit.NANOSECONDS) : null;
+				}
+				if(key == null) {
+					//Quiet for long enough, or pending for too long
+					refresh(pending, rescan);
+					pending.clear();
+					rescan = false;
+					continue;
+				}
+				last = System.nanoTime();
+				final Path directory = directories.get(key);
+				for(WatchEvent<?> event : key.pollEvents()) {
+					if(event.kind() == OVERFLOW || directory == null) {
+						rescan = true;
+					}
+					else {
+						pending.merge(directory.resolve((Path) event.context()), event.kind() == ENTRY_CREATE, Boolean::logicalOr);
+					}
+				}
+				if(!key.reset()) {
+					directories.remove(key);
+				}
+			}
+		}
+		catch(InterruptedException | ClosedWatchServiceException e) {
+			//Closed
+		}
+	}
+
+	/**
+	 * Applies a batch of changes.
+	 *
+	 * @param changed the paths that had events, and whether each of them was created
+	 * @param rescan {@code true} if events were lost, and the whole tree must be scanned
+	 */
+	private void refresh(Map<Path, Boolean> changed, boolean rescan) {
+		try {
+			final Set<Path> removed = new HashSet<>();
+			final Map<Path, Hash> hashed;
+			if(rescan) {
+				hashed = scan(root);
+				synchronized(results) {
+					removed.addAll(byPath.keySet());
+				}
+			}
+			else {
+				final List<SizedFile> files = new ArrayList<>();
+				hashed = new HashMap<>();
+				for(Map.Entry<Path, Boolean> change : changed.entrySet()) {
+					final Path path = change.getKey();
+					if(Files.isDirectory(path)) {
+						if(change.getValue()) {
+							//A new directory, which has to be watched. Files may have been added to it before it was registered.
+							hashed.putAll(scan(path));
+						}
+						//Otherwise, changes within the directory are reported by its own key
+						continue;
+					}
+					SizedFile file = predicate.test(path) ? HashScheduler.stat(path) : null;
+					if(file != null) {
+						files.add(file);
+					}
+					else {
+						//Deleted, or no longer a file. If it was a directory, all of its files are gone as well.
+						removed.add(path);
+					}
+				}
+				hashed.putAll(hash(files));
+			}
+			Set<Path> updated = apply(removed, hashed);
+			if(onRefresh != null && !updated.isEmpty()) {
+				onRefresh.accept(Collections.unmodifiableSet(updated));
+			}
+		}
+		catch(IOException | RuntimeException e) {
+			if(!closed) {
+				LOGGER.warn("[MassHash/WARN]: Could not apply changes to " + root + ": " + e);
+			}
+		}
+	}
+
+	/**
+	 * Registers a directory and all of its subdirectories, and hashes all of the files within.
+	 */
+	private Map<Path, Hash> scan(Path directory) throws IOException {
+		final List<SizedFile> files = new ArrayList<>();
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+				try {
+					directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+				}
+				catch(NoSuchFileException e) {
+					//Deleted while walking, its parent reports the deletion
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				if(attributes.isRegularFile() && predicate.test(file)) {
+					files.add(new SizedFile(file, attributes.size(), attributes));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				//Deleted while walking
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return hash(files);
+	}
+
+	/**
+	 * Hashes files with a {@link HashPipeline} on the watcher's pool. Files that cannot be hashed, such as
+	 * files that were deleted again right away, are left out, and the rest of the files are hashed as usual.
+	 *
+	 * @throws IOException if hashing was interrupted
+	 */
+	private Map<Path, Hash> hash(List<SizedFile> files) throws IOException {
+		final Map<Path, Hash> ret = new HashMap<>();
+		if(files.isEmpty()) {
+			return ret;
+		}
+		try(HashPipeline pipeline = new HashPipeline(threads, options, null, false, new HashPipeline.OnHashed() {
+			@Override
+			public Path hashed(Path path, BinaryHash hash) {
+				return path;
+			}
+			@Override
+			public void failed(Path path, IOException failure) {
+				LOGGER.warn("[MassHash/WARN]: Could not hash " + path + ": " + failure);
+			}
+		}, pool)) {
+			for(SizedFile file : files) {
+				pipeline.submit(file);
+			}
+			SetMultimap<Hash, Path> hashed = pipeline.finish();
+			synchronized(hashed) {
+				hashed.forEach((hash, path) -> ret.put(path, hash));
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Orders paths by their string form, with the separator before every other character. The
+	 * paths under a directory then sort right after the directory itself, ahead of siblings such
+	 * as {@code dir-2} or {@code dir.txt}, so they can be found with a single range.
+	 */
+	private static int compare(Path a, Path b, char separator) {
+		final String x = a.toString();
+		final String y = b.toString();
+		final int length = Math.min(x.length(), y.length());
+		for(int i = 0; i < length; i++) {
+			final char c = x.charAt(i);
+			final char d = y.charAt(i);
+			if(c != d) {
+				return c == separator ? -1 : d == separator ? 1 : Character.compare(c, d);
+			}
+		}
+		return Integer.compare(x.length(), y.length());
+	}
+
+	/**
+	 * Applies removed and hashed files to the results.
+	 *
+	 * @return the paths whose hashes changed
+	 */
+	private Set<Path> apply(Set<Path> removed, Map<Path, Hash> hashed) {
+		final Set<Path> updated = new HashSet<>();
+		synchronized(results) {
+			if(closed) {
+				return updated;
+			}
+			for(Path path : removed) {
+				//The path itself, and if it was a directory, every file under it
+				Iterator<Map.Entry<Path, Hash>> entries = byPath.tailMap(path, true).entrySet().iterator();
+				while(entries.hasNext()) {
+					Map.Entry<Path, Hash> entry = entries.next();
+					if(!entry.getKey().startsWith(path)) {
+						break;
+					}
+					if(hashed.containsKey(entry.getKey())) {
+						continue;
+					}
+					results.remove(entry.getValue(), entry.getKey());
+					updated.add(entry.getKey());
+					entries.remove();
+				}
+			}
+			for(Map.Entry<Path, Hash> entry : hashed.entrySet()) {
+				Hash old = byPath.put(entry.getKey(), entry.getValue());
+				if(old != null) {
+					if(old.hashEquals(entry.getValue())) {
+						continue;
+					}
+					results.remove(old, entry.getKey());
+				}
+				results.put(entry.getValue(), entry.getKey());
+				updated.add(entry.getKey());
+			}
+		}
+		return updated;
+	}
+
+}
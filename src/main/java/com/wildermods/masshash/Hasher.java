@@ -1,32 +1,20 @@
 package com.wildermods.masshash;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Objects;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.google.common.collect.Multimaps;
-import com.google.common.collect.Ordering;
 import com.google.common.collect.SetMultimap;
-import com.google.common.collect.TreeMultimap;
+import com.wildermods.masshash.HashPipeline.FileSource;
 import com.wildermods.masshash.utils.Reference;
 
 /**
@@ -34,12 +22,16 @@ import com.wildermods.masshash.utils.Reference;
  * 
  * <p>
  * Files are processed into {@link Blob} objects, hashed, and grouped by their
- * content hashes. Results are stored in a sorted, thread-safe {@link SetMultimap}.
+ * content hashes. Results are stored in a sorted, thread-safe {@link SetMultimap},
+ * keyed by compact {@link BinaryHash}es.
  * </p>
  * 
  * <p>
  * {@code Hasher} is designed for large file sets (e.g., 40,000+ files) and
- * automatically parallelizes hashing using all available CPU cores.
+ * automatically parallelizes hashing using all available CPU cores. Work is
+ * balanced across threads by file size rather than file count, so a few large
+ * files don't hold up the whole run. Hashing starts as soon as the first files
+ * are found, while the rest of the stream is still being walked.
  * </p>
  * 
  * <p>
@@ -61,8 +53,14 @@ public abstract class Hasher {
 	 * </p>
 	 */
 	protected SetMultimap<Hash, Path> blobs;
+	/**
+	 * The metrics of the run that produced {@link #blobs}, or {@code null} if they were not computed by this instance.
+	 */
+	protected HashMetrics metrics;
 	protected Logger logger = LogManager.getLogger();
 	
+	private static final BiConsumer<Reference<Path>, Blob> NO_OP = (p, b) -> {};
+	
 	/**
 	 * Protected no-argument constructor for subclass serialization.
 	 */
@@ -73,11 +71,35 @@ public abstract class Hasher {
 	/**
 	 * Constructs a {@code Hasher} that processes all regular files from the given stream.
 	 * 
+	 * <p>
+	 * Since nothing consumes the contents of the files, they are streamed through a
+	 * fixed-size buffer rather than being read into memory (see {@link HasherOptions#HASH_ONLY}).
+	 * </p>
+	 * 
 	 * @param files a stream of {@link Path} objects to hash
 	 * @throws IOException if an I/O error occurs during hashing
 	 */
 	public Hasher(final Stream<Path> files) throws IOException {
-		this(files, (p, b) -> {});
+		this(files, (p) -> true);
+	}
+	
+	/**
+	 * Constructs a {@code Hasher} that processes all regular files matching the given predicate
+	 * from the provided stream.
+	 * 
+	 * <p>
+	 * Since nothing consumes the contents of the files, they are streamed through a
+	 * fixed-size buffer rather than being read into memory (see {@link HasherOptions#HASH_ONLY}).
+	 * </p>
+	 * 
+	 * @param files a stream of {@link Path} objects to hash
+	 * @param predicate a {@link Predicate} to filter which files should be hashed
+	 * 
+	 * @throws IOException if an I/O error occurs during hashing
+	 * @throws IllegalArgumentException if no files match the predicate
+	 */
+	public Hasher(final Stream<Path> files, final Predicate<Path> predicate) throws IOException {
+		this(files, Runtime.getRuntime().availableProcessors(), HasherOptions.HASH_ONLY, predicate, NO_OP);
 	}
 	
 	/**
@@ -125,9 +147,9 @@ public abstract class Hasher {
 	 * </p>
 	 * 
 	 * <p>
-	 * Hashing is performed in parallel using a thread pool sized according to {@code threads}, unless
-	 * the specified thread count is less than 1 or exceeds available processors, in which case it is adjusted
-	 * to the nearest valid value.
+	 * Hashing is performed in parallel using a thread pool sized according to {@code threads}. A thread
+	 * count less than 1 is adjusted to 1. Thread counts above the number of available processors are
+	 * honored, but a warning is logged.
 	 * </p>
 	 * 
 	 * <p>
@@ -136,125 +158,140 @@ public abstract class Hasher {
 	 * </p>
 	 * 
 	 * @param files a stream of file paths to be hashed
-	 * @param threads the number of threads to use for parallel hashing (auto-adjusted if invalid)
+	 * @param threads the number of threads to use for parallel hashing (adjusted to 1 if less than 1)
 	 * @param predicate a predicate to filter files before processing (e.g., by extension or size)
 	 * @param forEachBlob a consumer invoked with each {@link Blob} and a {@link Reference}&lt;Path&gt; 
 	 *        that wraps the original file path. This allows the path to be modified (e.g., to relativize or normalize it)
 	 *        before being added to the result map. The updated reference value will be associated with the computed hash.
+	 *        May be {@code null} if nothing needs the files' {@link Blob}s, in which case no {@code Blob} or
+	 *        {@code Reference} is created for any file.
 	 * 
 	 * @throws IOException if an error occurs while reading files or during thread execution
 	 * @throws IllegalArgumentException if no files matched the provided predicate
 	 */
 	public Hasher(final Stream<Path> files, int threads, final Predicate<Path> predicate, final BiConsumer<Reference<Path>,Blob> forEachBlob) throws IOException {
-		final int processors = Runtime.getRuntime().availableProcessors();
+		this(files, threads, HasherOptions.DEFAULT, predicate, forEachBlob);
+	}
+	
+	/**
+	 * Constructs a {@code Hasher} that processes all files matching the given predicate
+	 * from the provided stream, using a specified number of threads and the given {@link HasherOptions}.
+	 * 
+	 * <p>
+	 * Behaves like {@link #Hasher(Stream, int, Predicate, BiConsumer)}, except for how files are read:
+	 * if {@link HasherOptions#streaming()} is enabled, files are streamed through a fixed-size buffer
+	 * (or memory mapped, see {@link HasherOptions#mappedThreshold()}) and never held in memory as a whole. The {@link Blob}s passed to {@code forEachBlob} are then
+	 * data-less, so streaming should only be enabled if the consumer does not need the file contents.
+	 * </p>
+	 * 
+	 * @param files a stream of file paths to be hashed
+	 * @param threads the number of threads to use for parallel hashing (adjusted to 1 if less than 1).
+	 *        The number of concurrent reads can be set independently with {@link HasherOptions#ioThreads()}.
+	 * @param options the options controlling how files are read and hashed
+	 * @param predicate a predicate to filter files before processing (e.g., by extension or size)
+	 * @param forEachBlob a consumer invoked with each {@link Blob} and a {@link Reference}&lt;Path&gt; 
+	 *        that wraps the original file path. This allows the path to be modified (e.g., to relativize or normalize it)
+	 *        before being added to the result map. The updated reference value will be associated with the computed hash.
+	 *        May be {@code null} if nothing needs the files' {@link Blob}s, in which case no {@code Blob} or
+	 *        {@code Reference} is created for any file.
+	 * 
+	 * @throws IOException if an error occurs while reading files or during thread execution
+	 * @throws IllegalArgumentException if no files matched the provided predicate, or the {@link HasherOptions#cache()}
+	 *         holds hashes of a different algorithm
+	 */
+	public Hasher(final Stream<Path> files, int threads, final HasherOptions options, final Predicate<Path> predicate, final BiConsumer<Reference<Path>,Blob> forEachBlob) throws IOException {
 		Objects.requireNonNull(files);
 		Objects.requireNonNull(predicate);
-		Objects.requireNonNull(forEachBlob);
+		//Walk the stream on this thread and hand each file to the pipeline as soon as it is found,
+		//so hashing overlaps with walking. See HashPipeline.
+		hash(threads, options, forEachBlob, FileSource.of(files.iterator(), predicate));
+	}
+	
+	/**
+	 * Constructs a {@code Hasher} that processes all regular files in the tree at {@code root}, walked
+	 * in parallel, with one thread per available processor.
+	 * 
+	 * <p>
+	 * Since nothing consumes the contents of the files, they are streamed through a
+	 * fixed-size buffer rather than being read into memory (see {@link HasherOptions#HASH_ONLY}).
+	 * </p>
+	 * 
+	 * @param root the root of the tree to hash
+	 * @throws IOException if the tree could not be walked, or an I/O error occurs during hashing
+	 * @throws IllegalArgumentException if the tree holds no regular files
+	 * 
+	 * @see #Hasher(Path, int, HasherOptions, BiPredicate, BiConsumer)
+	 */
+	public Hasher(final Path root) throws IOException {
+		this(root, Runtime.getRuntime().availableProcessors(), HasherOptions.HASH_ONLY, (p, a) -> true, NO_OP);
+	}
+	
+	/**
+	 * Constructs a {@code Hasher} that walks the tree at {@code root} itself and processes all regular files
+	 * matching the given predicate.
+	 * 
+	 * <p>
+	 * Behaves like {@link #Hasher(Stream, int, HasherOptions, Predicate, BiConsumer)} over {@link java.nio.file.Files#walk(Path, java.nio.file.FileVisitOption...)},
+	 * except that the tree is walked by {@code threads} threads at once, each listing its own directories. The
+	 * attributes read while listing a directory are passed to the predicate, so that files can be filtered by
+	 * size, type or modification time, and are then used to schedule and {@linkplain HasherOptions#cache() cache}
+	 * the files, so that no file is statted more than once. This makes a real difference when the directories
+	 * are not in the cache, since a single-threaded walk then waits on the storage for every directory in turn.
+	 * </p>
+	 * 
+	 * <p>
+	 * Symbolic links are not followed, and files that are deleted while the tree is being walked are skipped.
+	 * The predicate is called from the walking threads, several at once, rather than from the calling thread.
+	 * </p>
+	 * 
+	 * @param root the root of the tree to hash. If it is a regular file, only that file is hashed.
+	 * @param threads the number of threads to use for walking and for parallel hashing (adjusted to 1 if less than 1)
+	 * @param options the options controlling how files are read and hashed
+	 * @param predicate a predicate to filter regular files before processing, given each file's attributes. Unlike
+	 *        the predicate of the {@link Stream} constructors, it is called concurrently from the walking threads,
+	 *        so it must be thread-safe.
+	 * @param forEachBlob a consumer invoked with each {@link Blob} and a {@link Reference}&lt;Path&gt; 
+	 *        that wraps the original file path. This allows the path to be modified (e.g., to relativize or normalize it)
+	 *        before being added to the result map. The updated reference value will be associated with the computed hash.
+	 *        May be {@code null} if nothing needs the files' {@link Blob}s, in which case no {@code Blob} or
+	 *        {@code Reference} is created for any file.
+	 * 
+	 * @throws IOException if the tree could not be walked, or an error occurs while reading files or during thread execution
+	 * @throws IllegalArgumentException if no files matched the provided predicate, or the {@link HasherOptions#cache()}
+	 *         holds hashes of a different algorithm
+	 */
+	public Hasher(final Path root, int threads, final HasherOptions options, final BiPredicate<Path, BasicFileAttributes> predicate, final BiConsumer<Reference<Path>,Blob> forEachBlob) throws IOException {
+		Objects.requireNonNull(root);
+		Objects.requireNonNull(predicate);
+		try(TreeWalker walker = new TreeWalker(root, Math.max(1, threads), predicate)) {
+			hash(threads, options, forEachBlob, walker::take);
+		}
+	}
+	
+	private void hash(int threads, final HasherOptions options, final BiConsumer<Reference<Path>,Blob> forEachBlob, final FileSource files) throws IOException {
+		final int processors = Runtime.getRuntime().availableProcessors();
+		Objects.requireNonNull(options);
 		if(threads > processors) {
-			logger.warn("[MassHash/WARN]: Requested thread count (" + threads + ") greather than the amount of availalbe processors (" + processors + "). Using " + processors + " threads instead.");
-			threads = processors;
+			logger.warn("[MassHash/WARN]: Requested thread count (" + threads + ") is greater than the amount of available processors (" + processors + "). Hashing threads will compete for processors.");
 		}
 		if(threads < 1) {
 			logger.warn("[MassHash/WARN]: Thread count less than 1. Using 1 thread instead.");
 			threads = 1;
 		}
 
-		
-		final List<Path> allFiles = files.parallel()
-			.filter(predicate.and(p -> Files.isRegularFile((Path) p)))
-			.collect(Collectors.toList());
-		
-		//Fail fast if there's nothing to process - no point spinning up threads
-		if (allFiles.isEmpty()) {
-			throw logger.throwing(new IllegalArgumentException("No Files."));
-		}
-
-		//Use one thread per available processor core for efficient CPU usage
+		//Hash with the requested number of threads, by default one per available processor core.
 		//This allows parallel hashing of files and drastically speeds up processing on large sets (We're expecting ~40k files)
-		int numThreads = Runtime.getRuntime().availableProcessors();
-
-		//Chunk the files evenly among threads, leaving some flexibility for the final chunk
-		//This keeps each thread busy with roughly equal work
-		int chunkSize = allFiles.size() / numThreads + 1;
-
-		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
-		List<Future<Map<Hash, Set<Path>>>> futures = new ArrayList<>();
-
-		/*
-		 * PERFORMANCE NOTE:
-		 * 
-		 * Inserting directly into a TreeMultimap offers automatic sorting,
-		 * but the performance cost is too high.
-		 *
-		 * A faster approach is for each thread to first collect results in its own
-		 * local, unsorted HashMap.
-		 *
-		 * Only after all threads finish do we merge the results into a single TreeMultimap.
-		 * This final TreeMultimap handles all the sorting in one pass, avoiding synchronization.
-		 *
-		 * This approach is nearly **7x faster** than inserting directly into the 
-		 * TreeMultimap during hashing.
-		 *
-		 * Entries are sorted by
-		 * - hash value
-		 * - then by file path
-		 * 
-		 * Entries are sorted to ensure a consistent and debuggable output.
-		 */
-		
-		//Submit a hashing task for each chunk of files
-		for (int i = 0; i < allFiles.size(); i += chunkSize) {
-			List<Path> sublist = allFiles.subList(i, Math.min(i + chunkSize, allFiles.size()));
-
-			futures.add(pool.submit(() -> {
-				//Each thread uses a local map to avoid synchronization
-				Map<Hash, Set<Path>> local = new HashMap<>();
-				for (Path file : sublist) {
-					Reference<Path> newFile = new Reference<>(file);
-					//Read and hash the file into a Blob, then discard the Blob’s data to conserve memory
-					Hash blob = new Blob(file);
-					forEachBlob.accept(newFile, (Blob) blob);
-					((Blob) blob).dropData();
-
-					//Group files by their content hash. Files with the same hash will share the same key
-					local.computeIfAbsent(blob, k -> new HashSet<>()).add(newFile.get());
-				}
-				return local;
-			}));
+		//Without a consumer, no Blob or Reference is created for any file
+		final boolean needsBlobs = forEachBlob != null && forEachBlob != NO_OP;
+		try(HashPipeline pipeline = new HashPipeline(threads, options, needsBlobs ? forEachBlob : NO_OP, needsBlobs)) {
+			blobs = pipeline.hashAll(files);
+			metrics = pipeline.metrics();
 		}
-
-		/*
-		 * Use a TreeMultimap to keep results sorted.
-		 * Keys are sorted by Hash, and the paths under each key are sorted by their natural ordering.
-		 */
-		TreeMultimap<Hash, Path> sorted = TreeMultimap.create(
-			Comparator.comparing(Hash::hash),
-			Ordering.natural()
-		);
-
-		//Merge the results from all threads into the multimap, this will sort the hashes
-		//as descrived above.
-		for (Future<Map<Hash, Set<Path>>> future : futures) {
-			try {
-				Map<Hash, Set<Path>> partial = future.get();
-
-				//Add all file-path sets for each hash to the final multimap
-				for (Map.Entry<Hash, Set<Path>> entry : partial.entrySet()) {
-					sorted.putAll(entry.getKey(), entry.getValue());
-				}
-			} catch (Throwable t) {
-				//Shut down early if anything goes wrong in a thread
-				pool.shutdownNow();
-				throw logger.throwing(new IOException("Thread pool failed", t));
-			}
+		catch(IOException e) {
+			throw logger.throwing(e);
 		}
 
-		pool.shutdown();
-
-		//Wrap the result in a synchronized structure for thread safe access later
-		blobs = Multimaps.synchronizedSetMultimap(sorted);
-
-		logger.info("Blob calculation complete");
+		logger.info("Blob calculation complete: " + metrics);
 	}
 	
 	/**
@@ -266,4 +303,13 @@ public abstract class Hasher {
 		return blobs;
 	}
 	
+	/**
+	 * Returns the throughput and timing metrics of the hashing run.
+	 * 
+	 * @return the {@link HashMetrics} of the run, or {@code null} if this {@code Hasher} did not hash the files itself
+	 */
+	public HashMetrics metrics() {
+		return metrics;
+	}
+	
 }
@@ -0,0 +1,230 @@
+package com.wildermods.masshash;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Tuning options for a {@link Hasher} run.
+ * <p>
+ * Options are immutable. Start from {@link #DEFAULT} and derive new options with the
+ * {@code with} methods, for example {@code HasherOptions.DEFAULT.withStreaming(true)}.
+ * </p>
+ *
+ * @param streaming if {@code true}, files are hashed by streaming them through a fixed-size
+ *        buffer instead of being read into memory. The {@link Blob}s passed to the
+ *        {@code forEachBlob} consumer will then be data-less (see {@link Data#isTransient()}),
+ *        so this should only be enabled when the consumer does not need the file contents.
+ * @param mappedThreshold the size in bytes at or above which streamed files are hashed by mapping
+ *        them into memory (see {@link HashAlgorithm#hashMapped(java.nio.channels.FileChannel)})
+ *        instead of reading them through a buffer. Only applies when {@code streaming} is enabled, since
+ *        files whose contents are passed to the consumer have to be read onto the heap anyway.
+ *        A negative value disables memory mapping.
+ * @param algorithm the {@link HashAlgorithm} files are hashed with. Defaults to {@link StandardHashAlgorithm#SHA_1}.
+ *        For finding duplicates, where cryptographic strength is not needed, {@link StandardHashAlgorithm#XXHASH_64}
+ *        is considerably faster.
+ * @param ioThreads the maximum number of file reads in flight at once, independently of the number of threads
+ *        hashing. Raising this above the number of hashing threads helps on storage that needs many outstanding
+ *        requests to reach full throughput, such as NVMe drives and network filesystems. Threads blocked on a read
+ *        are temporarily replaced so that hashing continues at full parallelism. A value less than 1 disables this,
+ *        and each hashing thread performs its own reads, as if this were equal to the number of hashing threads.
+ *        Memory mapped files are read through page faults, which are not counted.
+ * @param cache the {@link HashCache} to look up and store file hashes in, or {@code null} to hash every file.
+ *        Cached hashes are only used when {@code streaming} is enabled, since otherwise the consumer needs the
+ *        contents of every file, but the cache is updated either way. The cache must hold hashes of the
+ *        same {@code algorithm}.
+ * @param verifyCache if {@code true}, cached hashes are never trusted. Every file is hashed, the cache is updated,
+ *        and a warning is logged for each cached hash that turns out to be stale.
+ * @param indexResults if {@code true}, results are stored in a compact, immutable {@link HashIndex} instead of
+ *        a synchronized {@code TreeMultimap}. The results are then read without locking and take far less memory,
+ *        but cannot be modified.
+ * @param listener the {@link HashListener} to report progress and {@link HashMetrics} to, or {@code null} for none.
+ *        Metrics are collected either way, see {@link Hasher#metrics()}.
+ * @param expandArchives if {@code true}, zip and jar archives are not hashed as a whole. Instead, each of their entries is
+ *        read in place and hashed as a file of its own, in parallel like any other file, under a virtual path such as
+ *        {@code mods/mod.jar!/assets/x.png}. Nothing is extracted to disk. Archives are recognized by their
+ *        {@code .zip} or {@code .jar} extension, and a file that cannot be read as an archive is hashed as a whole.
+ *        The {@code cache} does not apply to entries, and nested archives are not expanded.
+ * @param memoryBudget the maximum number of bytes of file contents held on the heap at once, or a value less than 1
+ *        for no limit. When {@code streaming} is disabled, each file reserves its size from the budget before it is
+ *        read, and returns it once the {@code forEachBlob} consumer returns. Reads wait while the budget is used up,
+ *        so memory use stays bounded however many threads are hashing. Files larger than the whole budget are
+ *        streamed instead, as are archive entries whose size the archive does not record. Their {@link Blob}s are
+ *        data-less, as if {@code streaming} were enabled for them.
+ */
+public record HasherOptions(boolean streaming, long mappedThreshold, HashAlgorithm algorithm, int ioThreads, HashCache cache, boolean verifyCache, boolean indexResults, HashListener listener, boolean expandArchives, long memoryBudget) {
+
+	public HasherOptions {
+		Objects.requireNonNull(algorithm, "Algorithm cannot be null.");
+	}
+
+
+	/**
+	 * The default options. Files are read into memory so that the {@code forEachBlob}
+	 * consumer has access to their contents.
+	 */
+	public static final HasherOptions DEFAULT = new HasherOptions(false, -1, StandardHashAlgorithm.SHA_1, 0, null, false, false, null, false, 0);
+
+	/**
+	 * Options for hashing when no {@code forEachBlob} consumer needs file contents.
+	 * Used by the {@link Hasher} constructors that do not take a consumer.
+	 */
+	public static final HasherOptions HASH_ONLY = DEFAULT.withStreaming(true);
+
+	/**
+	 * Returns a copy of these options with streaming enabled or disabled.
+	 *
+	 * @param streaming whether files should be streamed rather than read into memory
+	 * @return the new options
+	 *
+	 * @see Hasher#Hasher(java.util.stream.Stream, int, HasherOptions, java.util.function.Predicate, java.util.function.BiConsumer)
+	 */
+	public HasherOptions withStreaming(boolean streaming) {
+		return copy(builder -> builder.streaming = streaming);
+	}
+	
+	/**
+	 * Returns a copy of these options which hashes streamed files of at least {@code mappedThreshold}
+	 * bytes by mapping them into memory. Memory mapping is disabled by default.
+	 * 
+	 * @param mappedThreshold the minimum size of a file to be memory mapped, or a negative value to disable memory mapping
+	 * @return the new options
+	 */
+	public HasherOptions withMappedThreshold(long mappedThreshold) {
+		return copy(builder -> builder.mappedThreshold = mappedThreshold);
+	}
+	
+	/**
+	 * Returns a copy of these options which hashes files with the given algorithm.
+	 * 
+	 * @param algorithm the algorithm to hash files with
+	 * @return the new options
+	 */
+	public HasherOptions withAlgorithm(HashAlgorithm algorithm) {
+		return copy(builder -> builder.algorithm = algorithm);
+	}
+	
+	/**
+	 * Returns a copy of these options which allows up to {@code ioThreads} file reads in flight at once.
+	 * 
+	 * @param ioThreads the maximum number of reads in flight, or a value less than 1 to let each hashing thread perform its own reads
+	 * @return the new options
+	 */
+	public HasherOptions withIoThreads(int ioThreads) {
+		return copy(builder -> builder.ioThreads = ioThreads);
+	}
+	
+	/**
+	 * Returns a copy of these options which looks up and stores file hashes in the given cache.
+	 * 
+	 * @param cache the cache to use, or {@code null} to hash every file
+	 * @return the new options
+	 */
+	public HasherOptions withCache(HashCache cache) {
+		return copy(builder -> builder.cache = cache);
+	}
+	
+	/**
+	 * Returns a copy of these options which trusts or verifies the hashes in the {@link #cache()}.
+	 * 
+	 * @param verifyCache {@code true} to rehash every file and report stale cached hashes, {@code false} to trust the cache
+	 * @return the new options
+	 */
+	public HasherOptions withCacheVerification(boolean verifyCache) {
+		return copy(builder -> builder.verifyCache = verifyCache);
+	}
+	
+	/**
+	 * Returns a copy of these options which stores results in a {@link HashIndex}.
+	 * 
+	 * @param indexResults {@code true} to store results in an immutable {@link HashIndex}, {@code false} to store them in a synchronized multimap
+	 * @return the new options
+	 */
+	public HasherOptions withIndexedResults(boolean indexResults) {
+		return copy(builder -> builder.indexResults = indexResults);
+	}
+	
+	/**
+	 * Returns a copy of these options which reports to the given listener.
+	 * 
+	 * @param listener the listener to report each hashed file and the final metrics to, or {@code null} for none
+	 * @return the new options
+	 */
+	public HasherOptions withListener(HashListener listener) {
+		return copy(builder -> builder.listener = listener);
+	}
+	
+	/**
+	 * Returns a copy of these options which hashes the entries of zip and jar archives in place.
+	 * 
+	 * @param expandArchives {@code true} to hash each entry of an archive under a virtual path, {@code false} to hash archives as a whole
+	 * @return the new options
+	 */
+	public HasherOptions withExpandedArchives(boolean expandArchives) {
+		return copy(builder -> builder.expandArchives = expandArchives);
+	}
+	
+	/**
+	 * Returns a copy of these options which holds at most {@code memoryBudget} bytes of file contents on the heap at once.
+	 * 
+	 * @param memoryBudget the maximum number of bytes held at once, or a value less than 1 for no limit
+	 * @return the new options
+	 */
+	public HasherOptions withMemoryBudget(long memoryBudget) {
+		return copy(builder -> builder.memoryBudget = memoryBudget);
+	}
+	
+	/**
+	 * Copies these options with a change, so that each {@code with} method only names the option it changes.
+	 */
+	private HasherOptions copy(Consumer<Builder> change) {
+		final Builder builder = new Builder(this);
+		change.accept(builder);
+		return builder.build();
+	}
+	
+	/**
+	 * The options of a copy that is being changed. Adding an option only touches the record and this class.
+	 */
+	private static final class Builder {
+		
+		private boolean streaming;
+		private long mappedThreshold;
+		private HashAlgorithm algorithm;
+		private int ioThreads;
+		private HashCache cache;
+		private boolean verifyCache;
+		private boolean indexResults;
+		private HashListener listener;
+		private boolean expandArchives;
+		private long memoryBudget;
+		
+		private Builder(HasherOptions options) {
+			this.streaming = options.streaming;
+			this.mappedThreshold = options.mappedThreshold;
+			this.algorithm = options.algorithm;
+			this.ioThreads = options.ioThreads;
+			this.cache = options.cache;
+			this.verifyCache = options.verifyCache;
+			this.indexResults = options.indexResults;
+			this.listener = options.listener;
+			this.expandArchives = options.expandArchives;
+			this.memoryBudget = options.memoryBudget;
+		}
+		
+		private HasherOptions build() {
+			return new HasherOptions(streaming, mappedThreshold, algorithm, ioThreads, cache, verifyCache, indexResults, listener, expandArchives, memoryBudget);
+		}
+		
+	}
+	
+	/**
+	 * Checks whether a streamed file of the given size should be hashed by mapping it into memory.
+	 * 
+	 * @param size the size of the file in bytes
+	 * @return true if the file should be memory mapped
+	 */
+	public boolean shouldMap(long size) {
+		return mappedThreshold >= 0 && size >= mappedThreshold;
+	}
+
+}
@@ -0,0 +1,614 @@
+package com.wildermods.masshash;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.TreeMultimap;
+
+/**
+ * A compact, read-only binary manifest of the results of a {@link Hasher}.
+ *
+ * <p>
+ * A manifest holds a table of fixed-width hashes sorted by hash, and a pool of path
+ * strings sorted by path. {@link #open(Path)} maps the file into memory instead of reading
+ * it onto the heap, and {@link #paths(Hash)} and {@link #hash(Path)} answer lookups by binary
+ * search directly on the mapped file. Opening a manifest of millions of files is therefore
+ * instant, and only the pages that lookups touch are ever read.
+ * </p>
+ *
+ * <p>
+ * Paths are stored as given to {@link #write(SetMultimap, Path)}, with {@code /} as the separator.
+ * A manifest is usually written from results whose paths were relativized by the {@code forEachBlob}
+ * consumer, so that it can be checked against another copy of the same files.
+ * </p>
+ *
+ * <p>
+ * The whole manifest must fit within a single mapping, which limits it to 2 GiB, or roughly
+ * 15 million files. {@code Manifest} is thread-safe.
+ * </p>
+ */
+public final class Manifest {
+
+	/**
+	 * "MHM" followed by the version of the format.
+	 */
+	private static final int MAGIC = 0x4D484D01;
+
+	/*
+	 * Format, big-endian:
+	 *
+	 * int     magic
+	 * int     digest length, L
+	 * int     entry count, N
+	 * int     path pool size in bytes
+	 * byte    algorithm name length, followed by the UTF-8 algorithm name
+	 *
+	 * hash table, N entries sorted by hash and then by path:
+	 *   byte  digest[L]
+	 *   int   path index
+	 *
+	 * path entries, N ints: for each path index, the index of its entry in the hash table
+	 *
+	 * path offsets, N + 1 ints: for each path index, the offset of the path in the pool.
+	 * The last offset is the size of the pool.
+	 *
+	 * path pool: UTF-8 paths, sorted by their bytes
+	 */
+
+	private final ByteBuffer buffer;
+	private final HashAlgorithm algorithm;
+	private final int digestLength;
+	private final int entryWidth;
+	private final int count;
+	private final int table;
+	private final int pathEntries;
+	private final int pathOffsets;
+	private final int pool;
+
+	private Manifest(ByteBuffer buffer, HashAlgorithm algorithm, int digestLength, int count, int table) {
+		this.buffer = buffer;
+		this.algorithm = algorithm;
+		this.digestLength = digestLength;
+		this.entryWidth = digestLength + Integer.BYTES;
+		this.count = count;
+		this.table = table;
+		this.pathEntries = table + count * entryWidth;
+		this.pathOffsets = pathEntries + count * Integer.BYTES;
+		this.pool = pathOffsets + (count + 1) * Integer.BYTES;
+	}
+
+	/**
+	 * Atomically writes the results of a {@link Hasher} to a manifest file.
+	 *
+	 * @param results the results to write, as returned by {@link Hasher#results()}
+	 * @param file the file to write the manifest to
+	 * @throws IOException if the manifest could not be written
+	 * @throws IllegalArgumentException if the results contain hashes of more than one algorithm, or are too large for a manifest
+	 */
+	public static void write(SetMultimap<Hash, Path> results, Path file) throws IOException {
+		Objects.requireNonNull(results, "Results cannot be null.");
+		record Entry(byte[] hash, byte[] path) {}
+
+		final List<Entry> entries = new ArrayList<>();
+		HashAlgorithm algorithm = null;
+		//Iterating a synchronized multimap requires holding its lock, see Multimaps.synchronizedSetMultimap
+		synchronized(results) {
+			for(Map.Entry<Hash, Path> entry : results.entries()) {
+				Hash hash = entry.getKey();
+				if(algorithm == null) {
+					algorithm = hash.algorithm();
+				}
+				else if(!algorithm.equals(hash.algorithm())) {
+					throw new IllegalArgumentException("Cannot mix " + algorithm.getName() + " and " + hash.algorithm().getName() + " hashes in a manifest.");
+				}
+				entries.add(new Entry(BinaryHash.of(hash).toBytes(), encode(entry.getValue())));
+			}
+		}
+		if(algorithm == null) {
+			algorithm = StandardHashAlgorithm.SHA_1;
+		}
+		final int count = entries.size();
+		final int digestLength = algorithm.getDigestLength();
+		final byte[] name = algorithm.getName().getBytes(StandardCharsets.UTF_8);
+
+		//Paths are indexed in sorted order, so that lookups by path can binary search the pool
+		entries.sort(Comparator.comparing(Entry::path, Arrays::compareUnsigned));
+		final Map<Entry, Integer> pathIndex = new IdentityHashMap<>();
+		long poolSize = 0;
+		for(int i = 0; i < count; i++) {
+			pathIndex.put(entries.get(i), i);
+			poolSize += entries.get(i).path().length;
+		}
+		final long fileSize = 17L + name.length + (long)count * (digestLength + 12) + 4 + poolSize;
+		if(fileSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many files for a manifest (" + count + ")");
+		}
+		final int pool = (int)poolSize;
+		final List<Entry> byPath = new ArrayList<>(entries);
+
+		//The hash table is sorted by hash, then by path
+		entries.sort(Comparator.comparing(Entry::hash, Arrays::compareUnsigned).thenComparing(pathIndex::get));
+		final int[] pathEntries = new int[count];
+		for(int i = 0; i < count; i++) {
+			pathEntries[pathIndex.get(entries.get(i))] = i;
+		}
+
+		final HashAlgorithm written = algorithm;
+		writeAtomically(file, out -> {
+			writeHeader(out, written, count, pool);
+			for(Entry entry : entries) {
+				out.write(entry.hash());
+				out.writeInt(pathIndex.get(entry));
+			}
+			for(int entry : pathEntries) {
+				out.writeInt(entry);
+			}
+			int offset = 0;
+			for(Entry entry : byPath) {
+				out.writeInt(offset);
+				offset += entry.path().length;
+			}
+			out.writeInt(offset);
+			for(Entry entry : byPath) {
+				out.write(entry.path());
+			}
+		});
+	}
+
+	/**
+	 * Atomically merges several manifests into one, as if the results they were written from
+	 * had been combined and written with {@link #write(SetMultimap, Path)}.
+	 *
+	 * <p>
+	 * This is how the partial manifests of a {@linkplain Shard sharded} run are combined. The
+	 * manifests are read as they are mapped, and the merged manifest is written as it is merged,
+	 * with a k-way merge of their path pools and then of their hash tables. Neither paths nor
+	 * hashes are read onto the heap: besides the output buffer, merging only needs two
+	 * {@code int}s for every path, to renumber the paths of each manifest. A merge of manifests
+	 * too large to read into a {@link SetMultimap} therefore succeeds, as long as the merged
+	 * manifest fits within the 2 GiB limit.
+	 * </p>
+	 *
+	 * <p>
+	 * The manifests must not share any paths, which is always the case for the shards of the
+	 * same run. Empty manifests are skipped, whatever their algorithm.
+	 * </p>
+	 *
+	 * @param manifests the manifests to merge
+	 * @param file the file to write the merged manifest to. It may not be one of the merged manifests.
+	 * @throws IOException if the merged manifest could not be written
+	 * @throws IllegalArgumentException if the manifests hold hashes of more than one algorithm, share a path,
+	 *         or are too large to merge into one manifest
+	 */
+	public static void merge(List<Manifest> manifests, Path file) throws IOException {
+		Objects.requireNonNull(file);
+		final List<Manifest> parts = new ArrayList<>();
+		HashAlgorithm algorithm = null;
+		long total = 0;
+		long poolSize = 0;
+		for(Manifest manifest : manifests) {
+			if(manifest.count == 0) {
+				continue;
+			}
+			if(algorithm == null) {
+				algorithm = manifest.algorithm;
+			}
+			else if(!algorithm.equals(manifest.algorithm)) {
+				throw new IllegalArgumentException("Cannot mix " + algorithm.getName() + " and " + manifest.algorithm.getName() + " hashes in a manifest.");
+			}
+			parts.add(manifest);
+			total += manifest.count;
+			poolSize += manifest.poolSize();
+		}
+		if(algorithm == null) {
+			algorithm = StandardHashAlgorithm.SHA_1;
+		}
+		final byte[] name = algorithm.getName().getBytes(StandardCharsets.UTF_8);
+		final int digestLength = algorithm.getDigestLength();
+		if(17L + name.length + total * (digestLength + 12) + 4 + poolSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many files for a manifest (" + total + ")");
+		}
+		final int count = (int)total;
+		final int pool = (int)poolSize;
+
+		//Number the paths of every manifest in the merged order. Paths are already sorted within
+		//each manifest, so the merged index of a path only depends on how the pools interleave.
+		final int[][] renumbered = new int[parts.size()][];
+		for(int i = 0; i < renumbered.length; i++) {
+			renumbered[i] = new int[parts.get(i).count];
+		}
+		mergePaths(parts, (part, path, index) -> renumbered[part][path] = index);
+
+		final HashAlgorithm merged = algorithm;
+		writeAtomically(file, out -> {
+			writeHeader(out, merged, count, pool);
+
+			//Within each manifest, entries are sorted by hash and then by path index. Renumbering keeps
+			//the order of the paths, so a merge by hash and then by merged path index keeps it too.
+			final int[] pathEntries = new int[count];
+			final byte[] digest = new byte[digestLength];
+			final int[] positions = new int[parts.size()];
+			final PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1, parts.size()), (a, b) -> {
+				int cmp = compareDigests(parts.get(a), positions[a], parts.get(b), positions[b]);
+				return cmp != 0 ? cmp : Integer.compare(renumbered[a][parts.get(a).pathIndexAt(positions[a])], renumbered[b][parts.get(b).pathIndexAt(positions[b])]);
+			});
+			for(int i = 0; i < parts.size(); i++) {
+				queue.add(i);
+			}
+			for(int entry = 0; !queue.isEmpty(); entry++) {
+				final int part = queue.poll();
+				final Manifest manifest = parts.get(part);
+				final int path = renumbered[part][manifest.pathIndexAt(positions[part])];
+				manifest.buffer.get(manifest.table + positions[part] * manifest.entryWidth, digest);
+				out.write(digest);
+				out.writeInt(path);
+				pathEntries[path] = entry;
+				if(++positions[part] < manifest.count) {
+					queue.add(part);
+				}
+			}
+			for(int entry : pathEntries) {
+				out.writeInt(entry);
+			}
+
+			//The offsets come before the pool, so the pools are merged once for each
+			final int[] offset = new int[1];
+			mergePaths(parts, (part, path, index) -> {
+				out.writeInt(offset[0]);
+				offset[0] += parts.get(part).pathLength(path);
+			});
+			out.writeInt(offset[0]);
+			mergePaths(parts, (part, path, index) -> {
+				Manifest manifest = parts.get(part);
+				byte[] bytes = new byte[manifest.pathLength(path)];
+				manifest.buffer.get(manifest.pool + manifest.buffer.getInt(manifest.pathOffsets + path * Integer.BYTES), bytes);
+				out.write(bytes);
+			});
+		});
+	}
+
+	/**
+	 * Opens a manifest by mapping it into memory.
+	 *
+	 * @param file the manifest file
+	 * @return the opened manifest
+	 * @throws IOException if the file could not be mapped, or is not a valid manifest
+	 */
+	public static Manifest open(Path file) throws IOException {
+		final ByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Manifest is too large: " + file);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			if(buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not a manifest, or an unsupported version: " + file);
+			}
+			final int digestLength = buffer.getInt(4);
+			final int count = buffer.getInt(8);
+			final int poolSize = buffer.getInt(12);
+			final byte[] name = new byte[buffer.get(16) & 0xFF];
+			buffer.get(17, name);
+			final HashAlgorithm algorithm = HashAlgorithm.forName(new String(name, StandardCharsets.UTF_8));
+			final int table = 17 + name.length;
+			if(digestLength != algorithm.getDigestLength() || count < 0 || poolSize < 0
+				|| table + (long)count * (digestLength + 12) + 4 + poolSize != buffer.capacity()) {
+				throw new IOException("Corrupt manifest: " + file);
+			}
+			return new Manifest(buffer, algorithm, digestLength, count, table);
+		}
+		catch(IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("Corrupt manifest: " + file, e);
+		}
+	}
+
+	/**
+	 * @return the algorithm of the hashes in this manifest
+	 */
+	public HashAlgorithm algorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * @return the number of paths in this manifest
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Finds the paths of all files with the given hash.
+	 *
+	 * @param hash the hash to look up
+	 * @return the paths with the given hash, sorted, or an empty set if there are none
+	 */
+	public SortedSet<Path> paths(Hash hash) {
+		final int first = find(hash);
+		if(first < 0) {
+			return Collections.emptySortedSet();
+		}
+		final BinaryHash binary = BinaryHash.of(hash);
+		final SortedSet<Path> paths = new TreeSet<>();
+		for(int i = first; i < count && compareHash(i, binary) == 0; i++) {
+			paths.add(pathAt(buffer.getInt(table + i * entryWidth + digestLength)));
+		}
+		return paths;
+	}
+
+	/**
+	 * Checks whether any file in this manifest has the given hash.
+	 *
+	 * @param hash the hash to look up
+	 * @return true if there is at least one file with the hash
+	 */
+	public boolean contains(Hash hash) {
+		return find(hash) >= 0;
+	}
+
+	/**
+	 * Finds the hash of the file at the given path.
+	 *
+	 * @param path the path to look up, as it was written to the manifest
+	 * @return the hash of the file, or {@code null} if the path is not in this manifest
+	 */
+	public Hash hash(Path path) {
+		final byte[] key = encode(path);
+		int low = 0;
+		int high = count - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = comparePath(mid, key);
+			if(cmp < 0) {
+				low = mid + 1;
+			}
+			else if(cmp > 0) {
+				high = mid - 1;
+			}
+			else {
+				return hashAt(buffer.getInt(pathEntries + mid * Integer.BYTES));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Passes every entry of this manifest to the given consumer, sorted by hash and then by path.
+	 *
+	 * @param action the consumer of each hash and path
+	 */
+	public void forEach(BiConsumer<Hash, Path> action) {
+		for(int i = 0; i < count; i++) {
+			action.accept(hashAt(i), pathAt(buffer.getInt(table + i * entryWidth + digestLength)));
+		}
+	}
+
+	/**
+	 * Reads this whole manifest onto the heap, in the same form as {@link Hasher#results()}.
+	 * This is useful for initializing a {@link Hasher} subclass with the protected no-argument constructor.
+	 *
+	 * @return a sorted, thread-safe multimap of every hash and path in this manifest
+	 */
+	public SetMultimap<Hash, Path> toMultimap() {
+		TreeMultimap<Hash, Path> results = TreeMultimap.create(Hash::compare, Ordering.natural());
+		forEach(results::put);
+		return Multimaps.synchronizedSetMultimap(results);
+	}
+
+	/**
+	 * @return the index of the first entry with the given hash, or -1 if there is none
+	 */
+	private int find(Hash hash) {
+		if(!algorithm.equals(hash.algorithm())) {
+			return -1;
+		}
+		final BinaryHash binary = BinaryHash.of(hash);
+		int low = 0;
+		int high = count;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(compareHash(mid, binary) < 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low < count && compareHash(low, binary) == 0 ? low : -1;
+	}
+
+	private int compareHash(int entry, BinaryHash hash) {
+		final int offset = table + entry * entryWidth;
+		for(int i = 0; i < digestLength; i++) {
+			int cmp = Integer.compare(buffer.get(offset + i) & 0xFF, hash.byteAt(i) & 0xFF);
+			if(cmp != 0) {
+				return cmp;
+			}
+		}
+		return 0;
+	}
+
+	private int comparePath(int index, byte[] key) {
+		final int start = pool + buffer.getInt(pathOffsets + index * Integer.BYTES);
+		final int length = pool + buffer.getInt(pathOffsets + (index + 1) * Integer.BYTES) - start;
+		for(int i = 0; i < Math.min(length, key.length); i++) {
+			int cmp = Integer.compare(buffer.get(start + i) & 0xFF, key[i] & 0xFF);
+			if(cmp != 0) {
+				return cmp;
+			}
+		}
+		return Integer.compare(length, key.length);
+	}
+
+	/**
+	 * @param entry the index of an entry in the hash table
+	 * @return the hash of the entry
+	 */
+	BinaryHash hashAt(int entry) {
+		final byte[] digest = new byte[digestLength];
+		buffer.get(table + entry * entryWidth, digest);
+		return BinaryHash.of(algorithm, digest);
+	}
+
+	/**
+	 * @param index the index of a path, in the order of the path pool
+	 * @return the path
+	 */
+	Path pathAt(int index) {
+		final int start = buffer.getInt(pathOffsets + index * Integer.BYTES);
+		final byte[] path = new byte[buffer.getInt(pathOffsets + (index + 1) * Integer.BYTES) - start];
+		buffer.get(pool + start, path);
+		return Paths.get(new String(path, StandardCharsets.UTF_8));
+	}
+
+	private int poolSize() {
+		return buffer.getInt(pathOffsets + count * Integer.BYTES);
+	}
+
+	/**
+	 * @param entry the index of an entry in the hash table
+	 * @return the index of the entry's path, in the order of the path pool
+	 */
+	int pathIndexAt(int entry) {
+		return buffer.getInt(table + entry * entryWidth + digestLength);
+	}
+
+	private int pathLength(int index) {
+		return buffer.getInt(pathOffsets + (index + 1) * Integer.BYTES) - buffer.getInt(pathOffsets + index * Integer.BYTES);
+	}
+
+	/**
+	 * Compares the hashes of two entries, which may be of different manifests of the same algorithm.
+	 */
+	static int compareDigests(Manifest a, int entryA, Manifest b, int entryB) {
+		final int offsetA = a.table + entryA * a.entryWidth;
+		final int offsetB = b.table + entryB * b.entryWidth;
+		for(int i = 0; i < a.digestLength; i++) {
+			int cmp = Integer.compare(a.buffer.get(offsetA + i) & 0xFF, b.buffer.get(offsetB + i) & 0xFF);
+			if(cmp != 0) {
+				return cmp;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Compares two paths by their bytes, which may be of different manifests. This is the order of each manifest's path pool.
+	 */
+	static int comparePaths(Manifest a, int indexA, Manifest b, int indexB) {
+		final int startA = a.pool + a.buffer.getInt(a.pathOffsets + indexA * Integer.BYTES);
+		final int startB = b.pool + b.buffer.getInt(b.pathOffsets + indexB * Integer.BYTES);
+		final int lengthA = a.pathLength(indexA);
+		final int lengthB = b.pathLength(indexB);
+		for(int i = 0; i < Math.min(lengthA, lengthB); i++) {
+			int cmp = Integer.compare(a.buffer.get(startA + i) & 0xFF, b.buffer.get(startB + i) & 0xFF);
+			if(cmp != 0) {
+				return cmp;
+			}
+		}
+		return Integer.compare(lengthA, lengthB);
+	}
+
+	/**
+	 * Visits the paths of all the given manifests in merged order, along with their index in the merged manifest.
+	 */
+	private static void mergePaths(List<Manifest> parts, PathVisitor visitor) throws IOException {
+		final int[] positions = new int[parts.size()];
+		final PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1, parts.size()), (a, b) -> comparePaths(parts.get(a), positions[a], parts.get(b), positions[b]));
+		for(int i = 0; i < parts.size(); i++) {
+			queue.add(i);
+		}
+		int previous = -1;
+		for(int index = 0; !queue.isEmpty(); index++) {
+			final int part = queue.poll();
+			final Manifest manifest = parts.get(part);
+			if(previous >= 0 && previous != part && comparePaths(parts.get(previous), positions[previous] - 1, manifest, positions[part]) == 0) {
+				throw new IllegalArgumentException("Cannot merge manifests that share a path: " + manifest.pathAt(positions[part]));
+			}
+			visitor.visit(part, positions[part], index);
+			previous = part;
+			if(++positions[part] < manifest.count) {
+				queue.add(part);
+			}
+		}
+	}
+
+	private static void writeHeader(DataOutputStream out, HashAlgorithm algorithm, int count, int poolSize) throws IOException {
+		final byte[] name = algorithm.getName().getBytes(StandardCharsets.UTF_8);
+		out.writeInt(MAGIC);
+		out.writeInt(algorithm.getDigestLength());
+		out.writeInt(count);
+		out.writeInt(poolSize);
+		out.writeByte(name.length);
+		out.write(name);
+	}
+
+	/**
+	 * Writes a file through a temporary file in the same directory, which is moved over the file once it is complete.
+	 */
+	private static void writeAtomically(Path file, ManifestWriter writer) throws IOException {
+		Path dir = file.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+		try {
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				writer.write(out);
+			}
+			try {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch(AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	@FunctionalInterface
+	private static interface ManifestWriter {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	@FunctionalInterface
+	private static interface PathVisitor {
+		void visit(int part, int path, int index) throws IOException;
+	}
+
+	static byte[] encode(Path path) {
+		String string = path.toString();
+		if(File.separatorChar != '/') {
+			string = string.replace(File.separatorChar, '/');
+		}
+		return string.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
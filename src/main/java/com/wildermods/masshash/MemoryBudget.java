@@ -0,0 +1,115 @@
+package com.wildermods.masshash;
+
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Limits how many bytes of file contents a {@link Hasher} holds on the heap at once.
+ *
+ * <p>
+ * Before a file is read into memory, the hashing thread reserves the file's size from the
+ * budget, and it releases the reservation once the file's {@link Blob} has been passed to the
+ * consumer. While the budget is used up, reads wait. Reservations are granted in the order they
+ * were requested, so a large file is not starved by a stream of smaller ones, at the cost of
+ * smaller files waiting behind it.
+ * </p>
+ *
+ * <p>
+ * Unlike the {@link ReadLimiter}, threads waiting on the budget are not replaced by spare
+ * threads, since a spare thread would only need more memory as well.
+ * </p>
+ */
+final class MemoryBudget {
+
+	/**
+	 * A budget that never makes reads wait.
+	 */
+	static final MemoryBudget UNLIMITED = new MemoryBudget(Long.MAX_VALUE);
+
+	private final long budget;
+	private long available;
+	private long nextTicket;
+	private long serving;
+	private final Set<Long> abandoned = new HashSet<>();
+
+	private MemoryBudget(long budget) {
+		this.budget = budget;
+		this.available = budget;
+	}
+
+	/**
+	 * @param budget the number of bytes that may be held at once, or a value less than 1 for no limit
+	 * @return a budget of the given size
+	 */
+	static MemoryBudget of(long budget) {
+		return budget < 1 ? UNLIMITED : new MemoryBudget(budget);
+	}
+
+	/**
+	 * @param size the size of a file in bytes, or -1 if it is not known
+	 * @return true if a file of the given size can be read into memory at all. A file of unknown size only fits an unlimited budget.
+	 */
+	boolean fits(long size) {
+		return this == UNLIMITED || (size >= 0 && size <= budget);
+	}
+
+	/**
+	 * Reserves memory for a file, waiting until enough of the budget is free.
+	 *
+	 * @param size the number of bytes to reserve, at most the whole budget
+	 * @throws InterruptedIOException if the thread is interrupted while waiting
+	 */
+	void acquire(long size) throws InterruptedIOException {
+		if(this != UNLIMITED && size > 0) {
+			reserve(size);
+		}
+	}
+
+	private synchronized void reserve(long size) throws InterruptedIOException {
+		final long ticket = nextTicket++;
+		try {
+			while(ticket != serving || available < size) {
+				wait();
+			}
+		}
+		catch(InterruptedException e) {
+			//Give up the ticket, so that the reservations behind it are not held up forever
+			if(ticket == serving) {
+				next();
+			}
+			else {
+				abandoned.add(ticket);
+			}
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for memory to read a file");
+		}
+		available -= size;
+		next();
+	}
+
+	private void next() {
+		serving++;
+		while(abandoned.remove(serving)) {
+			serving++;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Returns a reservation made by {@link #acquire(long)}.
+	 *
+	 * @param size the number of bytes reserved
+	 */
+	void release(long size) {
+		if(this != UNLIMITED && size > 0) {
+			unreserve(size);
+		}
+	}
+
+	private synchronized void unreserve(long size) {
+		available += size;
+		notifyAll();
+	}
+
+}
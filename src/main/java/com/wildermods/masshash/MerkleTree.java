@@ -0,0 +1,300 @@
+package com.wildermods.masshash;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.google.common.collect.SetMultimap;
+
+/**
+ * A Merkle tree over a directory structure, built from the results of a {@link Hasher}.
+ *
+ * <p>
+ * Every file in the tree carries its content hash. Every directory carries a hash derived
+ * from the names, kinds and hashes of its children, sorted by name, so a directory's hash
+ * changes whenever anything below it changes. Two trees therefore hold the same files with the
+ * same contents exactly when their {@linkplain #hash() root hashes} are equal, which makes
+ * checking whether an install is intact a single comparison.
+ * </p>
+ *
+ * <p>
+ * When two trees do differ, {@link #diff(MerkleTree)} only descends into the subtrees whose
+ * hashes differ, instead of comparing every file.
+ * </p>
+ *
+ * <p>
+ * Directory hashes are computed with the {@link HashAlgorithm} of the file hashes. Directories
+ * that contain no files do not appear in the tree, since {@link Hasher} only reports files.
+ * </p>
+ */
+public final class MerkleTree {
+
+	private static final byte FILE = 'f';
+	private static final byte DIRECTORY = 'd';
+
+	/**
+	 * A file or directory in a {@link MerkleTree}.
+	 */
+	public static final class Node {
+
+		private final Path path;
+		private final Hash hash;
+		private final SortedMap<String, Node> children;
+
+		private Node(Path path, Hash hash, SortedMap<String, Node> children) {
+			this.path = path;
+			this.hash = hash;
+			this.children = children;
+		}
+
+		/**
+		 * @return the path of this node, relative to the root of the tree. The root itself has an empty path.
+		 */
+		public Path path() {
+			return path;
+		}
+
+		/**
+		 * @return the content hash of this file, or the hash of this directory's children
+		 */
+		public Hash hash() {
+			return hash;
+		}
+
+		/**
+		 * @return true if this node is a directory
+		 */
+		public boolean isDirectory() {
+			return children != null;
+		}
+
+		/**
+		 * @return the children of this directory by name, sorted by name. Empty for files.
+		 */
+		public SortedMap<String, Node> children() {
+			return children == null ? Collections.emptySortedMap() : Collections.unmodifiableSortedMap(children);
+		}
+
+		@Override
+		public String toString() {
+			return (isDirectory() ? "Directory " : "File ") + path + " " + hash;
+		}
+
+	}
+
+	private final HashAlgorithm algorithm;
+	private final Node root;
+
+	private MerkleTree(HashAlgorithm algorithm, Node root) {
+		this.algorithm = algorithm;
+		this.root = root;
+	}
+
+	/**
+	 * Builds a Merkle tree from the results of a {@link Hasher}.
+	 *
+	 * @param results the results to build the tree from, as returned by {@link Hasher#results()}
+	 * @param root the directory the tree is rooted at. Every path in the results must be inside it.
+	 *        If the paths in the results are already relative, pass an empty path.
+	 * @return the new tree
+	 * @throws IllegalArgumentException if a path is not inside {@code root}, a path is both a file
+	 *         and a directory, or the results contain hashes of more than one algorithm
+	 */
+	public static MerkleTree of(SetMultimap<Hash, Path> results, Path root) {
+		Objects.requireNonNull(results, "Results cannot be null.");
+		Objects.requireNonNull(root, "Root cannot be null.");
+		final Path base = root.normalize();
+		final Builder tree = new Builder();
+		HashAlgorithm algorithm = null;
+
+		//Iterating a synchronized multimap requires holding its lock, see Multimaps.synchronizedSetMultimap
+		synchronized(results) {
+			for(Map.Entry<Hash, Path> entry : results.entries()) {
+				Hash hash = entry.getKey();
+				if(algorithm == null) {
+					algorithm = hash.algorithm();
+				}
+				else if(!algorithm.equals(hash.algorithm())) {
+					throw new IllegalArgumentException("Cannot mix " + algorithm.getName() + " and " + hash.algorithm().getName() + " hashes in a tree.");
+				}
+				Path relative = base.relativize(entry.getValue().normalize());
+				if(relative.getNameCount() == 0 || relative.startsWith("..")) {
+					throw new IllegalArgumentException(entry.getValue() + " is not inside " + root);
+				}
+				tree.add(relative, hash);
+			}
+		}
+		if(algorithm == null) {
+			algorithm = StandardHashAlgorithm.SHA_1;
+		}
+
+		return new MerkleTree(algorithm, tree.build(algorithm, base.relativize(base)));
+	}
+
+	/**
+	 * @return the algorithm of the hashes in this tree
+	 */
+	public HashAlgorithm algorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * @return the root directory of this tree
+	 */
+	public Node root() {
+		return root;
+	}
+
+	/**
+	 * @return the hash of the root directory, which fingerprints the whole tree
+	 */
+	public Hash hash() {
+		return root.hash();
+	}
+
+	/**
+	 * Finds the node at a path.
+	 *
+	 * @param path the path of the node, relative to the root of this tree
+	 * @return the node, or {@code null} if there is no file or directory at the path
+	 */
+	public Node get(Path path) {
+		Node node = root;
+		for(Path name : path.normalize()) {
+			if(name.toString().isEmpty()) {
+				continue;
+			}
+			if(!node.isDirectory()) {
+				return null;
+			}
+			node = node.children.get(name.toString());
+			if(node == null) {
+				return null;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Checks whether this tree holds exactly the same files, with the same contents, as another tree.
+	 *
+	 * @param other the tree to compare with
+	 * @return true if the root hashes of both trees are equal
+	 */
+	public boolean matches(MerkleTree other) {
+		return root.hash().equals(other.root.hash());
+	}
+
+	/**
+	 * Finds every file that differs between this tree and another.
+	 * <p>
+	 * Only subtrees whose hashes differ are visited, so the cost of a diff depends on the
+	 * number of changes rather than on the size of the trees.
+	 * </p>
+	 *
+	 * @param other the tree to compare with
+	 * @return the relative paths of the files that were added, removed or changed, sorted
+	 */
+	public SortedSet<Path> diff(MerkleTree other) {
+		SortedSet<Path> differences = new TreeSet<>();
+		diff(root, other.root, differences);
+		return differences;
+	}
+
+	private static void diff(Node a, Node b, SortedSet<Path> differences) {
+		if(a == null || b == null) {
+			files(a == null ? b : a, differences);
+			return;
+		}
+		if(a.hash().equals(b.hash()) && a.isDirectory() == b.isDirectory()) {
+			return;
+		}
+		if(!a.isDirectory() || !b.isDirectory()) {
+			files(a, differences);
+			files(b, differences);
+			return;
+		}
+		for(Map.Entry<String, Node> child : a.children.entrySet()) {
+			diff(child.getValue(), b.children.get(child.getKey()), differences);
+		}
+		for(Map.Entry<String, Node> child : b.children.entrySet()) {
+			if(!a.children.containsKey(child.getKey())) {
+				files(child.getValue(), differences);
+			}
+		}
+	}
+
+	private static void files(Node node, SortedSet<Path> files) {
+		if(!node.isDirectory()) {
+			files.add(node.path());
+			return;
+		}
+		for(Node child : node.children.values()) {
+			files(child, files);
+		}
+	}
+
+	/**
+	 * A mutable directory, which collects files before the hashes of the directories are computed.
+	 */
+	private static final class Builder {
+
+		private final TreeMap<String, Object> children = new TreeMap<>();
+
+		private void add(Path relative, Hash hash) {
+			Builder dir = this;
+			for(int i = 0; i < relative.getNameCount() - 1; i++) {
+				Object child = dir.children.computeIfAbsent(relative.getName(i).toString(), k -> new Builder());
+				if(!(child instanceof Builder)) {
+					throw new IllegalArgumentException(relative.subpath(0, i + 1) + " is both a file and a directory");
+				}
+				dir = (Builder) child;
+			}
+			if(dir.children.putIfAbsent(relative.getFileName().toString(), hash) instanceof Builder) {
+				throw new IllegalArgumentException(relative + " is both a file and a directory");
+			}
+		}
+
+		/*
+		 * A directory's hash is the digest of its children, sorted by name. Each child contributes:
+		 *
+		 * byte    'f' for a file or 'd' for a directory
+		 * UTF-8   name
+		 * byte    0
+		 * bytes   raw digest of the child
+		 *
+		 * Children are built first, since the digest returned by HashAlgorithm.digest()
+		 * is shared by the calling thread.
+		 */
+		private Node build(HashAlgorithm algorithm, Path path) {
+			SortedMap<String, Node> nodes = new TreeMap<>();
+			for(Map.Entry<String, Object> child : children.entrySet()) {
+				Path childPath = path.resolve(child.getKey());
+				if(child.getValue() instanceof Builder dir) {
+					nodes.put(child.getKey(), dir.build(algorithm, childPath));
+				}
+				else {
+					nodes.put(child.getKey(), new Node(childPath, (Hash) child.getValue(), null));
+				}
+			}
+
+			MessageDigest digest = algorithm.digest();
+			for(Node node : nodes.values()) {
+				digest.update(node.isDirectory() ? DIRECTORY : FILE);
+				digest.update(node.path().getFileName().toString().getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) 0);
+				digest.update(BinaryHash.of(node.hash()).toBytes());
+			}
+			return new Node(path, algorithm.toHash(digest), nodes);
+		}
+
+	}
+
+}
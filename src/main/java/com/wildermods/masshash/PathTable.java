@@ -0,0 +1,246 @@
+package com.wildermods.masshash;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An immutable, compact table of paths, which hands out an {@code int} ID for each path.
+ *
+ * <p>
+ * Paths under the same root share most of their leading characters. Instead of keeping a
+ * {@link Path} object per file, with every directory name repeated in each of them, a
+ * {@code PathTable} sorts the paths and front-codes them: each path is stored as the number
+ * of leading bytes it shares with the previous path, followed by the rest of its bytes. Every
+ * {@value #BLOCK_SIZE}th path is stored in full, so that any path can be decoded by reading
+ * at most one block, and so that paths can be looked up by binary search over the blocks.
+ * </p>
+ *
+ * <p>
+ * The ID of a path is its position in the sorted table, so IDs sort the same way as their paths.
+ * {@link Path} objects are only rebuilt on demand, by {@link #get(int)}. {@code PathTable} is
+ * thread-safe.
+ * </p>
+ */
+public final class PathTable {
+
+	/**
+	 * The number of paths in each block. Larger blocks are smaller in memory, but slower to read.
+	 */
+	static final int BLOCK_SIZE = 16;
+
+	private static final PathTable EMPTY = new PathTable(null, new byte[0], new int[0], 0, 0);
+
+	private final FileSystem fileSystem;
+	private final byte[] data;
+	private final int[] blocks;
+	private final int size;
+	private final int maxLength;
+
+	private PathTable(FileSystem fileSystem, byte[] data, int[] blocks, int size, int maxLength) {
+		this.fileSystem = fileSystem;
+		this.data = data;
+		this.blocks = blocks;
+		this.size = size;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Creates a table of the given paths. Duplicate paths are stored once.
+	 *
+	 * @param paths the paths to store, which must all belong to the same {@link FileSystem}
+	 * @return the new table
+	 */
+	public static PathTable of(Collection<Path> paths) {
+		Path[] sorted = paths.toArray(new Path[0]);
+		Arrays.parallelSort(sorted);
+		int unique = 0;
+		for(int i = 0; i < sorted.length; i++) {
+			if(unique == 0 || !sorted[i].equals(sorted[unique - 1])) {
+				sorted[unique++] = sorted[i];
+			}
+		}
+		return ofSorted(sorted, unique);
+	}
+
+	/**
+	 * Creates a table of paths that are already sorted and distinct.
+	 *
+	 * @param sorted the paths, in their natural order and without duplicates
+	 * @param count the number of paths to take from the array
+	 * @return the new table
+	 */
+	static PathTable ofSorted(Path[] sorted, int count) {
+		if(count == 0) {
+			return EMPTY;
+		}
+		final int[] blocks = new int[(count + BLOCK_SIZE - 1) / BLOCK_SIZE];
+		byte[] data = new byte[Math.max(64, count * 16)];
+		int length = 0;
+		int maxLength = 0;
+		byte[] previous = new byte[0];
+		for(int i = 0; i < count; i++) {
+			final byte[] bytes = encode(sorted[i]);
+			maxLength = Math.max(maxLength, bytes.length);
+			int shared = 0;
+			if(i % BLOCK_SIZE == 0) {
+				blocks[i / BLOCK_SIZE] = length;
+			}
+			else {
+				shared = Arrays.mismatch(previous, bytes);
+				if(shared < 0) {
+					shared = bytes.length;
+				}
+			}
+			//Make room for two varints of up to 5 bytes each, plus the suffix
+			if(length + 10 + bytes.length - shared > data.length) {
+				data = Arrays.copyOf(data, Math.max(data.length * 2, length + 10 + bytes.length));
+			}
+			if(i % BLOCK_SIZE != 0) {
+				length = writeVarint(data, length, shared);
+			}
+			length = writeVarint(data, length, bytes.length - shared);
+			System.arraycopy(bytes, shared, data, length, bytes.length - shared);
+			length += bytes.length - shared;
+			previous = bytes;
+		}
+		return new PathTable(sorted[0].getFileSystem(), Arrays.copyOf(data, length), blocks, count, maxLength);
+	}
+
+	/**
+	 * @return the number of paths in this table
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Rebuilds the path with the given ID.
+	 *
+	 * @param id the ID of the path, from 0 to {@link #size()} (exclusive)
+	 * @return the path
+	 * @throws IndexOutOfBoundsException if there is no path with the given ID
+	 */
+	public Path get(int id) {
+		if(id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException(id);
+		}
+		Cursor cursor = new Cursor(id / BLOCK_SIZE);
+		while(cursor.id <= id) {
+			cursor.next();
+		}
+		return cursor.toPath();
+	}
+
+	/**
+	 * Finds the ID of a path.
+	 *
+	 * @param path the path to look up
+	 * @return the ID of the path, or -1 if it is not in this table
+	 */
+	public int indexOf(Path path) {
+		if(size == 0 || path.getFileSystem() != fileSystem) {
+			return -1;
+		}
+		//Find the last block that starts at or before the path, by the first path of each block
+		int low = 0;
+		int high = blocks.length - 1;
+		while(low < high) {
+			int mid = (low + high + 1) >>> 1;
+			Cursor head = new Cursor(mid);
+			head.next();
+			if(head.toPath().compareTo(path) <= 0) {
+				low = mid;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+		//Then scan that block
+		Cursor cursor = new Cursor(low);
+		final int end = Math.min(size, (low + 1) * BLOCK_SIZE);
+		while(cursor.id < end) {
+			cursor.next();
+			int cmp = cursor.toPath().compareTo(path);
+			if(cmp == 0) {
+				return cursor.id - 1;
+			}
+			if(cmp > 0) {
+				break;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of bytes the encoded paths take up
+	 */
+	public int encodedSize() {
+		return data.length;
+	}
+
+	/**
+	 * Decodes the paths of a block one after another. Each cursor has its own buffer,
+	 * so any number of threads can read the table at once.
+	 */
+	private final class Cursor {
+
+		private final byte[] path = new byte[maxLength];
+		private int position;
+		private int length;
+		/**
+		 * The ID of the path the next call to {@link #next()} decodes.
+		 */
+		private int id;
+
+		private Cursor(int block) {
+			this.position = blocks[block];
+			this.id = block * BLOCK_SIZE;
+		}
+
+		/**
+		 * Decodes the next path, on top of the previous one.
+		 */
+		private void next() {
+			final int shared = id % BLOCK_SIZE == 0 ? 0 : readVarint();
+			final int suffix = readVarint();
+			System.arraycopy(data, position, path, shared, suffix);
+			position += suffix;
+			length = shared + suffix;
+			id++;
+		}
+
+		private int readVarint() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data[position++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0);
+			return value;
+		}
+
+		private Path toPath() {
+			return fileSystem.getPath(new String(path, 0, length, StandardCharsets.UTF_8));
+		}
+
+	}
+
+	private static int writeVarint(byte[] data, int position, int value) {
+		while((value & ~0x7F) != 0) {
+			data[position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data[position++] = (byte) value;
+		return position;
+	}
+
+	private static byte[] encode(Path path) {
+		return path.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+}
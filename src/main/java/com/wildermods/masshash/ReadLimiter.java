@@ -0,0 +1,146 @@
+package com.wildermods.masshash;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs blocking reads for a {@link Hasher} in a way that decouples the number of reads
+ * in flight from the number of threads hashing.
+ *
+ * <p>
+ * Each read is run as a {@link ManagedBlocker}. When a {@link ForkJoinPool} worker blocks on
+ * a read, the pool may start a spare thread so that the configured number of threads keep
+ * hashing, which lets more reads be in flight than there are hashing threads. The number of
+ * concurrent reads is capped by a {@link Semaphore}, and the number of spare threads by the
+ * maximum size of the pool.
+ * </p>
+ */
+final class ReadLimiter {
+
+	/**
+	 * A limiter that runs reads directly on the calling thread, without any limit.
+	 */
+	static final ReadLimiter UNLIMITED = new ReadLimiter(null);
+
+	@FunctionalInterface
+	interface Read<T> {
+		T read() throws IOException;
+	}
+
+	private final Semaphore permits;
+
+	private ReadLimiter(Semaphore permits) {
+		this.permits = permits;
+	}
+
+	/**
+	 * @param reads the maximum number of reads in flight at once
+	 * @return a new limiter
+	 */
+	static ReadLimiter of(int reads) {
+		return new ReadLimiter(new Semaphore(reads));
+	}
+
+	/**
+	 * Runs a blocking read.
+	 *
+	 * @param <T> the result of the read
+	 * @param read the read to run
+	 * @return the result of the read
+	 * @throws IOException if the read fails
+	 * @throws InterruptedIOException if the thread is interrupted while waiting to read
+	 */
+	<T> T read(Read<T> read) throws IOException {
+		if(permits == null) {
+			return read.read();
+		}
+		Blocker<T> blocker = new Blocker<>(read);
+		try {
+			ForkJoinPool.managedBlock(blocker);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to read");
+		}
+		if(blocker.failure != null) {
+			throw blocker.failure;
+		}
+		return blocker.result;
+	}
+
+	/**
+	 * Reads from a channel into a buffer through {@link #read(Read)}. Without a limit, the channel
+	 * is read directly, so that the count read is not boxed.
+	 *
+	 * @param channel the channel to read from
+	 * @param buffer the buffer to read into
+	 * @return the number of bytes read, or -1 at the end of the channel
+	 * @throws IOException if the read fails
+	 * @throws InterruptedIOException if the thread is interrupted while waiting to read
+	 */
+	int read(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		if(permits == null) {
+			return channel.read(buffer);
+		}
+		return read(() -> channel.read(buffer));
+	}
+
+	/**
+	 * Wraps a stream so that every read from it goes through {@link #read(Read)}.
+	 *
+	 * @param stream the stream to wrap
+	 * @return the wrapped stream, or the stream itself if reads are not limited
+	 */
+	InputStream wrap(InputStream stream) {
+		if(permits == null) {
+			return stream;
+		}
+		return new FilterInputStream(stream) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return ReadLimiter.this.read(() -> in.read(b, off, len));
+			}
+		};
+	}
+
+	private final class Blocker<T> implements ManagedBlocker {
+
+		private final Read<T> read;
+		private boolean done;
+		private T result;
+		private IOException failure;
+
+		private Blocker(Read<T> read) {
+			this.read = read;
+		}
+
+		@Override
+		public boolean block() throws InterruptedException {
+			permits.acquire();
+			try {
+				result = read.read();
+			}
+			catch(IOException e) {
+				failure = e;
+			}
+			finally {
+				permits.release();
+				done = true;
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return done;
+		}
+
+	}
+
+}
@@ -0,0 +1,178 @@
+package com.wildermods.masshash;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+
+/**
+ * One of several disjoint parts of a directory tree, so that the tree can be hashed by several
+ * processes or machines at once.
+ *
+ * <p>
+ * Every file belongs to exactly one of the {@link #count()} shards, decided by the
+ * {@link StandardHashAlgorithm#XXHASH_64 XXH64} hash of its path relative to the root of the
+ * tree. The partition only depends on the relative path, so every process agrees on it without
+ * any coordination, whatever machine or operating system it runs on, and files are spread evenly
+ * across the shards however the tree is laid out.
+ * </p>
+ *
+ * <p>
+ * Each shard is {@linkplain #hash(Path, int, HasherOptions, Predicate, Path) hashed} into a
+ * partial {@link Manifest}, and once every shard is done, the partial manifests are
+ * {@linkplain #merge(List, Path) merged} into a manifest of the whole tree, the same as if it
+ * had been hashed at once:
+ * </p>
+ *
+ * <pre>
+ * //On each of 4 machines, with its own index
+ * new Shard(index, 4).hash(root, threads, HasherOptions.HASH_ONLY, p -&gt; true, Paths.get("part" + index + ".manifest"));
+ *
+ * //Once all are done
+ * Shard.merge(List.of(part0, part1, part2, part3), Paths.get("tree.manifest"));
+ * </pre>
+ *
+ * @param index the index of this shard, from 0 to {@code count - 1}
+ * @param count the number of shards the tree is split into
+ */
+public record Shard(int index, int count) {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	/**
+	 * @throws IllegalArgumentException if {@code count} is less than 1, or {@code index} is not between 0 and {@code count - 1}
+	 */
+	public Shard {
+		if(count < 1) {
+			throw new IllegalArgumentException("Shard count must be at least 1, was " + count);
+		}
+		if(index < 0 || index >= count) {
+			throw new IllegalArgumentException("Shard index must be between 0 and " + (count - 1) + ", was " + index);
+		}
+	}
+
+	/**
+	 * Parses a shard in the form {@code index/count}, such as {@code 2/8}, as it is formatted by {@link #toString()}.
+	 *
+	 * @param shard the shard to parse
+	 * @return the parsed shard
+	 * @throws IllegalArgumentException if the shard is not in the form {@code index/count}, or is out of range
+	 */
+	public static Shard parse(String shard) {
+		final int slash = shard.indexOf('/');
+		if(slash < 0) {
+			throw new IllegalArgumentException("Expected a shard in the form index/count, was " + shard);
+		}
+		try {
+			return new Shard(Integer.parseInt(shard.substring(0, slash).trim()), Integer.parseInt(shard.substring(slash + 1).trim()));
+		}
+		catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Expected a shard in the form index/count, was " + shard, e);
+		}
+	}
+
+	/**
+	 * Checks whether a file belongs to this shard.
+	 *
+	 * @param relative the path of the file, relative to the root of the tree
+	 * @return true if the file belongs to this shard
+	 */
+	public boolean contains(Path relative) {
+		final byte[] hash = StandardHashAlgorithm.XXHASH_64.hash(Manifest.encode(relative)).toBytes();
+		return Math.floorMod(ByteBuffer.wrap(hash).getLong(), count) == index;
+	}
+
+	/**
+	 * @param root the root of the tree
+	 * @return a predicate that accepts the files under {@code root} that belong to this shard
+	 */
+	public Predicate<Path> filter(Path root) {
+		Objects.requireNonNull(root);
+		return path -> contains(root.relativize(path));
+	}
+
+	/**
+	 * Hashes the files of this shard and atomically writes them to a partial manifest, with their
+	 * paths relative to {@code root}. A shard without any files is written as an empty manifest.
+	 *
+	 * @param root the root of the tree, which is walked recursively
+	 * @param threads the number of threads to use for parallel hashing (adjusted to 1 if less than 1)
+	 * @param options the options controlling how files are read and hashed. Every shard of a tree must use the same algorithm.
+	 * @param predicate a predicate to filter files before processing, in addition to the shard's own {@linkplain #filter(Path) filter}
+	 * @param manifest the file to write the partial manifest to
+	 * @return the number of files hashed
+	 * @throws IOException if the tree could not be walked, a file could not be read, or the manifest could not be written
+	 * @throws IllegalArgumentException if the {@link HasherOptions#cache()} holds hashes of a different algorithm
+	 */
+	public int hash(Path root, int threads, HasherOptions options, Predicate<Path> predicate, Path manifest) throws IOException {
+		Objects.requireNonNull(predicate);
+		Objects.requireNonNull(manifest);
+		final HashTask task = HashTask.start(Files.walk(root), threads, options, filter(root).and(predicate), null, (path, hash) -> root.relativize(path), null);
+		SetMultimap<Hash, Path> results;
+		try {
+			results = task.results().get();
+		}
+		catch(InterruptedException e) {
+			task.cancel();
+			Thread.currentThread().interrupt();
+			throw LOGGER.throwing(new InterruptedIOException("Interrupted while hashing shard " + this));
+		}
+		catch(ExecutionException e) {
+			HashTask.Progress progress = task.progress();
+			if(progress.walked() && progress.totalFiles() == 0) {
+				//Unlike a Hasher, a shard without files is not an error, since small trees can have empty shards
+				results = HashMultimap.create();
+			}
+			else if(e.getCause() instanceof IOException cause) {
+				throw cause;
+			}
+			else if(e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			else {
+				throw new IOException(e.getCause());
+			}
+		}
+		Manifest.write(results, manifest);
+		LOGGER.info("Shard " + this + " hashed " + results.size() + " files into " + manifest);
+		return results.size();
+	}
+
+	/**
+	 * Atomically merges the partial manifests written by the shards of a tree into a manifest of the whole tree.
+	 *
+	 * @param manifests the partial manifests, one for each shard
+	 * @param manifest the file to write the merged manifest to
+	 * @throws IOException if a partial manifest could not be opened, or the merged manifest could not be written
+	 * @throws IllegalArgumentException if the partial manifests overlap, use different algorithms, or are too large to merge
+	 * @see Manifest#merge(List, Path)
+	 */
+	public static void merge(List<Path> manifests, Path manifest) throws IOException {
+		final List<Manifest> parts = new ArrayList<>(manifests.size());
+		for(Path part : manifests) {
+			parts.add(Manifest.open(part));
+		}
+		Manifest.merge(parts, manifest);
+	}
+
+	/**
+	 * @return this shard in the form {@code index/count}
+	 */
+	@Override
+	public String toString() {
+		return index + "/" + count;
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.wildermods.masshash;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Supplier;
+
+import com.wildermods.masshash.utils.XXHash64Digest;
+
+/**
+ * The {@link HashAlgorithm}s that are built into MassHash.
+ */
+public enum StandardHashAlgorithm implements HashAlgorithm {
+
+	/**
+	 * SHA-1, the algorithm MassHash has always used. This is the default, and the
+	 * algorithm assumed for any {@link Hash} that does not specify one.
+	 */
+	SHA_1("SHA-1", 20),
+	
+	/**
+	 * SHA-256, for when collision resistance against deliberate tampering matters.
+	 */
+	SHA_256("SHA-256", 32),
+	
+	/**
+	 * xxHash64, a fast non-cryptographic hash implemented in pure Java.
+	 * <p>
+	 * Several times faster than SHA-1, and well suited to finding duplicates
+	 * or detecting accidental corruption. It offers no protection against files
+	 * that were deliberately crafted to collide.
+	 * </p>
+	 * 
+	 * @see XXHash64Digest
+	 */
+	XXHASH_64("XXH64", 8, XXHash64Digest::new);
+	
+	private final String name;
+	private final int digestLength;
+	private final Supplier<MessageDigest> factory;
+	
+	private StandardHashAlgorithm(String name, int digestLength) {
+		this(name, digestLength, null);
+	}
+	
+	private StandardHashAlgorithm(String name, int digestLength, Supplier<MessageDigest> factory) {
+		this.name = name;
+		this.digestLength = digestLength;
+		this.factory = factory;
+	}
+	
+	@Override
+	public String getName() {
+		return name;
+	}
+	
+	@Override
+	public int getDigestLength() {
+		return digestLength;
+	}
+	
+	@Override
+	public MessageDigest newDigest() {
+		if(factory != null) {
+			return factory.get();
+		}
+		try {
+			return MessageDigest.getInstance(name);
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(name + " algorithm is unavailable.", e);
+		}
+	}
+	
+}
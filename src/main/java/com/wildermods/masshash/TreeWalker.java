@@ -0,0 +1,193 @@
+package com.wildermods.masshash;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+
+import com.wildermods.masshash.HashScheduler.SizedFile;
+
+/**
+ * Walks a directory tree with several threads at once, for a {@link Hasher}.
+ *
+ * <p>
+ * Each directory is listed by a fork-join task of its own, which lists it with
+ * {@link Files#walkFileTree(Path, java.util.Set, int, java.nio.file.FileVisitor)} one level deep
+ * and forks a task for each subdirectory. Listing a directory reads the attributes of its
+ * entries, and those attributes are passed on to the predicate and to the
+ * {@linkplain SizedFile scheduler}, so that no file is statted twice. On cold caches, where each
+ * directory listing waits on the storage, many directories are listed at once instead of one
+ * after the other.
+ * </p>
+ *
+ * <p>
+ * Found files are handed over through a bounded queue, from which a single thread
+ * {@linkplain #take() takes} them, so the walk never runs too far ahead of hashing. Symbolic
+ * links are not followed, and files or directories that are deleted during the walk are skipped.
+ * </p>
+ */
+final class TreeWalker implements AutoCloseable {
+
+	private static final AtomicInteger WALKERS = new AtomicInteger();
+
+	/**
+	 * Marks the end of the walk in the queue.
+	 */
+	private static final SizedFile END = new SizedFile(Paths.get(""), 0);
+
+	private final BiPredicate<Path, BasicFileAttributes> predicate;
+	private final BlockingQueue<SizedFile> found = new LinkedBlockingQueue<>(HashPipeline.WINDOW_SIZE);
+	private final ForkJoinPool pool;
+	private volatile Throwable failure;
+	private boolean done;
+
+	/**
+	 * Starts walking a tree.
+	 *
+	 * @param root the root of the tree. If it is a regular file, it is the only file found.
+	 * @param threads the number of directories to list at once
+	 * @param predicate a predicate to filter regular files with, given each file's attributes. It is called
+	 *        concurrently from the walking threads, so it must be thread-safe.
+	 * @throws IOException if the attributes of the root could not be read
+	 */
+	TreeWalker(Path root, int threads, BiPredicate<Path, BasicFileAttributes> predicate) throws IOException {
+		this.predicate = predicate;
+		//Fail right away if the root itself is missing, instead of skipping it like a deleted subdirectory
+		Files.readAttributes(root, BasicFileAttributes.class);
+		final int walker = WALKERS.incrementAndGet();
+		this.pool = new ForkJoinPool(threads, p -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			thread.setName("MassHash Walker " + walker + "-" + thread.getPoolIndex());
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
+		pool.execute(() -> {
+			try {
+				new Directory(root).invoke();
+			}
+			catch(Throwable t) {
+				failure = t;
+			}
+			finally {
+				//Always room for the end, unless the walker was closed, in which case nothing takes it anyway
+				try {
+					found.put(END);
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Takes the next file found, waiting for it if necessary.
+	 *
+	 * @return the next file, or {@code null} once the whole tree has been walked
+	 * @throws IOException if a directory could not be listed, or the thread was interrupted
+	 */
+	SizedFile take() throws IOException {
+		if(done) {
+			return null;
+		}
+		final SizedFile file;
+		try {
+			file = found.take();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while walking");
+		}
+		if(file != END) {
+			return file;
+		}
+		done = true;
+		final Throwable failure = this.failure;
+		if(failure instanceof UncheckedIOException e) {
+			throw e.getCause();
+		}
+		if(failure instanceof RuntimeException e) {
+			throw e;
+		}
+		if(failure instanceof Error e) {
+			throw e;
+		}
+		return null;
+	}
+
+	/**
+	 * Stops the walk, if it is still in progress.
+	 */
+	@Override
+	public void close() {
+		pool.shutdownNow();
+	}
+
+	private final class Directory extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path directory;
+
+		private Directory(Path directory) {
+			this.directory = directory;
+		}
+
+		@Override
+		protected void compute() {
+			final List<Directory> subdirectories = new ArrayList<>();
+			try {
+				Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<>() {
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+						//At the maximum depth, subdirectories are visited as files
+						if(attributes.isDirectory()) {
+							subdirectories.add(new Directory(file));
+						}
+						else if(attributes.isRegularFile() && predicate.test(file, attributes)) {
+							try {
+								found.put(new SizedFile(file, attributes.size(), attributes));
+							}
+							catch(InterruptedException e) {
+								Thread.currentThread().interrupt();
+								throw new InterruptedIOException("Interrupted while walking");
+							}
+						}
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+						if(e instanceof NoSuchFileException) {
+							return FileVisitResult.CONTINUE;
+						}
+						throw e;
+					}
+				});
+			}
+			catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			invokeAll(subdirectories);
+		}
+
+	}
+
+}
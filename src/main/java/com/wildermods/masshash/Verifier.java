@@ -0,0 +1,295 @@
+package com.wildermods.masshash;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.collect.SetMultimap;
+import com.wildermods.masshash.HashScheduler.SizedFile;
+import com.wildermods.masshash.exception.FileProblem;
+import com.wildermods.masshash.exception.IntegrityException;
+import com.wildermods.masshash.exception.IntegrityProblem;
+
+/**
+ * Verifies a whole file tree on disk against a set of expected hashes.
+ *
+ * <p>
+ * Files are hashed in parallel, with the same pipeline as {@link Hasher}, and compared with
+ * their expected hashes as they complete. Instead of stopping at the first problem, every
+ * missing, unexpected, mismatched and unreadable file is collected as a {@link FileProblem}, and
+ * reported together in a single {@link IntegrityException}. Files that were not expected are reported
+ * without being read.
+ * </p>
+ *
+ * <p>
+ * Verifiers are immutable. Create one with {@link #of(SetMultimap)} or {@link #of(Manifest)}
+ * and derive configured copies with the {@code with} methods. A verifier created from a
+ * {@link Manifest} looks up expected hashes directly in the mapped manifest.
+ * </p>
+ */
+public final class Verifier {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	/**
+	 * The expected hash of each file, by path relative to the root of the tree.
+	 */
+	private interface Expected {
+
+		HashAlgorithm algorithm();
+
+		Hash get(Path path);
+
+		void forEachPath(Consumer<Path> action);
+
+	}
+
+	private final Expected expected;
+	private final int threads;
+	private final HasherOptions options;
+	private final boolean failFast;
+	private final int maxProblems;
+
+	private Verifier(Expected expected, int threads, HasherOptions options, boolean failFast, int maxProblems) {
+		this.expected = expected;
+		this.threads = threads;
+		this.options = options.withAlgorithm(expected.algorithm()).withStreaming(true);
+		this.failFast = failFast;
+		this.maxProblems = maxProblems;
+	}
+
+	/**
+	 * Creates a verifier that expects the files of the given results.
+	 *
+	 * @param results the expected hashes and paths, such as the results of a {@link Hasher}.
+	 *        Paths must be relative to the root of the tree that will be verified.
+	 * @return the new verifier
+	 * @throws IllegalArgumentException if the results contain hashes of more than one algorithm
+	 */
+	public static Verifier of(SetMultimap<Hash, Path> results) {
+		Objects.requireNonNull(results, "Results cannot be null.");
+		final Map<Path, Hash> byPath = new HashMap<>();
+		HashAlgorithm algorithm = null;
+		//Iterating a synchronized multimap requires holding its lock, see Multimaps.synchronizedSetMultimap
+		synchronized(results) {
+			for(Map.Entry<Hash, Path> entry : results.entries()) {
+				if(algorithm == null) {
+					algorithm = entry.getKey().algorithm();
+				}
+				else if(!algorithm.equals(entry.getKey().algorithm())) {
+					throw new IllegalArgumentException("Cannot mix " + algorithm.getName() + " and " + entry.getKey().algorithm().getName() + " hashes.");
+				}
+				byPath.put(entry.getValue(), entry.getKey());
+			}
+		}
+		final HashAlgorithm expectedAlgorithm = algorithm == null ? StandardHashAlgorithm.SHA_1 : algorithm;
+		return new Verifier(new Expected() {
+			@Override
+			public HashAlgorithm algorithm() {
+				return expectedAlgorithm;
+			}
+			@Override
+			public Hash get(Path path) {
+				return byPath.get(path);
+			}
+			@Override
+			public void forEachPath(Consumer<Path> action) {
+				byPath.keySet().forEach(action);
+			}
+		});
+	}
+
+	/**
+	 * Creates a verifier that expects the files in the given manifest.
+	 *
+	 * @param manifest the manifest of expected files. Paths must be relative to the root of the
+	 *        tree that will be verified.
+	 * @return the new verifier
+	 */
+	public static Verifier of(Manifest manifest) {
+		Objects.requireNonNull(manifest, "Manifest cannot be null.");
+		return new Verifier(new Expected() {
+			@Override
+			public HashAlgorithm algorithm() {
+				return manifest.algorithm();
+			}
+			@Override
+			public Hash get(Path path) {
+				return manifest.hash(path);
+			}
+			@Override
+			public void forEachPath(Consumer<Path> action) {
+				manifest.forEach((hash, path) -> action.accept(path));
+			}
+		});
+	}
+
+	private Verifier(Expected expected) {
+		this(expected, Runtime.getRuntime().availableProcessors(), HasherOptions.HASH_ONLY, false, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns a copy of this verifier which hashes with the given number of threads.
+	 *
+	 * @param threads the number of threads to hash with (adjusted to 1 if less than 1). Defaults to the number of available processors.
+	 * @return the new verifier
+	 */
+	public Verifier withThreads(int threads) {
+		return new Verifier(expected, Math.max(1, threads), options, failFast, maxProblems);
+	}
+
+	/**
+	 * Returns a copy of this verifier which hashes with the given options. Files are always streamed,
+	 * and hashed with the algorithm of the expected hashes.
+	 *
+	 * @param options the options to hash with
+	 * @return the new verifier
+	 */
+	public Verifier withOptions(HasherOptions options) {
+		return new Verifier(expected, threads, Objects.requireNonNull(options), failFast, maxProblems);
+	}
+
+	/**
+	 * Returns a copy of this verifier which stops at the first problem if {@code failFast} is true.
+	 * Equivalent to a {@linkplain #withMaxProblems(int) maximum} of one problem.
+	 *
+	 * @param failFast whether to stop at the first problem
+	 * @return the new verifier
+	 */
+	public Verifier withFailFast(boolean failFast) {
+		return new Verifier(expected, threads, options, failFast, maxProblems);
+	}
+
+	/**
+	 * Returns a copy of this verifier which stops once the given number of problems have been found.
+	 *
+	 * @param maxProblems the number of problems to stop at
+	 * @return the new verifier
+	 * @throws IllegalArgumentException if {@code maxProblems} is less than 1
+	 */
+	public Verifier withMaxProblems(int maxProblems) {
+		if(maxProblems < 1) {
+			throw new IllegalArgumentException("Maximum number of problems must be at least 1.");
+		}
+		return new Verifier(expected, threads, options, failFast, maxProblems);
+	}
+
+	/**
+	 * Verifies the file tree at {@code root}.
+	 * <p>
+	 * If the verification stopped early because of {@link #withFailFast(boolean)} or
+	 * {@link #withMaxProblems(int)}, the exception only holds the problems found so far.
+	 * </p>
+	 *
+	 * @param root the root of the tree to verify
+	 * @throws IntegrityException if any file is missing, unexpected, unreadable or does not match its expected hash
+	 * @throws IOException if the tree could not be walked
+	 */
+	public void verify(Path root) throws IntegrityException, IOException {
+		final int limit = failFast ? 1 : maxProblems;
+		final Queue<FileProblem> problems = new ConcurrentLinkedQueue<>();
+		final AtomicInteger found = new AtomicInteger();
+		final Set<Path> seen = ConcurrentHashMap.newKeySet();
+
+		//Records a problem, and returns true if verification should stop
+		final Predicate<FileProblem> report = problem -> {
+			int count = found.incrementAndGet();
+			if(count <= limit) {
+				problems.add(problem);
+			}
+			return count >= limit;
+		};
+
+		//The walker reads each file's attributes while listing its directory, so nothing is statted twice.
+		//Hashes are compared straight from the pipeline, without a Blob for each file.
+		try(TreeWalker files = new TreeWalker(root, threads, (path, attributes) -> true);
+			HashPipeline pipeline = new HashPipeline(threads, options, null, false, new HashPipeline.OnHashed() {
+				@Override
+				public Path hashed(Path path, BinaryHash hash) {
+					//Compare each file with its expected hash as soon as it is hashed
+					Path relative = root.relativize(path);
+					Hash expectedHash = expected.get(relative);
+					if(expectedHash == null) {
+						//An entry of an expanded archive, which could not be checked before it was read
+						report.test(new FileProblem(FileProblem.Kind.EXTRA, relative, null, null));
+						return path;
+					}
+					seen.add(relative);
+					if(!expectedHash.hashEquals(hash)) {
+						report.test(new FileProblem(FileProblem.Kind.MISMATCH, relative, expectedHash, hash));
+					}
+					return path;
+				}
+				@Override
+				public void failed(Path path, IOException failure) {
+					//The file changed between listing and hashing, which is a problem with the tree rather than with the run
+					if(failure instanceof NoSuchFileException) {
+						//Left unseen, so it is reported as missing once every file has been hashed
+						return;
+					}
+					Path relative = root.relativize(path);
+					seen.add(relative);
+					report.test(new FileProblem(FileProblem.Kind.UNREADABLE, relative, expected.get(relative), null));
+				}
+			})) {
+			SizedFile file;
+			while(found.get() < limit && (file = files.take()) != null) {
+				if(options.expandArchives() && Archive.isArchive(file.path())) {
+					//The paths of the entries are only known once the archive is opened
+					pipeline.submit(file);
+					continue;
+				}
+				Path relative = root.relativize(file.path());
+				if(expected.get(relative) == null) {
+					//Not expected, no need to read it
+					report.test(new FileProblem(FileProblem.Kind.EXTRA, relative, null, null));
+					continue;
+				}
+				pipeline.submit(file);
+			}
+			if(found.get() < limit) {
+				pipeline.finish();
+			}
+		}
+
+		if(found.get() < limit) {
+			List<Path> missing = new ArrayList<>();
+			expected.forEachPath(path -> {
+				if(!seen.contains(path)) {
+					missing.add(path);
+				}
+			});
+			for(Path path : missing) {
+				if(report.test(new FileProblem(FileProblem.Kind.MISSING, path, expected.get(path), null))) {
+					break;
+				}
+			}
+		}
+
+		if(!problems.isEmpty()) {
+			List<FileProblem> sorted = new ArrayList<>(problems);
+			sorted.sort(Comparator.comparing(FileProblem::path));
+			String message = found.get() >= limit
+				? "Verification of " + root + " stopped after " + sorted.size() + " problems"
+				: "Verification of " + root + " found " + sorted.size() + " problems";
+			throw LOGGER.throwing(new IntegrityException(message, sorted.toArray(new IntegrityProblem[0])));
+		}
+	}
+
+}
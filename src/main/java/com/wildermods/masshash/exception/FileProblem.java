@@ -0,0 +1,55 @@
+package com.wildermods.masshash.exception;
+
+import java.nio.file.Path;
+
+import com.wildermods.masshash.Hash;
+
+/**
+ * An {@link IntegrityProblem} with a single file, found while verifying a file tree.
+ *
+ * @param kind what is wrong with the file
+ * @param path the path of the file, relative to the root of the verified tree
+ * @param expected the hash the file was expected to have, or {@code null} if the file was not expected
+ * @param actual the hash the file actually has, or {@code null} if it was not hashed
+ */
+public record FileProblem(Kind kind, Path path, Hash expected, Hash actual) implements IntegrityProblem {
+
+	/**
+	 * The kinds of problems a file can have.
+	 */
+	public static enum Kind {
+		/**
+		 * An expected file does not exist.
+		 */
+		MISSING,
+		/**
+		 * A file exists that was not expected.
+		 */
+		EXTRA,
+		/**
+		 * A file's contents do not match its expected hash.
+		 */
+		MISMATCH,
+		/**
+		 * A file exists, but could not be read.
+		 */
+		UNREADABLE
+	}
+
+	@Override
+	public String getMessage() {
+		switch(kind) {
+			case MISSING:
+				return "Missing file " + path + " (" + expected.hash() + ")";
+			case EXTRA:
+				return "Unexpected file " + path;
+			case MISMATCH:
+				return "Hash mismatch for " + path + ": expected " + expected.hash() + ", found " + actual.hash();
+			case UNREADABLE:
+				return "Unreadable file " + path;
+			default:
+				throw new AssertionError(kind);
+		}
+	}
+
+}
@@ -1,16 +1,68 @@
 package com.wildermods.masshash.utils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Objects;
 
 public class ByteUtil {
 
+	/**
+	 * The size of the buffer used when hashing streams. Large enough to keep the
+	 * number of read calls low, small enough to stay out of the humongous object
+	 * regions of region based garbage collectors.
+	 */
+	public static final int STREAM_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * The largest region of a file that is mapped into memory at once by
+	 * {@link #updateMapped(MessageDigest, FileChannel)}. Files larger than this are hashed window by window,
+	 * which keeps the amount of address space in use bounded, and allows files larger than
+	 * 2 GB (the maximum size of a single {@link MappedByteBuffer}) to be hashed.
+	 */
+	public static final long MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+	
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	
+	/**
+	 * Per-thread read buffer for {@link #update(MessageDigest, InputStream)}, so hashing many files
+	 * on the same thread does not allocate a new buffer for every file.
+	 */
+	private static final ThreadLocal<byte[]> STREAM_BUFFER = ThreadLocal.withInitial(() -> new byte[STREAM_BUFFER_SIZE]);
+
+	/**
+	 * Per-thread SHA-1 digest, so that hashing does not look up the algorithm's provider on every call.
+	 * This package keeps its own rather than using {@link com.wildermods.masshash.HashAlgorithm}'s
+	 * pooled digests, so that it does not depend on the package that depends on it.
+	 */
+	private static final ThreadLocal<MessageDigest> SHA_1 = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-1 algorithm is unavailable.", e);
+		}
+	});
+
+	/**
+	 * @return the calling thread's SHA-1 digest, reset
+	 */
+	private static MessageDigest sha1() {
+		MessageDigest digest = SHA_1.get();
+		digest.reset();
+		return digest;
+	}
+
 	/**
 	 * Hashes a given byte array using the SHA-1 algorithm.
 	 * <p>
 	 * This method takes the provided byte array, hashes it using the SHA-1 algorithm,
-	 * and returns the resulting hash as a hexadecimal string.
+	 * and returns the resulting hash as a hexadecimal string. To hash with a different
+	 * algorithm, use {@link com.wildermods.masshash.HashAlgorithm#hash(byte[])}.
 	 * </p>
 	 * 
 	 * @param bytes the byte array to hash.
@@ -20,21 +72,164 @@ public class ByteUtil {
 	 * @throws NullPointerException if the provided byte array is null.
 	 */
 	public static String hash(byte[] bytes) {
+		return bytesToHex(digest(bytes));
+	}
+	
+	/**
+	 * Computes the raw SHA-1 digest of a byte array.
+	 * 
+	 * @param bytes the byte array to hash.
+	 * 
+	 * @return the digest of the byte array.
+	 * 
+	 * @throws NullPointerException if the provided byte array is null.
+	 * @see #hash(byte[])
+	 */
+	public static byte[] digest(byte[] bytes) {
 		Objects.requireNonNull(bytes, "Input byte array cannot be null.");
-		try {
-			MessageDigest digest = MessageDigest.getInstance("SHA-1");
-			return bytesToHex(digest.digest(bytes));
-		} catch (NoSuchAlgorithmException e) {
-			throw new AssertionError("SHA-1 algorithm is unavailable.", e);
+		return sha1().digest(bytes);
+	}
+	
+	/**
+	 * Hashes the remaining contents of an {@link InputStream} using the SHA-1 algorithm.
+	 * <p>
+	 * Unlike {@link #hash(byte[])}, the contents of the stream are never held in memory
+	 * all at once. The stream is fed to the digest through a fixed-size buffer that is
+	 * reused by the calling thread, so the memory needed to hash a stream does not depend
+	 * on its length.
+	 * </p>
+	 * <p>
+	 * The stream is read until it is exhausted, but it is not closed.
+	 * </p>
+	 * 
+	 * @param stream the stream to hash.
+	 * 
+	 * @return a hexadecimal string representing the hash of the stream's contents.
+	 * 
+	 * @throws IOException if an I/O error occurs while reading from the stream.
+	 * @throws NullPointerException if the provided stream is null.
+	 */
+	public static String hash(InputStream stream) throws IOException {
+		return bytesToHex(digest(stream));
+	}
+	
+	/**
+	 * Computes the raw SHA-1 digest of the remaining contents of an {@link InputStream},
+	 * through a fixed-size buffer.
+	 * 
+	 * @param stream the stream to hash.
+	 * 
+	 * @return the digest of the stream's contents.
+	 * 
+	 * @throws IOException if an I/O error occurs while reading from the stream.
+	 * @throws NullPointerException if the provided stream is null.
+	 * @see #hash(InputStream)
+	 */
+	public static byte[] digest(InputStream stream) throws IOException {
+		MessageDigest digest = sha1();
+		update(digest, stream);
+		return digest.digest();
+	}
+	
+	/**
+	 * Feeds the remaining contents of an {@link InputStream} to a {@link MessageDigest}.
+	 * <p>
+	 * The stream is read through a fixed-size buffer that is reused by the calling thread,
+	 * so the memory needed to hash a stream does not depend on its length. The stream is
+	 * read until it is exhausted, but it is not closed.
+	 * </p>
+	 * 
+	 * @param digest the digest to update.
+	 * @param stream the stream to read.
+	 * 
+	 * @throws IOException if an I/O error occurs while reading from the stream.
+	 * @throws NullPointerException if the provided stream is null.
+	 */
+	public static void update(MessageDigest digest, InputStream stream) throws IOException {
+		Objects.requireNonNull(stream, "Input stream cannot be null.");
+		byte[] buffer = STREAM_BUFFER.get();
+		int read;
+		while((read = stream.read(buffer)) != -1) {
+			digest.update(buffer, 0, read);
+		}
+	}
+	
+	/**
+	 * Hashes the entire contents of a {@link FileChannel} using the SHA-1 algorithm, by
+	 * mapping the file into memory.
+	 * 
+	 * @param channel the channel of the file to hash.
+	 * 
+	 * @return a hexadecimal string representing the hash of the file's contents.
+	 * 
+	 * @throws IOException if an I/O error occurs while mapping the file.
+	 * @throws NullPointerException if the provided channel is null.
+	 */
+	public static String hashMapped(FileChannel channel) throws IOException {
+		return bytesToHex(digestMapped(channel));
+	}
+	
+	/**
+	 * Computes the raw SHA-1 digest of the entire contents of a {@link FileChannel}, by
+	 * mapping the file into memory.
+	 * 
+	 * @param channel the channel of the file to hash.
+	 * 
+	 * @return the digest of the file's contents.
+	 * 
+	 * @throws IOException if an I/O error occurs while mapping the file.
+	 * @throws NullPointerException if the provided channel is null.
+	 * @see #hashMapped(FileChannel)
+	 */
+	public static byte[] digestMapped(FileChannel channel) throws IOException {
+		MessageDigest digest = sha1();
+		updateMapped(digest, channel);
+		return digest.digest();
+	}
+	
+	/**
+	 * Feeds the entire contents of a {@link FileChannel} to a {@link MessageDigest}, by
+	 * mapping the file into memory.
+	 * <p>
+	 * The file is mapped read-only, in windows of at most {@link #MAP_WINDOW_SIZE} bytes,
+	 * and each window is passed directly to the digest. The contents are read through the
+	 * operating system's page cache, and are never copied onto the Java heap as a whole.
+	 * </p>
+	 * <p>
+	 * Mapping a file has a fixed setup cost, so for small files this is usually slower than
+	 * {@link #update(MessageDigest, InputStream)}. The size at which mapping starts to pay off
+	 * depends on the operating system and storage, and can be measured with the
+	 * {@code MappedHashBenchmark} in the {@code jmh} source set.
+	 * </p>
+	 * <p>
+	 * The position of the channel is not used or modified, and the channel is not closed.
+	 * </p>
+	 * 
+	 * @param digest the digest to update.
+	 * @param channel the channel of the file to read.
+	 * 
+	 * @throws IOException if an I/O error occurs while mapping the file.
+	 * @throws InterruptedIOException if the thread is interrupted between two windows of the file.
+	 * @throws NullPointerException if the provided channel is null.
+	 */
+	public static void updateMapped(MessageDigest digest, FileChannel channel) throws IOException {
+		Objects.requireNonNull(channel, "Input channel cannot be null.");
+		final long size = channel.size();
+		for(long position = 0; position < size; position += MAP_WINDOW_SIZE) {
+			//Digesting a mapped window never blocks interruptibly, so check between windows
+			if(Thread.currentThread().isInterrupted()) {
+				throw new InterruptedIOException("Interrupted while hashing a mapped file");
+			}
+			MappedByteBuffer window = channel.map(MapMode.READ_ONLY, position, Math.min(MAP_WINDOW_SIZE, size - position));
+			digest.update(window);
 		}
 	}
 	
 	/**
 	 * Converts a byte array into a hexadecimal string representation.
 	 * <p>
-	 * This method iterates through the provided byte array, formatting each byte
-	 * as a two-character hexadecimal string, and appends it to form a complete
-	 * hexadecimal representation of the byte array.
+	 * Each byte is converted to two lowercase hexadecimal characters through a lookup
+	 * table, and the characters are written into an array of exactly the right size.
 	 * </p>
 	 * 
 	 * @param bytes the byte array to convert to hex.
@@ -43,12 +238,14 @@ public class ByteUtil {
 	 * 
 	 * @throws NullPointerException if the provided byte array is null.
 	 */
-	private static String bytesToHex(byte[] bytes) {
+	public static String bytesToHex(byte[] bytes) {
 		Objects.requireNonNull(bytes, "Input byte array cannot be null.");
-		StringBuilder hex = new StringBuilder();
-		for(byte b : bytes) {
-			hex.append(String.format("%02x", b));
+		char[] hex = new char[bytes.length * 2];
+		for(int i = 0; i < bytes.length; i++) {
+			int b = bytes[i] & 0xFF;
+			hex[i * 2] = HEX_DIGITS[b >>> 4];
+			hex[i * 2 + 1] = HEX_DIGITS[b & 0xF];
 		}
-		return hex.toString();
+		return new String(hex);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,214 @@
+package com.wildermods.masshash.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+/**
+ * A pure Java implementation of the 64-bit xxHash algorithm (XXH64), with a seed of 0,
+ * exposed as a {@link MessageDigest}.
+ *
+ * <p>
+ * The digest is the 8 byte canonical (big-endian) form of the hash, so its hexadecimal
+ * representation matches the output of the reference {@code xxhsum} tool.
+ * </p>
+ *
+ * <p>
+ * Like other {@link MessageDigest}s, instances are not thread-safe.
+ * </p>
+ */
+public final class XXHash64Digest extends MessageDigest implements Cloneable {
+
+	private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME64_3 = 0x165667B19E3779F9L;
+	private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+	private static final int STRIPE = 32;
+
+	private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+	private long v1;
+	private long v2;
+	private long v3;
+	private long v4;
+	private long totalLength;
+	private byte[] stripe = new byte[STRIPE];
+	private int stripeLength;
+
+	public XXHash64Digest() {
+		super("XXH64");
+		engineReset();
+	}
+
+	@Override
+	protected int engineGetDigestLength() {
+		return 8;
+	}
+
+	@Override
+	protected void engineReset() {
+		v1 = PRIME64_1 + PRIME64_2;
+		v2 = PRIME64_2;
+		v3 = 0;
+		v4 = -PRIME64_1;
+		totalLength = 0;
+		stripeLength = 0;
+	}
+
+	@Override
+	protected void engineUpdate(byte input) {
+		stripe[stripeLength++] = input;
+		totalLength++;
+		if(stripeLength == STRIPE) {
+			consumeStripe(stripe, 0);
+			stripeLength = 0;
+		}
+	}
+
+	@Override
+	protected void engineUpdate(byte[] input, int offset, int length) {
+		totalLength += length;
+		if(stripeLength > 0) {
+			int fill = Math.min(length, STRIPE - stripeLength);
+			System.arraycopy(input, offset, stripe, stripeLength, fill);
+			stripeLength += fill;
+			offset += fill;
+			length -= fill;
+			if(stripeLength < STRIPE) {
+				return;
+			}
+			consumeStripe(stripe, 0);
+			stripeLength = 0;
+		}
+		final int end = offset + length - STRIPE;
+		for(; offset <= end; offset += STRIPE) {
+			consumeStripe(input, offset);
+		}
+		length = end + STRIPE - offset;
+		System.arraycopy(input, offset, stripe, 0, length);
+		stripeLength = length;
+	}
+
+	/**
+	 * Reads direct and mapped buffers a word at a time instead of copying them
+	 * into a temporary array first. The order of the buffer is restored afterwards.
+	 */
+	@Override
+	protected void engineUpdate(ByteBuffer input) {
+		if(input.hasArray()) {
+			int length = input.remaining();
+			engineUpdate(input.array(), input.arrayOffset() + input.position(), length);
+			input.position(input.position() + length);
+			return;
+		}
+		while(stripeLength > 0 && input.hasRemaining()) {
+			engineUpdate(input.get());
+		}
+		ByteOrder order = input.order();
+		try {
+			input.order(ByteOrder.LITTLE_ENDIAN);
+			int remaining = input.remaining();
+			totalLength += remaining - (remaining % STRIPE);
+			while(input.remaining() >= STRIPE) {
+				v1 = round(v1, input.getLong());
+				v2 = round(v2, input.getLong());
+				v3 = round(v3, input.getLong());
+				v4 = round(v4, input.getLong());
+			}
+		}
+		finally {
+			input.order(order);
+		}
+		while(input.hasRemaining()) {
+			engineUpdate(input.get());
+		}
+	}
+
+	@Override
+	protected byte[] engineDigest() {
+		byte[] digest = new byte[8];
+		LONG_BE.set(digest, 0, finish());
+		return digest;
+	}
+
+	@Override
+	protected int engineDigest(byte[] buf, int offset, int length) throws DigestException {
+		if(length < 8) {
+			throw new DigestException("XXH64 digests are 8 bytes long, only " + length + " bytes available.");
+		}
+		LONG_BE.set(buf, offset, finish());
+		return 8;
+	}
+
+	@Override
+	public Object clone() throws CloneNotSupportedException {
+		XXHash64Digest clone = (XXHash64Digest) super.clone();
+		clone.stripe = stripe.clone();
+		return clone;
+	}
+
+	private void consumeStripe(byte[] input, int offset) {
+		v1 = round(v1, (long) LONG_LE.get(input, offset));
+		v2 = round(v2, (long) LONG_LE.get(input, offset + 8));
+		v3 = round(v3, (long) LONG_LE.get(input, offset + 16));
+		v4 = round(v4, (long) LONG_LE.get(input, offset + 24));
+	}
+
+	private long finish() {
+		long hash;
+		if(totalLength >= STRIPE) {
+			hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			hash = mergeRound(hash, v1);
+			hash = mergeRound(hash, v2);
+			hash = mergeRound(hash, v3);
+			hash = mergeRound(hash, v4);
+		}
+		else {
+			hash = PRIME64_5;
+		}
+		hash += totalLength;
+
+		int i = 0;
+		for(; i + 8 <= stripeLength; i += 8) {
+			hash ^= round(0, (long) LONG_LE.get(stripe, i));
+			hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+		}
+		if(i + 4 <= stripeLength) {
+			hash ^= ((int) INT_LE.get(stripe, i) & 0xFFFFFFFFL) * PRIME64_1;
+			hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+			i += 4;
+		}
+		for(; i < stripeLength; i++) {
+			hash ^= (stripe[i] & 0xFFL) * PRIME64_5;
+			hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= PRIME64_2;
+		hash ^= hash >>> 29;
+		hash *= PRIME64_3;
+		hash ^= hash >>> 32;
+
+		engineReset();
+		return hash;
+	}
+
+	private static long round(long acc, long input) {
+		acc += input * PRIME64_2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * PRIME64_1;
+	}
+
+	private static long mergeRound(long acc, long value) {
+		acc ^= round(0, value);
+		return acc * PRIME64_1 + PRIME64_4;
+	}
+
+}
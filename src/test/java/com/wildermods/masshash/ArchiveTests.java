@@ -0,0 +1,139 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.collect.SetMultimap;
+import com.wildermods.masshash.exception.FileProblem;
+import com.wildermods.masshash.exception.IntegrityException;
+
+public class ArchiveTests {
+
+	@TempDir
+	Path dir;
+
+	private static void zip(Path file, Map<String, String> entries) throws IOException {
+		Files.createDirectories(file.getParent());
+		try(ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(file))) {
+			out.putNextEntry(new ZipEntry("assets/"));
+			out.closeEntry();
+			for(Map.Entry<String, String> entry : entries.entrySet()) {
+				out.putNextEntry(new ZipEntry(entry.getKey()));
+				out.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+				out.closeEntry();
+			}
+		}
+	}
+
+	private Path install() throws IOException {
+		Path root = dir.resolve("install");
+		zip(root.resolve("mods/mod.jar"), Map.of("assets/x.png", "image", "assets/y.png", "image", "mod.json", "{}"));
+		zip(root.resolve("mods/other.ZIP"), Map.of("/readme.txt", "readme"));
+		Files.writeString(root.resolve("mods/broken.jar"), "not an archive");
+		Files.writeString(root.resolve("loose.txt"), "image");
+		return root;
+	}
+
+	@Test
+	public void testExpandArchives() throws IOException {
+		Path root = install();
+		for(HasherOptions options : List.of(HasherOptions.DEFAULT, HasherOptions.HASH_ONLY)) {
+			Hasher hasher = new Hasher(Files.walk(root), 2, options.withExpandedArchives(true), p -> true, (f, b) -> {
+				assertEquals(options.streaming(), b.isTransient());
+				f.set(root.relativize(f.get()));
+			}) {};
+			SetMultimap<Hash, Path> results = hasher.results();
+			assertEquals(6, results.size());
+			Hash image = StandardHashAlgorithm.SHA_1.hash("image".getBytes());
+			assertEquals(List.of(Paths.get("loose.txt"), Paths.get("mods/mod.jar!/assets/x.png"), Paths.get("mods/mod.jar!/assets/y.png")), List.copyOf(results.get(image)));
+			assertTrue(results.containsEntry(StandardHashAlgorithm.SHA_1.hash("{}".getBytes()), Paths.get("mods/mod.jar!/mod.json")));
+			assertTrue(results.containsEntry(StandardHashAlgorithm.SHA_1.hash("readme".getBytes()), Paths.get("mods/other.ZIP!/readme.txt")));
+			//Files that only look like archives are hashed as they are
+			assertTrue(results.containsEntry(StandardHashAlgorithm.SHA_1.hash("not an archive".getBytes()), Paths.get("mods/broken.jar")));
+			assertEquals(6, hasher.metrics().files());
+		}
+
+		//Without expansion, archives are opaque
+		Hasher hasher = new Hasher(Files.walk(root), (f, b) -> f.set(root.relativize(f.get()))) {};
+		assertEquals(4, hasher.results().size());
+		assertTrue(hasher.results().containsValue(Paths.get("mods/mod.jar")));
+	}
+
+	@Test
+	public void testTaskProgress() throws Exception {
+		//Progress counts archives by their entries, like the files and bytes hashed
+		Path root = install();
+		HashTask task = HashTask.start(Files.walk(root), 2, HasherOptions.HASH_ONLY.withExpandedArchives(true), p -> true, null, progress -> {
+			assertTrue(progress.fraction() <= 1, "Fraction of " + progress);
+		});
+		assertEquals(6, task.results().get(30, TimeUnit.SECONDS).size());
+		HashTask.Progress progress = task.progress();
+		assertEquals(6, progress.totalFiles());
+		assertEquals(progress.totalBytes(), progress.bytes());
+		assertEquals(1d, progress.fraction());
+	}
+
+	@Test
+	public void testEmptyArchives() throws IOException, IntegrityException {
+		//Archives without file entries are hashed as they are, rather than disappearing
+		Path root = dir.resolve("empty");
+		zip(root.resolve("directories.jar"), Map.of());
+		Files.createDirectories(root);
+		try(ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(root.resolve("empty.zip")))) {
+			out.finish();
+		}
+		HasherOptions options = HasherOptions.HASH_ONLY.withExpandedArchives(true);
+		SetMultimap<Hash, Path> results = new Hasher(Files.walk(root), 2, options, p -> true, (f, b) -> f.set(root.relativize(f.get()))) {}.results();
+		assertEquals(Set.of(Paths.get("directories.jar"), Paths.get("empty.zip")), Set.copyOf(results.values()));
+		assertTrue(results.containsEntry(StandardHashAlgorithm.SHA_1.hash(Files.readAllBytes(root.resolve("empty.zip"))), Paths.get("empty.zip")));
+		Verifier.of(results).withOptions(options).verify(root);
+	}
+
+	@Test
+	public void testEntryNames() throws IOException {
+		Path jar = dir.resolve("names.jar");
+		zip(jar, Map.of("//a/./b/../c.txt", "c"));
+		Hasher hasher = new Hasher(Files.walk(dir), 1, HasherOptions.DEFAULT.withExpandedArchives(true), p -> true, (f, b) -> {}) {};
+		assertEquals(Set.of(dir.resolve("names.jar!/a/c.txt")), Set.copyOf(hasher.results().values()));
+
+		//Entries that would resolve outside of the archive are rejected
+		for(String name : List.of("../escaped.txt", "a/../../escaped.txt", "/../escaped.txt")) {
+			zip(jar, Map.of(name, "escaped"));
+			assertThrows(ZipException.class, () -> new Hasher(Files.walk(dir), 1, HasherOptions.DEFAULT.withExpandedArchives(true), p -> true, (f, b) -> {}) {});
+		}
+	}
+
+	@Test
+	public void testVerifyArchives() throws IOException, IntegrityException {
+		Path root = install();
+		HasherOptions options = HasherOptions.HASH_ONLY.withExpandedArchives(true);
+		SetMultimap<Hash, Path> expected = new Hasher(Files.walk(root), 2, options, p -> true, (f, b) -> f.set(root.relativize(f.get()))) {}.results();
+		Verifier.of(expected).withOptions(options).verify(root);
+
+		zip(root.resolve("mods/mod.jar"), Map.of("assets/x.png", "changed", "mod.json", "{}", "extra.txt", "extra"));
+		IntegrityException e = assertThrows(IntegrityException.class, () -> Verifier.of(expected).withOptions(options).verify(root));
+		List<FileProblem> problems = e.getProblems().map(FileProblem.class::cast).toList();
+		assertEquals(3, problems.size());
+		assertEquals(FileProblem.Kind.MISMATCH, problems.get(0).kind());
+		assertEquals(Paths.get("mods/mod.jar!/assets/x.png"), problems.get(0).path());
+		assertEquals(FileProblem.Kind.MISSING, problems.get(1).kind());
+		assertEquals(Paths.get("mods/mod.jar!/assets/y.png"), problems.get(1).path());
+		assertEquals(new FileProblem(FileProblem.Kind.EXTRA, Paths.get("mods/mod.jar!/extra.txt"), null, null), problems.get(2));
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.wildermods.masshash.utils.ByteUtil;
+
+public class BinaryHashTests {
+
+	private static final Blob testBlob = new Blob("test".getBytes());
+	private static final BinaryHash testHash = BinaryHash.of(ByteUtil.digest("test".getBytes()));
+
+	@Test
+	public void testHex() {
+		assertEquals(testBlob.hash(), testHash.hash());
+		assertEquals(testBlob.toString(), testHash.toString());
+		assertEquals(testHash, BinaryHash.fromHex(testHash.hash()));
+		assertEquals(testHash, BinaryHash.fromHex(testHash.hash().toUpperCase()));
+		assertEquals(20, testHash.length());
+		assertArrayEquals(ByteUtil.digest("test".getBytes()), testHash.toBytes());
+	}
+
+	@Test
+	public void testEquality() {
+		assertEquals(testHash, testBlob);
+		assertEquals(testBlob, testHash);
+		assertEquals(testHash, testBlob.dropData());
+		assertEquals(testBlob.hashCode(), testHash.hashCode());
+		assertTrue(testHash.hashEquals(testBlob));
+		assertNotEquals(testHash, BinaryHash.of(ByteUtil.digest("corrupt".getBytes())));
+	}
+
+	@Test
+	public void testOrdering() {
+		Random random = new Random(0);
+		for(int i = 0; i < 1000; i++) {
+			byte[] a = new byte[1 + random.nextInt(BinaryHash.MAX_LENGTH)];
+			byte[] b = new byte[random.nextBoolean() ? a.length : 1 + random.nextInt(BinaryHash.MAX_LENGTH)];
+			random.nextBytes(a);
+			random.nextBytes(b);
+			if(random.nextBoolean()) {
+				System.arraycopy(a, 0, b, 0, Math.min(a.length, b.length) / 2);
+			}
+			BinaryHash hashA = BinaryHash.of(a);
+			BinaryHash hashB = BinaryHash.of(b);
+			int expected = Integer.signum(hashA.hash().compareTo(hashB.hash()));
+			assertEquals(expected, Integer.signum(hashA.compareTo(hashB)));
+			assertEquals(expected, Integer.signum(Hash.compare(hashA, Hash.of(hashB.hash()))));
+			assertEquals(expected, Integer.signum(Hash.compare(Hash.of(hashA.hash()), hashB)));
+		}
+	}
+
+	@Test
+	public void testInvalid() {
+		assertThrows(IllegalArgumentException.class, () -> BinaryHash.fromHex("abc"));
+		assertThrows(IllegalArgumentException.class, () -> BinaryHash.fromHex("zz"));
+		assertThrows(IllegalArgumentException.class, () -> BinaryHash.of(new byte[0]));
+		assertThrows(IllegalArgumentException.class, () -> BinaryHash.of(new byte[BinaryHash.MAX_LENGTH + 1]));
+	}
+
+}
@@ -3,6 +3,11 @@ package com.wildermods.masshash;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 import org.junit.jupiter.api.Test;
 
 import com.wildermods.masshash.exception.IntegrityException;
@@ -56,4 +61,12 @@ public class BlobTests {
 		assertThrowsExactly(IntegrityException.class, () -> new Blob("test".getBytes(), new Blob("corrupt".getBytes())));
 	}
 	
+	@Test
+	public void testStreamedHash() throws IOException {
+		assertEquals(testBlob, Hash.compute(new ByteArrayInputStream("test".getBytes())));
+		
+		Path file = Paths.get("./src", "test", "resources", "big", "large.blob");
+		assertEquals(new Blob(file), Hash.compute(file));
+	}
+	
 }
@@ -0,0 +1,66 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DuplicateHasherTests {
+
+	@TempDir
+	Path dir;
+
+	private Path write(String name, byte[] data) throws IOException {
+		return Files.write(dir.resolve(name), data);
+	}
+
+	@Test
+	public void testDuplicates() throws IOException {
+		Random random = new Random(0);
+		byte[] small = new byte[100];
+		random.nextBytes(small);
+		byte[] large = new byte[DuplicateHasher.PARTIAL_SIZE * 4];
+		random.nextBytes(large);
+		//Same size, head and tail as large, but a different middle
+		byte[] middle = large.clone();
+		middle[large.length / 2]++;
+
+		Path small1 = write("small1", small);
+		Path small2 = write("small2", small);
+		write("unique", new byte[7]);
+		write("smallOther", Arrays.copyOf(small, 99));
+		Path large1 = write("large1", large);
+		Path large2 = write("large2", large);
+		write("largeMiddle", middle);
+		Path empty1 = write("empty1", new byte[0]);
+		Path empty2 = write("empty2", new byte[0]);
+
+		DuplicateHasher duplicates = new DuplicateHasher(Files.walk(dir));
+		assertEquals(3, duplicates.results().keySet().size());
+		assertEquals(Set.of(small1, small2), duplicates.results().get(StandardHashAlgorithm.SHA_1.hash(small)));
+		assertEquals(Set.of(large1, large2), duplicates.results().get(StandardHashAlgorithm.SHA_1.hash(large)));
+		assertEquals(Set.of(empty1, empty2), duplicates.results().get(StandardHashAlgorithm.SHA_1.hash(new byte[0])));
+
+		//Agrees with a full hash of every file
+		Hasher hasher = new Hasher(Files.walk(dir)) {};
+		for(Hash hash : hasher.results().keySet()) {
+			Set<Path> paths = hasher.results().get(hash);
+			assertEquals(paths.size() > 1 ? paths : Set.of(), duplicates.results().get(hash));
+		}
+	}
+
+	@Test
+	public void testNoDuplicates() throws IOException {
+		write("a", new byte[] {1});
+		write("b", new byte[] {2});
+		assertTrue(new DuplicateHasher(Files.walk(dir)).results().isEmpty());
+	}
+
+}
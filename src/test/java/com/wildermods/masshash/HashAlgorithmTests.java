@@ -0,0 +1,89 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.wildermods.masshash.exception.IntegrityException;
+import com.wildermods.masshash.utils.ByteUtil;
+
+public class HashAlgorithmTests {
+
+	private static final Path large = Paths.get("./src", "test", "resources", "big", "large.blob");
+
+	@Test
+	public void testKnownHashes() {
+		assertEquals("a94a8fe5ccb19ba61c4c0873d391e987982fbbd3", StandardHashAlgorithm.SHA_1.hash("test".getBytes()).hash());
+		assertEquals("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08", StandardHashAlgorithm.SHA_256.hash("test".getBytes()).hash());
+		assertEquals("ef46db3751d8e999", StandardHashAlgorithm.XXHASH_64.hash(new byte[0]).hash());
+		assertEquals("44bc2cf5ad770999", StandardHashAlgorithm.XXHASH_64.hash("abc".getBytes()).hash());
+	}
+
+	@Test
+	public void testHashPaths() throws IOException {
+		byte[] data = Files.readAllBytes(large);
+		for(StandardHashAlgorithm algorithm : StandardHashAlgorithm.values()) {
+			BinaryHash expected = algorithm.hash(data);
+			assertEquals(algorithm, expected.algorithm());
+			assertEquals(algorithm.getDigestLength(), expected.length());
+			assertEquals(expected, algorithm.hash(new ByteArrayInputStream(data)));
+			assertEquals(expected, Hash.compute(large, algorithm));
+			try(FileChannel channel = FileChannel.open(large, StandardOpenOption.READ)) {
+				assertEquals(expected, algorithm.hashMapped(channel));
+			}
+		}
+	}
+
+	@Test
+	public void testXXHashChunking() {
+		Random random = new Random(0);
+		for(int length : new int[] {0, 1, 4, 7, 8, 31, 32, 33, 100, 4097}) {
+			byte[] data = new byte[length];
+			random.nextBytes(data);
+			String expected = StandardHashAlgorithm.XXHASH_64.hash(data).hash();
+
+			MessageDigest digest = StandardHashAlgorithm.XXHASH_64.newDigest();
+			for(int i = 0; i < length;) {
+				int chunk = Math.min(length - i, 1 + random.nextInt(13));
+				digest.update(data, i, chunk);
+				i += chunk;
+			}
+			assertEquals(expected, ByteUtil.bytesToHex(digest.digest()));
+
+			ByteBuffer direct = ByteBuffer.allocateDirect(length);
+			direct.put(data).flip();
+			digest.update(direct);
+			assertEquals(expected, ByteUtil.bytesToHex(digest.digest()));
+		}
+	}
+
+	@Test
+	public void testAlgorithmTagging() throws IntegrityException {
+		Blob blob = new Blob("test".getBytes(), StandardHashAlgorithm.SHA_256);
+		blob.verify();
+		assertEquals(StandardHashAlgorithm.SHA_256, blob.dropData().algorithm());
+		assertEquals(StandardHashAlgorithm.SHA_256.hash("test".getBytes()), blob);
+		assertNotEquals(new Blob("test".getBytes()), blob);
+		assertEquals(blob, new Blob("test".getBytes(), Hash.of(blob.hash(), StandardHashAlgorithm.SHA_256)));
+		assertThrowsExactly(IntegrityException.class, () -> new Blob("test".getBytes(), Hash.of(blob.hash())));
+	}
+
+	@Test
+	public void testForName() {
+		assertEquals(StandardHashAlgorithm.XXHASH_64, HashAlgorithm.forName("xxh64"));
+		assertEquals(StandardHashAlgorithm.SHA_256, HashAlgorithm.forName("SHA-256"));
+		assertThrows(IllegalArgumentException.class, () -> HashAlgorithm.forName("nonexistent"));
+	}
+
+}
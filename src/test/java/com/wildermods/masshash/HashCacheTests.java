@@ -0,0 +1,97 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class HashCacheTests {
+
+	private static final FileTime PAST = FileTime.from(Instant.now().minus(1, ChronoUnit.DAYS));
+
+	@TempDir
+	Path dir;
+
+	private Path write(String name, String contents) throws IOException {
+		Path file = Files.writeString(dir.resolve("tree").resolve(name), contents);
+		Files.setLastModifiedTime(file, PAST);
+		return file;
+	}
+
+	private Hasher hash(HasherOptions options) throws IOException {
+		return new Hasher(Files.walk(dir.resolve("tree")), 2, options, (p) -> true, (f, b) -> {}) {};
+	}
+
+	@Test
+	public void testCache() throws IOException {
+		Files.createDirectories(dir.resolve("tree"));
+		Path a = write("a.txt", "aaaa");
+		write("b.txt", "bbbb");
+		Path cacheFile = dir.resolve("hashes.cache");
+
+		HashCache cache = HashCache.load(cacheFile, StandardHashAlgorithm.SHA_1);
+		assertEquals(0, cache.size());
+		Hasher first = hash(HasherOptions.HASH_ONLY.withCache(cache));
+		assertEquals(2, cache.size());
+		cache.save();
+
+		//Change a file without changing its size or modification time, only a verifying run can see it
+		Files.writeString(a, "cccc");
+		Files.setLastModifiedTime(a, PAST);
+
+		cache = HashCache.load(cacheFile, StandardHashAlgorithm.SHA_1);
+		assertEquals(2, cache.size());
+		Hasher trusted = hash(HasherOptions.HASH_ONLY.withCache(cache));
+		assertEquals(first.results(), trusted.results());
+
+		Hasher verified = hash(HasherOptions.HASH_ONLY.withCache(cache).withCacheVerification(true));
+		assertTrue(verified.results().containsKey(Hash.of(new Blob("cccc".getBytes()).hash())));
+		assertEquals(verified.results(), hash(HasherOptions.HASH_ONLY.withCache(cache)).results());
+	}
+
+	@Test
+	public void testInvalidCache() throws IOException {
+		Files.createDirectories(dir.resolve("tree"));
+		write("a.txt", "aaaa");
+		Path cacheFile = dir.resolve("hashes.cache");
+
+		HashCache cache = HashCache.load(cacheFile, StandardHashAlgorithm.SHA_1);
+		hash(HasherOptions.HASH_ONLY.withCache(cache));
+		cache.save();
+		assertEquals(0, HashCache.load(cacheFile, StandardHashAlgorithm.XXHASH_64).size());
+		assertThrows(IllegalArgumentException.class, () -> hash(HasherOptions.HASH_ONLY.withAlgorithm(StandardHashAlgorithm.XXHASH_64).withCache(cache)));
+
+		Files.write(cacheFile, new byte[] {1, 2, 3});
+		assertEquals(0, HashCache.load(cacheFile, StandardHashAlgorithm.SHA_1).size());
+	}
+
+	@Test
+	public void testRecentAndPruned() throws IOException {
+		Files.createDirectories(dir.resolve("tree"));
+		write("a.txt", "aaaa");
+		Path recent = Files.writeString(dir.resolve("tree").resolve("recent.txt"), "recent");
+		Path cacheFile = dir.resolve("hashes.cache");
+
+		HashCache cache = HashCache.load(cacheFile, StandardHashAlgorithm.SHA_1);
+		hash(HasherOptions.HASH_ONLY.withCache(cache));
+		//Files modified moments ago may still change without their modification time changing
+		assertEquals(1, cache.size());
+		cache.save();
+
+		Files.setLastModifiedTime(recent, PAST);
+		Files.delete(dir.resolve("tree").resolve("a.txt"));
+		cache = HashCache.load(cacheFile, StandardHashAlgorithm.SHA_1);
+		hash(HasherOptions.HASH_ONLY.withCache(cache));
+		assertEquals(2, cache.size());
+		cache.prune();
+		assertEquals(1, cache.size());
+	}
+
+}
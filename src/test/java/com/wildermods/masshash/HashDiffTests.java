@@ -0,0 +1,181 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.TreeMultimap;
+import com.wildermods.masshash.HashDiff.Change;
+import com.wildermods.masshash.HashDiff.Kind;
+
+public class HashDiffTests {
+
+	@TempDir
+	Path dir;
+
+	private static Hash hash(String contents) {
+		return StandardHashAlgorithm.SHA_1.hash(contents.getBytes());
+	}
+
+	private static SetMultimap<Hash, Path> results(String... pathsAndContents) {
+		TreeMultimap<Hash, Path> results = TreeMultimap.create(Hash::compare, Ordering.natural());
+		for(int i = 0; i < pathsAndContents.length; i += 2) {
+			results.put(hash(pathsAndContents[i + 1]), Paths.get(pathsAndContents[i]));
+		}
+		return results;
+	}
+
+	@Test
+	public void testKinds() throws IOException {
+		SetMultimap<Hash, Path> before = results(
+			"same", "same",
+			"modified", "old",
+			"removed", "removed",
+			"moved", "moving",
+			"original", "copied"
+		);
+		SetMultimap<Hash, Path> after = results(
+			"same", "same",
+			"modified", "new",
+			"added", "added",
+			"elsewhere", "moving",
+			"original", "copied",
+			"copy", "copied"
+		);
+		HashDiff diff = HashDiff.of(before, after);
+		assertEquals(List.of(
+			new Change(Kind.ADDED, Paths.get("added"), null, null, hash("added")),
+			new Change(Kind.DUPLICATED, Paths.get("copy"), Paths.get("original"), null, hash("copied")),
+			new Change(Kind.MOVED, Paths.get("elsewhere"), Paths.get("moved"), null, hash("moving")),
+			new Change(Kind.MODIFIED, Paths.get("modified"), null, hash("old"), hash("new")),
+			new Change(Kind.REMOVED, Paths.get("removed"), null, hash("removed"), null)
+		), diff.changes());
+		assertEquals(1, diff.changes(Kind.MOVED).size());
+		assertTrue(HashDiff.of(after, after).isEmpty());
+
+		//Unsorted multimaps give the same result
+		assertEquals(diff.changes(), HashDiff.of(HashMultimap.create(before), HashMultimap.create(after)).changes());
+
+		//And so do manifests
+		Path beforeFile = dir.resolve("before.manifest");
+		Path afterFile = dir.resolve("after.manifest");
+		Manifest.write(before, beforeFile);
+		Manifest.write(after, afterFile);
+		assertEquals(diff.changes(), HashDiff.of(Manifest.open(beforeFile), Manifest.open(afterFile)).changes());
+
+		SetMultimap<Hash, Path> otherAlgorithm = HashMultimap.create();
+		otherAlgorithm.put(StandardHashAlgorithm.XXHASH_64.hash(new byte[1]), Paths.get("x"));
+		assertThrows(IllegalArgumentException.class, () -> HashDiff.of(before, otherAlgorithm));
+	}
+
+	@Test
+	public void testDuplicateSource() throws IOException {
+		//"a" moves away, so copies name "b", which still holds the contents, as their source
+		SetMultimap<Hash, Path> before = results("a", "x", "b", "x", "m", "y");
+		SetMultimap<Hash, Path> after = results("b", "x", "c", "x", "d", "x", "n", "y", "o", "y");
+		List<Change> expected = List.of(
+			new Change(Kind.MOVED, Paths.get("c"), Paths.get("a"), null, hash("x")),
+			new Change(Kind.DUPLICATED, Paths.get("d"), Paths.get("b"), null, hash("x")),
+			new Change(Kind.MOVED, Paths.get("n"), Paths.get("m"), null, hash("y")),
+			//Without a surviving path, the copy names the path it was moved from
+			new Change(Kind.DUPLICATED, Paths.get("o"), Paths.get("m"), null, hash("y"))
+		);
+		assertEquals(expected, HashDiff.of(before, after).changes());
+
+		Path beforeFile = dir.resolve("before.manifest");
+		Path afterFile = dir.resolve("after.manifest");
+		Manifest.write(before, beforeFile);
+		Manifest.write(after, afterFile);
+		assertEquals(expected, HashDiff.of(Manifest.open(beforeFile), Manifest.open(afterFile)).changes());
+	}
+
+	@Test
+	public void testLarge() throws IOException {
+		//Enough entries to be split into several ranges
+		Random random = new Random(0);
+		Map<Path, Hash> before = new HashMap<>();
+		Map<Path, Hash> after = new HashMap<>();
+		for(int i = 0; i < 50_000; i++) {
+			Path path = Paths.get("dir" + (i % 97), "file" + i);
+			Hash hash = hash("" + random.nextInt(30_000));
+			switch(random.nextInt(10)) {
+				case 0: before.put(path, hash); break;
+				case 1: after.put(path, hash); break;
+				case 2: before.put(path, hash); after.put(path, hash("" + random.nextInt(30_000))); break;
+				default: before.put(path, hash); after.put(path, hash);
+			}
+		}
+		HashDiff diff = HashDiff.of(toResults(before), toResults(after));
+
+		//Manifests are joined in place, over the same ranges
+		Path beforeFile = dir.resolve("before.manifest");
+		Path afterFile = dir.resolve("after.manifest");
+		Manifest.write(toResults(before), beforeFile);
+		Manifest.write(toResults(after), afterFile);
+		assertEquals(diff.changes(), HashDiff.of(Manifest.open(beforeFile), Manifest.open(afterFile)).changes());
+
+		Set<Path> seen = new HashSet<>();
+		Set<Path> sources = new HashSet<>();
+		Change previous = null;
+		for(Change change : diff.changes()) {
+			if(previous != null) {
+				assertTrue(previous.path().compareTo(change.path()) <= 0, "Changes should be sorted by path");
+			}
+			previous = change;
+			assertTrue(seen.add(change.path()), "Each path should change at most once");
+			switch(change.kind()) {
+				case MODIFIED:
+					assertEquals(before.get(change.path()), change.before());
+					assertEquals(after.get(change.path()), change.after());
+					assertFalse(change.before().hashEquals(change.after()));
+					break;
+				case REMOVED:
+					assertFalse(after.containsKey(change.path()));
+					assertEquals(before.get(change.path()), change.before());
+					break;
+				case MOVED:
+					assertFalse(after.containsKey(change.source()));
+					assertTrue(sources.add(change.source()), "A path can only be moved once");
+					//Fall through
+				case DUPLICATED:
+					assertTrue(before.get(change.source()).hashEquals(change.after()));
+					//Fall through
+				case ADDED:
+					assertFalse(before.containsKey(change.path()));
+					assertEquals(after.get(change.path()), change.after());
+					break;
+			}
+		}
+		for(Map.Entry<Path, Hash> entry : before.entrySet()) {
+			Hash now = after.get(entry.getKey());
+			boolean changed = now == null || !now.hashEquals(entry.getValue());
+			assertEquals(changed, seen.contains(entry.getKey()) || sources.contains(entry.getKey()), entry.getKey().toString());
+		}
+		for(Path path : after.keySet()) {
+			if(!before.containsKey(path)) {
+				assertTrue(seen.contains(path));
+			}
+		}
+	}
+
+	private static SetMultimap<Hash, Path> toResults(Map<Path, Hash> byPath) {
+		TreeMultimap<Hash, Path> results = TreeMultimap.create(Hash::compare, Ordering.natural());
+		byPath.forEach((path, hash) -> results.put(hash, path));
+		return results;
+	}
+
+}
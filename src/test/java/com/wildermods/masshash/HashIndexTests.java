@@ -0,0 +1,96 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.TreeMultimap;
+
+public class HashIndexTests {
+
+	private static final Path sourceDir = Paths.get("./src", "test", "resources");
+
+	@Test
+	public void testMatchesMultimap() {
+		Random random = new Random(0);
+		for(StandardHashAlgorithm algorithm : StandardHashAlgorithm.values()) {
+			TreeMultimap<Hash, Path> expected = TreeMultimap.create(Hash::compare, Ordering.natural());
+			HashIndex.Builder builder = HashIndex.builder(algorithm);
+			for(int i = 0; i < 5000; i++) {
+				//Plenty of shared hashes, and some files under more than one hash
+				Hash hash = algorithm.hash(new byte[] {(byte)random.nextInt(200), (byte)random.nextInt(10)});
+				Path path = Paths.get("dir" + random.nextInt(50), "file" + random.nextInt(100));
+				expected.put(hash, path);
+				builder.add(hash, path);
+				if(i % 10 == 0) {
+					builder.add(hash, path);
+				}
+			}
+			HashIndex index = builder.build();
+			SetMultimap<Hash, Path> view = index.asMultimap();
+			assertEquals(expected.size(), index.size());
+			assertEquals(expected.keySet().size(), index.hashCount());
+			assertEquals(expected, view);
+			assertEquals(view, expected);
+			assertEquals(expected.hashCode(), view.hashCode());
+			assertEquals(new ArrayList<>(expected.entries()), new ArrayList<>(view.entries()));
+			assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(view.keySet()));
+			assertEquals(expected.keys(), view.keys());
+			for(Map.Entry<Hash, Path> entry : expected.entries()) {
+				assertTrue(view.containsEntry(entry.getKey(), entry.getValue()));
+				assertTrue(view.containsEntry(Hash.of(entry.getKey().hash(), algorithm), entry.getValue()));
+				assertEquals(expected.get(entry.getKey()), index.get(entry.getKey()));
+				assertTrue(view.containsValue(entry.getValue()));
+			}
+			Hash missing = algorithm.hash("missing".getBytes());
+			assertFalse(view.containsKey(missing));
+			assertTrue(view.get(missing).isEmpty());
+			assertFalse(view.containsValue(Paths.get("missing")));
+			assertThrows(UnsupportedOperationException.class, () -> view.put(missing, Paths.get("missing")));
+			assertSame(index, HashIndex.of(view));
+		}
+	}
+
+	@Test
+	public void testSharedPrefixes() {
+		//Digests that only differ after their first 32 bits, added in reverse order
+		Random random = new Random(1);
+		TreeMultimap<Hash, Path> expected = TreeMultimap.create(Hash::compare, Ordering.natural());
+		HashIndex.Builder builder = HashIndex.builder(StandardHashAlgorithm.SHA_1);
+		for(int i = 300; i > 0; i--) {
+			byte[] digest = new byte[20];
+			digest[0] = (byte)(i % 3);
+			digest[19] = (byte)random.nextInt(256);
+			digest[4] = (byte)(i % 7);
+			Hash hash = BinaryHash.of(StandardHashAlgorithm.SHA_1, digest);
+			Path path = Paths.get("file" + random.nextInt(100));
+			expected.put(hash, path);
+			builder.add(hash, path);
+		}
+		assertEquals(new ArrayList<>(expected.entries()), new ArrayList<>(builder.build().asMultimap().entries()));
+	}
+
+	@Test
+	public void testIndexedResults() throws IOException {
+		Hasher sorted = new Hasher(Files.walk(sourceDir)) {};
+		Hasher indexed = new Hasher(Files.walk(sourceDir), Runtime.getRuntime().availableProcessors(), HasherOptions.HASH_ONLY.withIndexedResults(true), (p) -> true, (f, b) -> {}) {};
+		assertEquals(sorted.results(), indexed.results());
+		assertEquals(sorted.results(), HashIndex.of(sorted.results()).asMultimap());
+		assertEquals(List.copyOf(sorted.results().entries()), List.copyOf(indexed.results().entries()));
+		assertTrue(HashIndex.builder(StandardHashAlgorithm.SHA_1).build().asMultimap().isEmpty());
+		assertTrue(HashIndex.of(Multimaps.synchronizedSetMultimap(TreeMultimap.create(Hash::compare, Ordering.natural()))).asMultimap().isEmpty());
+	}
+
+}
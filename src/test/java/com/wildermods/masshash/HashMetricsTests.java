@@ -0,0 +1,91 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+public class HashMetricsTests {
+
+	private static final Path sourceDir = Paths.get("./src", "test", "resources");
+
+	@Test
+	public void testListener() throws IOException {
+		final Set<Path> hashed = ConcurrentHashMap.newKeySet();
+		final AtomicLong bytes = new AtomicLong();
+		final List<HashMetrics> completed = new ArrayList<>();
+		HashListener listener = new HashListener() {
+			@Override
+			public void fileHashed(Path file, long size, long readNanos, long digestNanos) {
+				assertTrue(hashed.add(file));
+				assertTrue(readNanos >= 0 && digestNanos >= 0);
+				bytes.addAndGet(size);
+			}
+			@Override
+			public void completed(HashMetrics metrics) {
+				completed.add(metrics);
+			}
+		};
+
+		for(HasherOptions options : new HasherOptions[] {HasherOptions.DEFAULT, HasherOptions.HASH_ONLY, HasherOptions.HASH_ONLY.withMappedThreshold(0)}) {
+			hashed.clear();
+			bytes.set(0);
+			completed.clear();
+			Set<Path> files;
+			try(Stream<Path> walk = Files.walk(sourceDir)) {
+				files = walk.filter(Files::isRegularFile).collect(Collectors.toSet());
+			}
+			Hasher hasher;
+			try(Stream<Path> walk = Files.walk(sourceDir)) {
+				hasher = new Hasher(walk, 4, options.withListener(listener), p -> true, (p, b) -> {}) {};
+			}
+			HashMetrics metrics = hasher.metrics();
+			assertEquals(List.of(metrics), completed);
+			assertEquals(files, hashed);
+			assertEquals(files.size(), metrics.files());
+			assertEquals(bytes.get(), metrics.bytes());
+			assertEquals(files.size(), metrics.readLatency().count());
+			assertEquals(files.size(), metrics.digestLatency().count());
+			assertEquals(0, metrics.cachedFiles());
+			assertTrue(metrics.filesPerSecond() > 0);
+			assertTrue(metrics.maxQueueDepth() > 0);
+			assertFalse(metrics.busyNanos().isEmpty());
+			assertEquals(metrics.busyNanos().keySet(), metrics.idleNanos().keySet());
+			assertTrue(metrics.digestLatency().percentileNanos(50) <= metrics.digestLatency().percentileNanos(100));
+			assertEquals(metrics.digestLatency().maxNanos(), metrics.digestLatency().percentileNanos(100));
+			if(options.shouldMap(0)) {
+				assertEquals(0, metrics.readLatency().totalNanos());
+			}
+			//The run is over, so the metrics no longer change
+			assertEquals(metrics.elapsedNanos(), metrics.elapsedNanos());
+		}
+	}
+
+	@Test
+	public void testHistogram() {
+		HashMetrics metrics = new HashMetrics();
+		for(int i = 1; i <= 100; i++) {
+			metrics.fileHashed(1, i * 1000, 0);
+		}
+		HashMetrics.Histogram read = metrics.readLatency();
+		assertEquals(100, read.count());
+		assertEquals(100_000, read.maxNanos());
+		assertEquals(50_500d, read.meanNanos());
+		long median = read.percentileNanos(50);
+		assertTrue(median >= 50_000 && median < 100_000, "Median bound " + median + " should be within a factor of 2");
+		assertEquals(0, metrics.digestLatency().percentileNanos(99));
+		assertThrows(IllegalArgumentException.class, () -> read.percentileNanos(101));
+	}
+
+}
@@ -0,0 +1,126 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+
+public class HashPublisherTests {
+
+	private static final Path sourceDir = Paths.get("./src", "test", "resources");
+
+	/**
+	 * Requests one item at a time, and records everything it receives.
+	 */
+	private static class Collector implements Flow.Subscriber<HashPublisher.HashedFile> {
+
+		private final List<HashPublisher.HashedFile> items = new CopyOnWriteArrayList<>();
+		private final CompletableFuture<List<HashPublisher.HashedFile>> done = new CompletableFuture<>();
+		private final CountDownLatch first = new CountDownLatch(1);
+		private final boolean autoRequest;
+		private volatile Flow.Subscription subscription;
+
+		private Collector(boolean autoRequest) {
+			this.autoRequest = autoRequest;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(1);
+		}
+
+		@Override
+		public void onNext(HashPublisher.HashedFile item) {
+			items.add(item);
+			first.countDown();
+			if(autoRequest) {
+				subscription.request(1);
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			done.completeExceptionally(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			done.complete(items);
+		}
+
+	}
+
+	@Test
+	public void testPublishesEveryFile() throws Exception {
+		SetMultimap<Hash, Path> expected;
+		try(Stream<Path> files = Files.walk(sourceDir)) {
+			expected = new Hasher(files) {}.results();
+		}
+		Collector collector = new Collector(true);
+		HashPublisher.of(Files.walk(sourceDir)).subscribe(collector);
+		SetMultimap<Hash, Path> published = HashMultimap.create();
+		for(HashPublisher.HashedFile item : collector.done.get(30, TimeUnit.SECONDS)) {
+			published.put(item.hash(), item.path());
+		}
+		synchronized(expected) {
+			assertEquals(HashMultimap.create(expected), published);
+		}
+
+		Collector second = new Collector(true);
+		HashPublisher publisher = HashPublisher.of(Stream.empty());
+		publisher.subscribe(second);
+		assertTrue(second.done.get(30, TimeUnit.SECONDS).isEmpty());
+		Collector third = new Collector(true);
+		publisher.subscribe(third);
+		assertThrows(Exception.class, () -> third.done.get(30, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testBackpressure() throws Exception {
+		final AtomicInteger hashed = new AtomicInteger();
+		final long total;
+		try(Stream<Path> files = Files.walk(sourceDir)) {
+			total = files.filter(Files::isRegularFile).count();
+		}
+		HasherOptions options = HasherOptions.HASH_ONLY.withListener(new HashListener() {
+			@Override
+			public void fileHashed(Path file, long size, long readNanos, long digestNanos) {
+				hashed.incrementAndGet();
+			}
+		});
+		Collector collector = new Collector(false);
+		HashPublisher.of(Files.walk(sourceDir), 1, options, p -> true, 1).subscribe(collector);
+
+		//Only one item is requested, so hashing stalls once the buffer is full
+		assertTrue(collector.first.await(30, TimeUnit.SECONDS));
+		Thread.sleep(500);
+		assertEquals(1, collector.items.size());
+		assertTrue(hashed.get() < total, "Hashed " + hashed.get() + " of " + total + " files without demand");
+
+		//Resume, and everything arrives
+		collector.subscription.request(Long.MAX_VALUE);
+		Map<Path, Hash> byPath = new HashMap<>();
+		for(HashPublisher.HashedFile item : collector.done.get(30, TimeUnit.SECONDS)) {
+			assertNull(byPath.put(item.path(), item.hash()));
+		}
+		assertEquals(total, byPath.size());
+	}
+
+}
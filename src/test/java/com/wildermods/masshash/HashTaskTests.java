@@ -0,0 +1,79 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.SetMultimap;
+
+public class HashTaskTests {
+
+	private static final Path sourceDir = Paths.get("./src", "test", "resources");
+
+	@Test
+	public void testMatchesHasher() throws Exception {
+		SetMultimap<Hash, Path> expected;
+		try(Stream<Path> files = Files.walk(sourceDir)) {
+			expected = new Hasher(files) {}.results();
+		}
+		AtomicInteger callbacks = new AtomicInteger();
+		HashTask task = HashTask.start(Files.walk(sourceDir), 4, HasherOptions.HASH_ONLY, p -> true, null, progress -> {
+			assertTrue(progress.files() <= progress.totalFiles());
+			callbacks.incrementAndGet();
+		});
+		SetMultimap<Hash, Path> results = task.results().get(30, TimeUnit.SECONDS);
+		assertEquals(expected, results);
+
+		HashTask.Progress progress = task.progress();
+		assertTrue(progress.walked());
+		assertEquals(expected.size(), progress.files());
+		assertEquals(progress.totalFiles(), progress.files());
+		assertEquals(progress.totalBytes(), progress.bytes());
+		assertEquals(1d, progress.fraction());
+		//Once per file, and once when the walk completed
+		assertEquals(expected.size() + 1, callbacks.get());
+		assertEquals(expected.size(), task.metrics().files());
+		assertFalse(task.isCancelled());
+		assertFalse(task.cancel());
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch interrupted = new CountDownLatch(1);
+		HashTask task = HashTask.start(Files.walk(sourceDir), 2, HasherOptions.DEFAULT, p -> true, (path, blob) -> {
+			started.countDown();
+			try {
+				//Hold up the hashing threads until the task is cancelled
+				Thread.sleep(60_000);
+			}
+			catch(InterruptedException e) {
+				interrupted.countDown();
+			}
+		}, null);
+		assertTrue(started.await(30, TimeUnit.SECONDS));
+		assertTrue(task.cancel());
+		assertTrue(task.isCancelled());
+		assertTrue(interrupted.await(30, TimeUnit.SECONDS), "Hashing threads should be interrupted");
+		assertThrows(CancellationException.class, () -> task.results().get());
+	}
+
+	@Test
+	public void testNoFiles() throws IOException {
+		HashTask task = HashTask.start(Files.walk(sourceDir), 2, HasherOptions.HASH_ONLY, p -> false, null, null);
+		ExecutionException e = assertThrows(ExecutionException.class, () -> task.results().get(30, TimeUnit.SECONDS));
+		assertInstanceOf(IllegalArgumentException.class, e.getCause());
+	}
+
+}
@@ -0,0 +1,112 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class HashWatcherTests {
+
+	@TempDir
+	Path dir;
+
+	private final BlockingQueue<Set<Path>> refreshes = new LinkedBlockingQueue<>();
+
+	/**
+	 * Waits until all of the given paths have been refreshed.
+	 */
+	private void awaitRefresh(Path... paths) throws InterruptedException {
+		Set<Path> remaining = new HashSet<>(Set.of(paths));
+		while(!remaining.isEmpty()) {
+			Set<Path> refreshed = refreshes.poll(30, TimeUnit.SECONDS);
+			assertNotNull(refreshed, "Timed out waiting for " + remaining);
+			remaining.removeAll(refreshed);
+		}
+	}
+
+	private static Hash hash(String contents) {
+		return StandardHashAlgorithm.SHA_1.hash(contents.getBytes());
+	}
+
+	@Test
+	public void testWatch() throws IOException, InterruptedException {
+		Path a = Files.writeString(dir.resolve("a.txt"), "aaaa");
+		Path b = Files.writeString(dir.resolve("b.txt"), "bbbb");
+
+		try(HashWatcher watcher = HashWatcher.watch(dir, 2, HasherOptions.HASH_ONLY, p -> !p.toString().endsWith(".tmp"), Duration.ofMillis(50), refreshes::add)) {
+			assertEquals(2, watcher.results().size());
+			assertTrue(watcher.results().containsEntry(hash("aaaa"), a));
+			assertTrue(hash("bbbb").hashEquals(watcher.hash(b)));
+
+			//A burst of writes to the same file is applied as its final contents
+			for(int i = 0; i < 10; i++) {
+				Files.writeString(a, "changed " + i);
+			}
+			while(!hash("changed 9").hashEquals(watcher.hash(a))) {
+				awaitRefresh(a);
+			}
+			assertFalse(watcher.results().containsKey(hash("aaaa")));
+
+			//New directories are watched, along with files written before they were registered
+			Path sub = Files.createDirectories(dir.resolve("sub").resolve("deeper"));
+			Path c = Files.writeString(sub.resolve("c.txt"), "cccc");
+			awaitRefresh(c);
+			Path d = Files.writeString(sub.resolve("d.txt"), "dddd");
+			awaitRefresh(d);
+			assertTrue(watcher.results().containsEntry(hash("dddd"), d));
+
+			//Filtered files are ignored
+			Files.writeString(dir.resolve("ignored.tmp"), "tmp");
+			Files.delete(b);
+			awaitRefresh(b);
+			assertNull(watcher.hash(b));
+			assertNull(watcher.hash(dir.resolve("ignored.tmp")));
+
+			//Deleting a directory removes everything within it
+			Files.delete(c);
+			Files.delete(d);
+			Files.delete(sub);
+			Files.delete(sub.getParent());
+			awaitRefresh(c, d);
+			assertEquals(1, watcher.results().size());
+			assertTrue(watcher.results().containsEntry(hash("changed 9"), a));
+		}
+	}
+
+	@Test
+	public void testRemoveDirectory() throws IOException, InterruptedException {
+		Path sub = Files.createDirectories(dir.resolve("sub"));
+		Path inside = Files.writeString(sub.resolve("inside.txt"), "inside");
+		//Siblings that share the directory's name as a prefix are not under it
+		Path sibling = Files.writeString(dir.resolve("sub.txt"), "sibling");
+		Path similar = Files.writeString(Files.createDirectories(dir.resolve("sub-2")).resolve("similar.txt"), "similar");
+
+		try(HashWatcher watcher = HashWatcher.watch(dir, 1, HasherOptions.HASH_ONLY, p -> true, Duration.ofMillis(50), refreshes::add)) {
+			assertEquals(3, watcher.results().size());
+			Files.delete(inside);
+			Files.delete(sub);
+			awaitRefresh(inside);
+			assertNull(watcher.hash(inside));
+			assertEquals(2, watcher.results().size());
+			assertTrue(hash("sibling").hashEquals(watcher.hash(sibling)));
+			assertTrue(hash("similar").hashEquals(watcher.hash(similar)));
+
+			//Nothing changes once the watcher is closed
+			watcher.close();
+			Files.writeString(sibling, "changed");
+			assertNull(refreshes.poll(300, TimeUnit.MILLISECONDS));
+			assertTrue(hash("sibling").hashEquals(watcher.hash(sibling)));
+		}
+	}
+
+}
@@ -4,8 +4,12 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
@@ -49,4 +53,59 @@ public class HasherTests {
 		}) {};
 	}
 	
+	@Test
+	@Order(3)
+	void mappedTest() throws IOException {
+		System.out.println("Memory mapped test:");
+		Hasher mapped = new Hasher(sources, Runtime.getRuntime().availableProcessors(), HasherOptions.HASH_ONLY.withMappedThreshold(0), (p) -> true, (f, b) -> {}) {};
+		assertEquals(hasher.results(), mapped.results());
+	}
+	
+	@Test
+	@Order(4)
+	void algorithmTest() throws IOException {
+		System.out.println("Algorithm test:");
+		Hasher xxHasher = new Hasher(sources, Runtime.getRuntime().availableProcessors(), HasherOptions.DEFAULT.withAlgorithm(StandardHashAlgorithm.XXHASH_64), (p) -> true, (f, b) -> {
+			try {
+				b.verify();
+			} catch (IntegrityException e) {
+				throw new RuntimeException(e);
+			}
+		}) {};
+		assertEquals(hasher.results().size(), xxHasher.results().size());
+		for(Hash hash : xxHasher.results().keySet()) {
+			assertEquals(StandardHashAlgorithm.XXHASH_64, hash.algorithm());
+		}
+	}
+	
+	@Test
+	@Order(5)
+	void ioThreadsTest() throws IOException {
+		System.out.println("I/O threads test:");
+		Hasher ioHasher = new Hasher(sources, 2, HasherOptions.HASH_ONLY.withIoThreads(16), (p) -> true, (f, b) -> {}) {};
+		assertEquals(hasher.results(), ioHasher.results());
+	}
+	
+	@Test
+	@Order(6)
+	void pipelineTest() throws IOException {
+		System.out.println("Pipeline test:");
+		//Repeat the sources until there are several windows worth of files, with a single
+		//thread so the pipeline fills up and has to apply backpressure
+		List<Path> files = sources.toList();
+		int repeats = HashPipeline.WINDOW_SIZE * 4 / files.size() + 1;
+		Stream<Path> repeated = IntStream.range(0, repeats).boxed().flatMap(i -> files.stream());
+		Hasher pipelined = new Hasher(repeated, 1, HasherOptions.HASH_ONLY, (p) -> true, (f, b) -> {}) {};
+		assertEquals(hasher.results(), pipelined.results());
+	}
+	
+	@Test
+	@Order(7)
+	void nullConsumerTest() throws IOException {
+		System.out.println("Null consumer test:");
+		Hasher withoutConsumer = new Hasher(sources, 2, HasherOptions.DEFAULT, (p) -> true, null) {};
+		assertEquals(hasher.results(), withoutConsumer.results());
+		assertEquals(hasher.results(), new Hasher(Files.walk(sourceDir), (p) -> true, null) {}.results());
+	}
+	
 }
@@ -0,0 +1,64 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+
+public class ManifestTests {
+
+	private static final Path sourceDir = Paths.get("./src", "test", "resources");
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		Hasher hasher = new Hasher(Files.walk(sourceDir), (f, b) -> f.set(sourceDir.relativize(f.get()))) {};
+		SetMultimap<Hash, Path> results = hasher.results();
+		Path file = dir.resolve("test.manifest");
+		Manifest.write(results, file);
+
+		Manifest manifest = Manifest.open(file);
+		assertEquals(StandardHashAlgorithm.SHA_1, manifest.algorithm());
+		assertEquals(results.size(), manifest.size());
+		for(Map.Entry<Hash, Path> entry : results.entries()) {
+			assertTrue(manifest.contains(entry.getKey()));
+			assertEquals(results.get(entry.getKey()), manifest.paths(entry.getKey()));
+			assertEquals(entry.getKey(), manifest.hash(entry.getValue()));
+		}
+		assertEquals(results, manifest.toMultimap());
+
+		Hash missing = StandardHashAlgorithm.SHA_1.hash("not in the manifest".getBytes());
+		assertFalse(manifest.contains(missing));
+		assertTrue(manifest.paths(missing).isEmpty());
+		assertFalse(manifest.contains(StandardHashAlgorithm.XXHASH_64.hash(new byte[0])));
+		assertNull(manifest.hash(Paths.get("missing.txt")));
+	}
+
+	@Test
+	public void testEmptyAndInvalid() throws IOException {
+		Path file = dir.resolve("empty.manifest");
+		Manifest.write(HashMultimap.create(), file);
+		Manifest manifest = Manifest.open(file);
+		assertEquals(0, manifest.size());
+		assertNull(manifest.hash(Paths.get("a")));
+		assertFalse(manifest.contains(StandardHashAlgorithm.SHA_1.hash(new byte[0])));
+
+		Files.write(file, Arrays.copyOf(Files.readAllBytes(file), 10));
+		assertThrows(IOException.class, () -> Manifest.open(file));
+		Files.write(file, new byte[64]);
+		assertThrows(IOException.class, () -> Manifest.open(file));
+	}
+
+}
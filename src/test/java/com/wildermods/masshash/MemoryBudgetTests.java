@@ -0,0 +1,99 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MemoryBudgetTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void testBudget() throws Exception {
+		MemoryBudget budget = MemoryBudget.of(100);
+		assertTrue(budget.fits(100));
+		assertFalse(budget.fits(101));
+		assertTrue(MemoryBudget.of(0).fits(Long.MAX_VALUE));
+		//Unknown sizes only fit when there is no limit
+		assertFalse(budget.fits(-1));
+		assertTrue(MemoryBudget.of(0).fits(-1));
+
+		budget.acquire(60);
+		CountDownLatch acquired = new CountDownLatch(1);
+		Thread waiting = new Thread(() -> {
+			try {
+				budget.acquire(60);
+				acquired.countDown();
+			}
+			catch(InterruptedIOException e) {
+				throw new AssertionError(e);
+			}
+		});
+		waiting.start();
+		assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+		budget.release(60);
+		assertTrue(acquired.await(5, TimeUnit.SECONDS));
+		waiting.join();
+
+		//A reservation that gives up while waiting does not hold up the ones behind it
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread interrupted = new Thread(() -> {
+			try {
+				budget.acquire(100);
+			}
+			catch(InterruptedIOException e) {
+				failure.set(e);
+			}
+		});
+		interrupted.start();
+		Thread.sleep(50);
+		interrupted.interrupt();
+		interrupted.join();
+		assertInstanceOf(InterruptedIOException.class, failure.get());
+		budget.acquire(40);
+		budget.release(100);
+	}
+
+	@Test
+	public void testHasherBudget() throws IOException {
+		for(int i = 0; i < 20; i++) {
+			Files.write(dir.resolve("file" + i), new byte[1000 + i]);
+		}
+		Files.write(dir.resolve("huge"), new byte[10_000]);
+
+		final long limit = 3_000;
+		final AtomicLong held = new AtomicLong();
+		final AtomicLong maxHeld = new AtomicLong();
+		Hasher hasher = new Hasher(Files.walk(dir), 4, HasherOptions.DEFAULT.withMemoryBudget(limit), p -> true, (path, blob) -> {
+			if(path.get().getFileName().toString().equals("huge")) {
+				//Larger than the whole budget, so streamed
+				assertTrue(blob.isTransient());
+				return;
+			}
+			long now = held.addAndGet(blob.data().length);
+			maxHeld.accumulateAndGet(now, Math::max);
+			try {
+				Thread.sleep(5);
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			held.addAndGet(-blob.data().length);
+		}) {};
+		assertEquals(21, hasher.results().size());
+		assertTrue(maxHeld.get() <= limit, "Held " + maxHeld.get() + " bytes at once");
+		assertTrue(maxHeld.get() > 0);
+	}
+
+}
@@ -0,0 +1,87 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MerkleTreeTests {
+
+	@TempDir
+	Path dir;
+
+	private void write(Path root, String name, String contents) throws IOException {
+		Path file = root.resolve(name);
+		Files.createDirectories(file.getParent());
+		Files.writeString(file, contents);
+	}
+
+	private Path install(String name) throws IOException {
+		Path root = dir.resolve(name);
+		write(root, "readme.txt", "readme");
+		write(root, "assets/a.png", "a");
+		write(root, "assets/b.png", "b");
+		write(root, "assets/sounds/c.ogg", "c");
+		write(root, "mods/mod.jar", "mod");
+		return root;
+	}
+
+	private MerkleTree tree(Path root) throws IOException {
+		return MerkleTree.of(new Hasher(Files.walk(root)) {}.results(), root);
+	}
+
+	@Test
+	public void testMatchingTrees() throws IOException {
+		MerkleTree a = tree(install("a"));
+		MerkleTree b = tree(install("b"));
+		assertTrue(a.matches(b));
+		assertEquals(a.hash(), b.hash());
+		assertTrue(a.diff(b).isEmpty());
+
+		assertTrue(a.root().isDirectory());
+		assertEquals(StandardHashAlgorithm.SHA_1.hash("c".getBytes()), a.get(Paths.get("assets", "sounds", "c.ogg")).hash());
+		assertEquals(3, a.get(Paths.get("assets")).children().size());
+		assertNull(a.get(Paths.get("assets", "missing.png")));
+		assertNull(a.get(Paths.get("readme.txt", "child")));
+	}
+
+	@Test
+	public void testDiff() throws IOException {
+		Path aRoot = install("a");
+		Path bRoot = install("b");
+		write(bRoot, "assets/sounds/c.ogg", "changed");
+		write(bRoot, "assets/new/d.png", "d");
+		Files.delete(bRoot.resolve("mods/mod.jar"));
+		Files.delete(bRoot.resolve("mods"));
+		write(bRoot, "mods", "now a file");
+
+		MerkleTree a = tree(aRoot);
+		MerkleTree b = tree(bRoot);
+		assertFalse(a.matches(b));
+		assertNotEquals(a.get(Paths.get("assets")).hash(), b.get(Paths.get("assets")).hash());
+		assertEquals(a.get(Paths.get("readme.txt")).hash(), b.get(Paths.get("readme.txt")).hash());
+
+		Set<Path> expected = Set.of(
+			Paths.get("assets", "sounds", "c.ogg"),
+			Paths.get("assets", "new", "d.png"),
+			Paths.get("mods", "mod.jar"),
+			Paths.get("mods")
+		);
+		assertEquals(expected, a.diff(b));
+		assertEquals(expected, b.diff(a));
+	}
+
+	@Test
+	public void testInvalidPaths() throws IOException {
+		Path root = install("a");
+		Hasher hasher = new Hasher(Files.walk(root)) {};
+		assertThrows(IllegalArgumentException.class, () -> MerkleTree.of(hasher.results(), root.resolve("assets")));
+	}
+
+}
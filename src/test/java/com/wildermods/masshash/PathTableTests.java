@@ -0,0 +1,52 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+public class PathTableTests {
+
+	@Test
+	public void testRoundTrip() {
+		Random random = new Random(0);
+		List<Path> paths = new ArrayList<>();
+		for(int i = 0; i < 2000; i++) {
+			paths.add(Paths.get("/games/wildermyth", "assets" + random.nextInt(10), "dir" + random.nextInt(20), "file" + random.nextInt(1000) + ".png"));
+		}
+		paths.add(Paths.get("relative", "file.txt"));
+		paths.add(Paths.get("/"));
+		List<Path> sorted = new ArrayList<>(new TreeSet<>(paths));
+
+		PathTable table = PathTable.of(paths);
+		assertEquals(sorted.size(), table.size());
+		for(int id = 0; id < sorted.size(); id++) {
+			assertEquals(sorted.get(id), table.get(id));
+			assertEquals(id, table.indexOf(sorted.get(id)));
+		}
+		assertEquals(-1, table.indexOf(Paths.get("/games/wildermyth/missing.png")));
+		assertEquals(-1, table.indexOf(Paths.get("zzz")));
+		assertEquals(-1, table.indexOf(Paths.get("")));
+		assertThrows(IndexOutOfBoundsException.class, () -> table.get(sorted.size()));
+
+		int plain = 0;
+		for(Path path : sorted) {
+			plain += path.toString().length();
+		}
+		assertTrue(table.encodedSize() < plain / 2, "Front coding should at least halve the size of these paths");
+	}
+
+	@Test
+	public void testEmpty() {
+		PathTable table = PathTable.of(List.of());
+		assertEquals(0, table.size());
+		assertEquals(-1, table.indexOf(Paths.get("a")));
+	}
+
+}
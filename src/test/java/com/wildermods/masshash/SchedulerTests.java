@@ -0,0 +1,48 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.wildermods.masshash.HashScheduler.SizedFile;
+
+public class SchedulerTests {
+
+	@Test
+	public void testPlan() {
+		Random random = new Random(0);
+		List<SizedFile> files = new ArrayList<>();
+		for(int i = 0; i < 10000; i++) {
+			files.add(new SizedFile(Paths.get("small" + i), random.nextInt(64 * 1024)));
+		}
+		for(int i = 0; i < 10; i++) {
+			files.add(new SizedFile(Paths.get("huge" + i), 1024L * 1024 * 1024 + i));
+		}
+		
+		List<List<SizedFile>> units = HashScheduler.plan(new ArrayList<>(files), 4);
+		
+		Set<SizedFile> planned = new HashSet<>();
+		long previous = Long.MAX_VALUE;
+		for(List<SizedFile> unit : units) {
+			assertFalse(unit.isEmpty());
+			for(SizedFile file : unit) {
+				assertTrue(planned.add(file), "File planned twice: " + file);
+				assertTrue(file.size() <= previous, "Files are not largest first");
+				previous = file.size();
+				if(file.size() >= 1024L * 1024 * 1024) {
+					assertEquals(1, unit.size(), "Large files should be scheduled alone");
+				}
+			}
+		}
+		assertEquals(files.size(), planned.size());
+		assertTrue(units.size() > 10, "Small files should be split over several units");
+	}
+	
+}
@@ -0,0 +1,96 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+
+public class ShardTests {
+
+	private static final Path sourceDir = Paths.get("./src", "test", "resources");
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void testPartition() {
+		List<Shard> shards = List.of(new Shard(0, 3), new Shard(1, 3), new Shard(2, 3));
+		int[] sizes = new int[3];
+		for(int i = 0; i < 300; i++) {
+			Path path = Paths.get("dir" + (i % 7), "file" + i + ".txt");
+			int owners = 0;
+			for(Shard shard : shards) {
+				if(shard.contains(path)) {
+					owners++;
+					sizes[shard.index()]++;
+				}
+			}
+			assertEquals(1, owners, path.toString());
+		}
+		for(int size : sizes) {
+			assertTrue(size > 50, "Uneven shards: " + size);
+		}
+
+		assertEquals(new Shard(2, 8), Shard.parse("2/8"));
+		assertEquals("2/8", new Shard(2, 8).toString());
+		assertThrows(IllegalArgumentException.class, () -> new Shard(3, 3));
+		assertThrows(IllegalArgumentException.class, () -> new Shard(0, 0));
+		assertThrows(IllegalArgumentException.class, () -> Shard.parse("2"));
+		assertThrows(IllegalArgumentException.class, () -> Shard.parse("a/b"));
+	}
+
+	@Test
+	public void testHashAndMerge() throws IOException {
+		Hasher hasher = new Hasher(Files.walk(sourceDir), 4, HasherOptions.HASH_ONLY, p -> true, (f, b) -> f.set(sourceDir.relativize(f.get()))) {};
+		Path whole = dir.resolve("whole.manifest");
+		Manifest.write(hasher.results(), whole);
+
+		//More shards than some directories have files, so that empty shards are merged too
+		List<Path> parts = new ArrayList<>();
+		int files = 0;
+		for(int i = 0; i < 5; i++) {
+			Path part = dir.resolve("part" + i + ".manifest");
+			files += new Shard(i, 5).hash(sourceDir, 2, HasherOptions.HASH_ONLY, p -> true, part);
+			parts.add(part);
+		}
+		assertEquals(hasher.results().size(), files);
+
+		Path merged = dir.resolve("merged.manifest");
+		Shard.merge(parts, merged);
+		assertArrayEquals(Files.readAllBytes(whole), Files.readAllBytes(merged));
+		assertEquals(hasher.results(), Manifest.open(merged).toMultimap());
+	}
+
+	@Test
+	public void testMergeInvalid() throws IOException {
+		Hasher hasher = new Hasher(Files.walk(sourceDir.resolve("text")), (f, b) -> f.set(sourceDir.relativize(f.get()))) {};
+		Path part = dir.resolve("part.manifest");
+		Manifest.write(hasher.results(), part);
+		Path empty = dir.resolve("empty.manifest");
+		Manifest.write(HashMultimap.create(), empty);
+
+		Path merged = dir.resolve("merged.manifest");
+		assertThrows(IllegalArgumentException.class, () -> Shard.merge(List.of(part, part), merged));
+		assertFalse(Files.exists(merged));
+
+		Shard.merge(List.of(empty, part, empty), merged);
+		assertEquals(hasher.results(), Manifest.open(merged).toMultimap());
+
+		SetMultimap<Hash, Path> xxh = HashMultimap.create();
+		xxh.put(StandardHashAlgorithm.XXHASH_64.hash(new byte[0]), Paths.get("other"));
+		Path other = dir.resolve("other.manifest");
+		Manifest.write(xxh, other);
+		assertThrows(IllegalArgumentException.class, () -> Shard.merge(List.of(part, other), merged));
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.collect.SetMultimap;
+
+public class TreeWalkerTests {
+
+	private static final Path sourceDir = Paths.get("./src", "test", "resources");
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void testSameAsStream() throws IOException {
+		SetMultimap<Hash, Path> walked = new Hasher(sourceDir) {}.results();
+		SetMultimap<Hash, Path> streamed = new Hasher(Files.walk(sourceDir)) {}.results();
+		assertEquals(streamed, walked);
+	}
+
+	@Test
+	public void testDeepTree() throws IOException {
+		Path deep = dir;
+		int files = 0;
+		for(int depth = 0; depth < 20; depth++) {
+			for(int i = 0; i < 3; i++) {
+				Files.createDirectories(deep.resolve("sibling" + i));
+				Files.writeString(deep.resolve("sibling" + i).resolve("file.txt"), depth + " " + i);
+				files++;
+			}
+			deep = deep.resolve("child");
+			Files.createDirectories(deep);
+		}
+		Files.writeString(deep.resolve("small.txt"), "x");
+		Files.writeString(deep.resolve("large.txt"), "x".repeat(1000));
+		files += 2;
+
+		//The predicate sees each file's attributes, and is only given regular files
+		Set<Path> tested = ConcurrentHashMap.newKeySet();
+		Hasher hasher = new Hasher(dir, 4, HasherOptions.HASH_ONLY, (path, attributes) -> {
+			assertTrue(attributes.isRegularFile());
+			tested.add(path);
+			return attributes.size() < 100;
+		}, (p, b) -> {}) {};
+		assertEquals(files, tested.size());
+		assertEquals(files - 1, hasher.results().size());
+		assertFalse(hasher.results().containsValue(deep.resolve("large.txt")));
+		assertTrue(hasher.results().containsValue(deep.resolve("small.txt")));
+	}
+
+	@Test
+	public void testRoots() throws IOException {
+		Path file = dir.resolve("single.txt");
+		Files.writeString(file, "single");
+		//Without a consumer
+		Hasher hasher = new Hasher(file, 1, HasherOptions.HASH_ONLY, (p, a) -> true, null) {};
+		assertEquals(Set.of(file), Set.copyOf(hasher.results().values()));
+
+		assertThrows(NoSuchFileException.class, () -> new Hasher(dir.resolve("missing")) {});
+		Files.createDirectories(dir.resolve("empty"));
+		assertThrows(IllegalArgumentException.class, () -> new Hasher(dir.resolve("empty")) {});
+		assertThrows(IllegalArgumentException.class, () -> new Hasher(dir, 2, HasherOptions.HASH_ONLY, (Path p, BasicFileAttributes a) -> false, (p, b) -> {}) {});
+	}
+
+}
@@ -0,0 +1,110 @@
+package com.wildermods.masshash;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.collect.SetMultimap;
+import com.wildermods.masshash.HashScheduler.SizedFile;
+import com.wildermods.masshash.exception.FileProblem;
+import com.wildermods.masshash.exception.IntegrityException;
+
+public class VerifierTests {
+
+	@TempDir
+	Path dir;
+
+	private Path install() throws IOException {
+		Path root = dir.resolve("install");
+		for(int i = 0; i < 50; i++) {
+			Path file = root.resolve("dir" + (i % 5)).resolve("file" + i + ".txt");
+			Files.createDirectories(file.getParent());
+			Files.writeString(file, "contents " + i);
+		}
+		return root;
+	}
+
+	private SetMultimap<Hash, Path> expected(Path root) throws IOException {
+		return new Hasher(Files.walk(root), (f, b) -> f.set(root.relativize(f.get()))) {}.results();
+	}
+
+	@Test
+	public void testIntact() throws IOException, IntegrityException {
+		Path root = install();
+		SetMultimap<Hash, Path> expected = expected(root);
+		Verifier.of(expected).verify(root);
+
+		Path manifest = dir.resolve("install.manifest");
+		Manifest.write(expected, manifest);
+		Verifier.of(Manifest.open(manifest)).withThreads(2).verify(root);
+	}
+
+	@Test
+	public void testProblems() throws IOException {
+		Path root = install();
+		SetMultimap<Hash, Path> expected = expected(root);
+		Files.delete(root.resolve("dir1/file1.txt"));
+		Files.writeString(root.resolve("dir2/file2.txt"), "modified");
+		Files.writeString(root.resolve("dir3/extra.txt"), "extra");
+		Files.writeString(root.resolve("dir4/file4.txt"), "modified");
+
+		IntegrityException e = assertThrows(IntegrityException.class, () -> Verifier.of(expected).verify(root));
+		List<FileProblem> problems = e.getProblems().map(FileProblem.class::cast).toList();
+		assertEquals(4, problems.size());
+		assertEquals(new FileProblem(FileProblem.Kind.MISSING, Paths.get("dir1/file1.txt"), expected.entries().stream()
+			.filter(entry -> entry.getValue().equals(Paths.get("dir1/file1.txt"))).findAny().get().getKey(), null), problems.get(0));
+		assertEquals(FileProblem.Kind.MISMATCH, problems.get(1).kind());
+		assertEquals(Paths.get("dir2/file2.txt"), problems.get(1).path());
+		assertEquals(StandardHashAlgorithm.SHA_1.hash("modified".getBytes()), problems.get(1).actual());
+		assertEquals(FileProblem.Kind.EXTRA, problems.get(2).kind());
+		assertEquals(Paths.get("dir3/extra.txt"), problems.get(2).path());
+		assertEquals(FileProblem.Kind.MISMATCH, problems.get(3).kind());
+
+		e = assertThrows(IntegrityException.class, () -> Verifier.of(expected).withFailFast(true).verify(root));
+		assertEquals(1, e.getProblems().count());
+		e = assertThrows(IntegrityException.class, () -> Verifier.of(expected).withMaxProblems(2).verify(root));
+		assertEquals(2, e.getProblems().count());
+		assertThrows(IllegalArgumentException.class, () -> Verifier.of(expected).withMaxProblems(0));
+	}
+
+	@Test
+	public void testVanished() throws IOException {
+		//A file deleted between listing and hashing is handed to the hook, instead of failing the run
+		Path root = install();
+		Path vanished = root.resolve("dir0/file0.txt");
+		Path kept = root.resolve("dir1/file1.txt");
+		List<Path> failed = new ArrayList<>();
+		SetMultimap<Hash, Path> results;
+		try(HashPipeline pipeline = new HashPipeline(2, HasherOptions.HASH_ONLY, null, false, new HashPipeline.OnHashed() {
+			@Override
+			public Path hashed(Path path, BinaryHash hash) {
+				return path;
+			}
+			@Override
+			public void failed(Path path, IOException failure) {
+				assertInstanceOf(NoSuchFileException.class, failure);
+				synchronized(failed) {
+					failed.add(path);
+				}
+			}
+		})) {
+			long size = Files.size(vanished);
+			Files.delete(vanished);
+			pipeline.submit(new SizedFile(vanished, size));
+			pipeline.submit(new SizedFile(kept, Files.size(kept)));
+			results = pipeline.finish();
+		}
+		assertEquals(List.of(vanished), failed);
+		assertEquals(List.of(kept), List.copyOf(results.values()));
+	}
+
+}